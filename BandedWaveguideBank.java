@@ -0,0 +1,178 @@
+import com.jsyn.*;
+import com.jsyn.data.*;
+import com.jsyn.unitgen.*;
+import com.jsyn.util.*;
+import com.jsyn.ports.UnitInputPort;
+import com.jsyn.ports.UnitOutputPort;
+import com.jsyn.unitgen.UnitGenerator;
+
+/**
+ * Unit generator running every band of a banded waveguide, and the mix of the bands, through one
+ * BandedWaveguideKernel. Has an input for each band and one mixed output, like the FullBandedWaveguide.
+ * Notes and pitch bends requested from other threads are handed to the kernel at the start of the next block.
+ */
+
+public class BandedWaveguideBank extends UnitGenerator
+{
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  public UnitInputPort[] inputs;     // Input for each band
+  public UnitOutputPort output;      // Mixed output of all the bands
+
+  private BandedWaveguideKernel kernel;
+  private double[][] inputValues;    // The input port values for the current block
+  private DelayLookupTable delayTable; // Shared frequency to delay lookups
+
+  // Requests made from outside the audio thread, picked up at the start of the next block
+  private double[] pendingFrequencies;
+  private double[] pendingQs;
+  private double[] pendingGains;
+  private volatile boolean notePending;
+  private double pendingBendChange;
+  private double pendingBendDuration;
+  private volatile boolean bendPending;
+  private volatile boolean bending;  // Whether the kernel is bending, updated every block
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate of the Synth
+   * @param maxBufferSize int the largest delay length needed
+   * @param numBands int the number of bands
+   */
+
+  public BandedWaveguideBank(double samplingRate, int maxBufferSize, int numBands)
+  {
+    super();
+
+    delayTable = DelayLookupTable.getInstance(samplingRate);
+    kernel = new BandedWaveguideKernel(samplingRate, maxBufferSize, numBands);
+
+    inputs = new UnitInputPort[numBands];
+    for(int i=0; i<numBands; i++)
+    {
+      addPort(inputs[i] = new UnitInputPort("Input" + i));
+    }
+    addPort(output = new UnitOutputPort());
+
+    inputValues = new double[numBands][];
+    pendingFrequencies = new double[numBands];
+    pendingQs = new double[numBands];
+    pendingGains = new double[numBands];
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* PlayNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Update the parameters of every band for a new note, applied from the next block
+   * @param waveguideParameters WaveguideParameters[] the array of parameters for each band
+   */
+
+  public void playNote(WaveguideParameters[] waveguideParameters)
+  {
+    // Stop any previous pitch bending
+    bendPending = false;
+
+    for(int i=0; i<pendingFrequencies.length; i++)
+    {
+      double frequency = waveguideParameters[i].getCenterFrequency();
+      if((int) delayTable.getDelay(frequency) > kernel.getMaxDelay())
+      {
+        throw new IllegalArgumentException("Delay cannot be larger than the buffer size!");
+      }
+
+      pendingFrequencies[i] = frequency;
+      pendingQs[i] = waveguideParameters[i].getQ();
+      pendingGains[i] = waveguideParameters[i].getGain();
+    }
+
+    // Publish to the audio thread
+    notePending = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* PitchBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Start every band bending, the bend begins at the next block
+   * @param frequencyChange double the change in frequency eg 30 is an increase by 30Hz, or -30 is a decrease by 30Hz
+   * @param duration double the length of the pitch bend in time
+   */
+
+  public void pitchBend(double frequencyChange, double duration)
+  {
+    pendingBendChange = frequencyChange;
+    pendingBendDuration = duration;
+    bendPending = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* isPitchBendFinished
+  //
+  /**************************************************************************************************/
+  /**
+  * Return whether the last pitch bend is finished
+  * @return boolean
+  */
+
+  public boolean isPitchBendFinished()
+  {
+    return !bendPending && !bending;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Generate
+  //
+  /**************************************************************************************************/
+  /**
+   * Process one block through all of the bands
+   * @param start int
+   * @param limit int
+   */
+
+  @Override
+  public void generate(int start, int limit)
+  {
+    // Pick up any new note or bend requested since the last block
+    if(notePending)
+    {
+      notePending = false;
+      kernel.playNote(pendingFrequencies, pendingQs, pendingGains);
+    }
+    if(bendPending)
+    {
+      bendPending = false;
+      kernel.pitchBend(pendingBendChange, pendingBendDuration);
+    }
+
+    for(int i=0; i<inputs.length; i++)
+    {
+      inputValues[i] = inputs[i].getValues();
+    }
+
+    kernel.process(inputValues, output.getValues(), start, limit);
+
+    bending = !kernel.isPitchBendFinished();
+  }
+}
@@ -0,0 +1,584 @@
+import java.util.Arrays;
+
+/**
+ * Processing for every band of a banded waveguide at once, with the state of all the bands held in
+ * structure-of-arrays form (one array per filter variable, indexed by band). Each sample runs the
+ * bandpass, delay line, allpass filters and crossfade across all the bands in one inner loop and sums
+ * them as the Mixer would, so the bands share a single pass instead of one unit chain each.
+ * Follows the SingleBandedWaveguide circuit and Mixer exactly, parameter changes made during a block
+ * are used from the next block. Not thread safe, it should only be used by the thread that processes it.
+ */
+
+public class BandedWaveguideKernel
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  // Matches the limits used by the JSyn biquad filters
+  private static final double MINIMUM_VALUE = 0.00001;
+  private static final double MAXIMUM_RATIO = 0.499;
+  private static final double VERY_SMALL = 1.0E-26;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private int numBands;
+  private double samplingRate;
+  private DelayLookupTable delayTable;   // Shared frequency to delay and coefficient lookups
+  private double framePeriod;
+
+  private double[] frequency;          // Current frequency of each band, updated by each pitch bend
+
+  // Values that would be held on the unit ports of each band
+  private double[] bandFrequency;
+  private double[] bandQ;
+  private double[] bandAmplitude;
+  private int[] delay1;
+  private int[] delay2;
+  private double[] coefficient1;
+  private double[] coefficient2;
+
+  // Copies of the port values for the current block
+  private int[] blockDelay1;
+  private int[] blockDelay2;
+  private double[] blockCoefficient1;
+  private double[] blockCoefficient2;
+  private double[] blockAmplitude;
+
+  // Bandpass filter state
+  private double[] previousFrequency;
+  private double[] previousQ;
+  private double[] a0;
+  private double[] a2;
+  private double[] b1;
+  private double[] b2;
+  private double[] x1;
+  private double[] x2;
+  private double[] y1;
+  private double[] y2;
+
+  // Delay lines, one after another in a single array, all sharing the same write pointer
+  private double[] delayBuffers;
+  private int bufferSize;
+  private int bufferMask;
+  private int writePointer;
+  private int maxDelay;
+
+  // Allpass filter state
+  private double[] lastInput1;
+  private double[] lastOutput1;
+  private double[] lastInput2;
+  private double[] lastOutput2;
+
+  // Pitch bend, the timing is the same for every band, only the frequencies differ
+  private double[] frequencyPointer1;
+  private double[] frequencyPointer2;
+  private double[] frequencyStep;
+  private boolean pitchBend;
+  private double totalSamplesOfBend;
+  private double numSteps;
+  private double blendFactor;
+  private int count16;
+  private long totalCount;
+  private boolean currentPointer;
+
+  // Scratch for playNote with WaveguideParameters
+  private double[] noteFrequencies;
+  private double[] noteQs;
+  private double[] noteGains;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate
+   * @param maxBufferSize int the largest delay length needed, rounded up to a power of two
+   * @param numBands int the number of bands
+   */
+
+  public BandedWaveguideKernel(double samplingRate, int maxBufferSize, int numBands)
+  {
+    this.numBands = numBands;
+    this.samplingRate = samplingRate;
+    delayTable = DelayLookupTable.getInstance(samplingRate);
+    this.framePeriod = 1.0 / samplingRate;
+    this.maxDelay = maxBufferSize;
+
+    frequency = new double[numBands];
+    bandFrequency = new double[numBands];
+    bandQ = new double[numBands];
+    bandAmplitude = new double[numBands];
+    delay1 = new int[numBands];
+    delay2 = new int[numBands];
+    coefficient1 = new double[numBands];
+    coefficient2 = new double[numBands];
+    blockDelay1 = new int[numBands];
+    blockDelay2 = new int[numBands];
+    blockCoefficient1 = new double[numBands];
+    blockCoefficient2 = new double[numBands];
+    blockAmplitude = new double[numBands];
+    previousFrequency = new double[numBands];
+    previousQ = new double[numBands];
+    a0 = new double[numBands];
+    a2 = new double[numBands];
+    b1 = new double[numBands];
+    b2 = new double[numBands];
+    x1 = new double[numBands];
+    x2 = new double[numBands];
+    y1 = new double[numBands];
+    y2 = new double[numBands];
+    lastInput1 = new double[numBands];
+    lastOutput1 = new double[numBands];
+    lastInput2 = new double[numBands];
+    lastOutput2 = new double[numBands];
+    frequencyPointer1 = new double[numBands];
+    frequencyPointer2 = new double[numBands];
+    frequencyStep = new double[numBands];
+    noteFrequencies = new double[numBands];
+    noteQs = new double[numBands];
+    noteGains = new double[numBands];
+
+    // Round the delay lines up to a power of two so the pointers can be masked
+    bufferSize = Integer.highestOneBit(maxBufferSize);
+    if(bufferSize < maxBufferSize)
+    {
+      bufferSize <<= 1;
+    }
+    bufferMask = bufferSize - 1;
+    delayBuffers = new double[bufferSize * numBands];
+
+    reset();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* reset
+  //
+  /**************************************************************************************************/
+  /**
+   * Put every band back to how it was when the kernel was created, with empty delay lines and filters
+   */
+
+  public void reset()
+  {
+    // Same initial values as the ports in the circuit
+    Arrays.fill(frequency, 0);
+    Arrays.fill(delay1, 1);
+    Arrays.fill(delay2, 1);
+    Arrays.fill(coefficient1, 1.0);
+    Arrays.fill(coefficient2, 1.0);
+    Arrays.fill(bandFrequency, 400.0);
+    Arrays.fill(bandQ, 1.0);
+    Arrays.fill(bandAmplitude, 1.0);
+
+    // Empty filters and delay lines
+    Arrays.fill(previousFrequency, 0);
+    Arrays.fill(previousQ, 0);
+    Arrays.fill(a0, 0);
+    Arrays.fill(a2, 0);
+    Arrays.fill(b1, 0);
+    Arrays.fill(b2, 0);
+    Arrays.fill(x1, 0);
+    Arrays.fill(x2, 0);
+    Arrays.fill(y1, 0);
+    Arrays.fill(y2, 0);
+    Arrays.fill(lastInput1, 0);
+    Arrays.fill(lastOutput1, 0);
+    Arrays.fill(lastInput2, 0);
+    Arrays.fill(lastOutput2, 0);
+    Arrays.fill(delayBuffers, 0);
+    writePointer = 0;
+
+    // No pitch bend
+    Arrays.fill(frequencyPointer1, 0);
+    Arrays.fill(frequencyPointer2, 0);
+    Arrays.fill(frequencyStep, 0);
+    pitchBend = false;
+    totalSamplesOfBend = 0;
+    numSteps = 0;
+    blendFactor = 0;
+    count16 = 0;
+    totalCount = 0;
+    currentPointer = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return int the number of bands
+   */
+  public int getNumBands()
+  {
+    return numBands;
+  }
+
+  /**
+   * @return int the largest delay length the delay lines can hold
+   */
+  public int getMaxDelay()
+  {
+    return maxDelay;
+  }
+
+  /**
+   * @return boolean whether the last pitch bend is finished
+   */
+  public boolean isPitchBendFinished()
+  {
+    return !pitchBend;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* playNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Set up every band for a new note and empty the delay lines
+   * @param waveguideParameters WaveguideParameters[] the parameters for each band
+   */
+
+  public void playNote(WaveguideParameters[] waveguideParameters)
+  {
+    for(int b=0; b<numBands; b++)
+    {
+      noteFrequencies[b] = waveguideParameters[b].getCenterFrequency();
+      noteQs[b] = waveguideParameters[b].getQ();
+      noteGains[b] = waveguideParameters[b].getGain();
+    }
+    playNote(noteFrequencies, noteQs, noteGains);
+  }
+
+  /**
+   * Set up every band for a new note and empty the delay lines
+   * @param centerFrequencies double[] the center frequency of each band
+   * @param qs double[] the bandpass Q of each band
+   * @param gains double[] the bandpass gain of each band
+   */
+
+  public void playNote(double[] centerFrequencies, double[] qs, double[] gains)
+  {
+    // Stop any previous pitch bending
+    pitchBend = false;
+
+    for(int b=0; b<numBands; b++)
+    {
+      // Work out the length of the delay line, and the allpass coefficients from the frequency
+      frequency[b] = centerFrequencies[b];
+      double loop = delayTable.getDelay(frequency[b]);
+      int delayLength = (int) loop;
+      double fractionalDelay = loop - delayLength;
+      double coefficient = delayTable.getCoefficient(fractionalDelay);
+
+      delay1[b] = delayLength;
+      delay2[b] = delayLength;
+      coefficient1[b] = coefficient;
+      coefficient2[b] = coefficient;
+      bandFrequency[b] = frequency[b];
+      bandQ[b] = qs[b];
+      bandAmplitude[b] = gains[b];
+    }
+
+    // Empty the delay lines
+    Arrays.fill(delayBuffers, 0);
+    writePointer = 0;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* pitchBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Start every band bending from its current frequency, as in PitchBendController.startBend
+   * @param frequencyChange double the change in frequency eg 30 is an increase by 30Hz
+   * @param duration double the length of the pitch bend in seconds
+   */
+
+  public void pitchBend(double frequencyChange, double duration)
+  {
+    totalSamplesOfBend = (int) (samplingRate * duration);
+    numSteps = (int) (totalSamplesOfBend / 16);
+
+    for(int b=0; b<numBands; b++)
+    {
+      double f1 = frequency[b];
+      double f2 = f1 + frequencyChange;
+      frequency[b] = f2;
+
+      frequencyPointer1[b] = f1;
+      frequencyPointer2[b] = f1;
+      frequencyStep[b] = 2 * ((f2 - f1) / numSteps);
+
+      if(currentPointer == true)
+      {
+        frequencyPointer2[b] = frequencyPointer1[b] - (0.5 * frequencyStep[b]);
+        double delay = delayTable.getDelay(frequencyPointer2[b]);
+        int intPart = (int) delay;
+        delay2[b] = intPart;
+        double fracPart = delay - intPart;
+        coefficient2[b] = delayTable.getCoefficient(fracPart);
+      }
+      else
+      {
+        frequencyPointer1[b] = frequencyPointer2[b] - (0.5 * frequencyStep[b]);
+        double delay = delayTable.getDelay(frequencyPointer1[b]);
+        int intPart = (int) delay;
+        delay1[b] = intPart;
+        double fracPart = delay - intPart;
+        coefficient1[b] = delayTable.getCoefficient(fracPart);
+      }
+    }
+
+    pitchBend = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* process
+  //
+  /**************************************************************************************************/
+  /**
+   * Process one block through every band and mix them down
+   * @param inputs double[][] the input samples for each band
+   * @param outputs double[] the mixed output
+   * @param start int
+   * @param limit int
+   */
+
+  public void process(double[][] inputs, double[] outputs, int start, int limit)
+  {
+    // Update the bandpass coefficients of any band whose frequency or Q has changed
+    for(int b=0; b<numBands; b++)
+    {
+      recalculateBandpass(b);
+    }
+
+    // Latch this block's parameters, anything the bend changes below is used from the next block
+    System.arraycopy(delay1, 0, blockDelay1, 0, numBands);
+    System.arraycopy(delay2, 0, blockDelay2, 0, numBands);
+    System.arraycopy(coefficient1, 0, blockCoefficient1, 0, numBands);
+    System.arraycopy(coefficient2, 0, blockCoefficient2, 0, numBands);
+    System.arraycopy(bandAmplitude, 0, blockAmplitude, 0, numBands);
+
+    double[] buffers = delayBuffers;
+    int size = bufferSize;
+    int mask = bufferMask;
+    int write = writePointer;
+
+    for(int i=start; i<limit; i++)
+    {
+      // Move the read pointers of every band if the bend is due a step
+      stepBend();
+
+      double blend = blendFactor;
+      boolean pointer1 = currentPointer;
+      double total = 0;
+
+      for(int b=0; b<numBands; b++)
+      {
+        // Bandpass
+        double x = inputs[b][i];
+        double y = (a0[b] * x) + (a2[b] * x2[b]) - (b1[b] * y1[b]) - (b2[b] * y2[b]);
+        x2[b] = x1[b];
+        x1[b] = x;
+        y2[b] = y1[b];
+        y1[b] = y;
+
+        // Delay line, read both taps before writing
+        int base = b * size;
+        double tap1 = buffers[base + ((write - blockDelay1[b]) & mask)];
+        double tap2 = buffers[base + ((write - blockDelay2[b]) & mask)];
+        buffers[base + write] = blockAmplitude[b] * y;
+
+        // Allpass interpolation for each tap
+        double c1 = blockCoefficient1[b];
+        double sample1 = (c1*tap1) + lastInput1[b] - (c1*lastOutput1[b]);
+        lastInput1[b] = tap1;
+        lastOutput1[b] = sample1;
+        double c2 = blockCoefficient2[b];
+        double sample2 = (c2*tap2) + lastInput2[b] - (c2*lastOutput2[b]);
+        lastInput2[b] = tap2;
+        lastOutput2[b] = sample2;
+
+        // Legato crossfade
+        double firstSample = pointer1 ? sample1 : sample2;
+        double secondSample = pointer1 ? sample2 : sample1;
+        double range = Math.abs(firstSample - secondSample);
+        if(firstSample < secondSample)
+        {
+          total += firstSample + (blend * range);
+        }
+        else
+        {
+          total += firstSample - (blend * range);
+        }
+      }
+
+      write = (write + 1) & mask;
+
+      // If pitchbending and time to swap pointer, swap
+      if(pitchBend == true)
+      {
+        if(count16 == 0)
+        {
+          currentPointer = !currentPointer;
+        }
+        count16 = (count16 + 1) % 16;
+        totalCount++;
+      }
+
+      // Mix down, clipping as the Mixer does
+      if(total>1)
+      {
+        outputs[i] = 0.99;
+      }
+      else if(total<-1)
+      {
+        outputs[i] = -0.99;
+      }
+      else
+      {
+        outputs[i] = total;
+      }
+    }
+
+    writePointer = write;
+
+    // Same denormal offset as the JSyn biquad
+    for(int b=0; b<numBands; b++)
+    {
+      y1[b] += VERY_SMALL;
+      y2[b] -= VERY_SMALL;
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* stepBend
+  //
+  /**************************************************************************************************/
+  /**
+   * The per sample timing of the PitchBendController, moving the read pointers every 16 samples
+   */
+
+  private void stepBend()
+  {
+    if(pitchBend == false)
+    {
+      return;
+    }
+
+    // If count is 0, 16 samples have passed to alter delay length
+    if(count16 == 0)
+    {
+      for(int b=0; b<numBands; b++)
+      {
+        if(currentPointer == true)
+        {
+          frequencyPointer2[b] += frequencyStep[b];
+          double delay = delayTable.getDelay(frequencyPointer2[b]);
+          int intPart = (int) delay;
+          delay2[b] = intPart;
+          double fracPart = delay - intPart;
+          coefficient2[b] = delayTable.getCoefficient(fracPart);
+          bandFrequency[b] = frequencyPointer2[b];
+        }
+        else
+        {
+          frequencyPointer1[b] += frequencyStep[b];
+          double delay = delayTable.getDelay(frequencyPointer1[b]);
+          int intPart = (int) delay;
+          delay1[b] = intPart;
+          double fracPart = delay - intPart;
+          coefficient1[b] = delayTable.getCoefficient(fracPart);
+          bandFrequency[b] = frequencyPointer1[b];
+        }
+      }
+
+      blendFactor = 0;
+    }
+
+    if(count16 > 4)
+    {
+      blendFactor = (count16 - 5) / 11;
+    }
+
+    // Pitch bend is finished so reset variables
+    if(totalCount >= totalSamplesOfBend)
+    {
+      pitchBend = false;
+      count16 = 0;
+      totalCount = 0;
+      blendFactor = 0;
+      currentPointer = (numSteps % 2 == 0);
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* recalculateBandpass
+  //
+  /**************************************************************************************************/
+  /**
+   * Works out the bandpass coefficients for one band in the same way as the JSyn FilterBandPass
+   * @param b int the band
+   */
+
+  private void recalculateBandpass(int b)
+  {
+    double f = bandFrequency[b];
+    double q = bandQ[b];
+    if(f < MINIMUM_VALUE)
+    {
+      f = MINIMUM_VALUE;
+    }
+    if(q < MINIMUM_VALUE)
+    {
+      q = MINIMUM_VALUE;
+    }
+
+    if(f == previousFrequency[b] && q == previousQ[b])
+    {
+      return;
+    }
+    previousFrequency[b] = f;
+    previousQ[b] = q;
+
+    double ratio = f * framePeriod;
+    if(ratio >= MAXIMUM_RATIO)
+    {
+      ratio = MAXIMUM_RATIO;
+    }
+    double omega = 2.0 * Math.PI * ratio;
+    double alpha = Math.sin(omega) / (2.0 * q);
+    double scalar = 1.0 / (1.0 + alpha);
+
+    a0[b] = alpha * scalar;
+    a2[b] = -a0[b];
+    b1[b] = -2.0 * Math.cos(omega) * scalar;
+    b2[b] = (1.0 - alpha) * scalar;
+  }
+}
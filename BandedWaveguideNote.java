@@ -4,6 +4,7 @@ import com.jsyn.unitgen.*;
 import com.jsyn.util.*;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 /**
  * Class for a BandedWaveguideNote, playes a single note on a banded waveguide
@@ -17,6 +18,8 @@ public class BandedWaveguideNote
   //
   /**************************************************************************************************/
   private static final int MAX_BUFFER_SIZE = 1000;  
+  private static final double SLEEP_HOLD_TIME = 0.25;   // Seconds the note must stay below the sleep threshold before sleeping
+  private static final WaveguideEngine DEFAULT_ENGINE = WaveguideEngine.BANK;   // Renders the same as the others, and hits don't allocate
   
   /**************************************************************************************************/
   //
@@ -27,12 +30,14 @@ public class BandedWaveguideNote
   // JSyn Unit Generators  
   private Synthesizer synth;                           // JSyn synthesizer
   private UnitGenerator lineOut;                       // Output
-  private FixedRateMonoReader[] initialInput;          // Array of evaluators to initialise the delay line with values
+  private InitialExcitation[] initialInput;            // Array of evaluators to initialise the delay line with values
   private FullBandedWaveguide bandedWaveguide;         // BandedWaveguide
   private OutputGain outputGain;                       // Overall output volume control
+  private UnitGenerator[] sleepUnits;                  // Units disabled when the note has decayed to silence
   
   // Waveguide parameters
   private int samplingRate;
+  private DelayLookupTable delayTable;                 // Shared frequency to delay lookups
   private double fundimentalFrequency;
   private int numSingleWaveguides;
   
@@ -45,12 +50,24 @@ public class BandedWaveguideNote
   /**************************************************************************************************/
   
   /**
-   * Class constructor
+   * Class constructor, using the BANK engine
    * @param synth Synthesiser
    * @param lineOut UnitGenerator
    * @param numSingleWaveguides int the number of delay lines used in the Banded waveguide
    */
   public BandedWaveguideNote(Synthesizer synth, UnitGenerator lineOut, int numSingleWaveguides)
+  {
+    this(synth, lineOut, numSingleWaveguides, DEFAULT_ENGINE);
+  }
+  
+  /**
+   * Class constructor
+   * @param synth Synthesiser
+   * @param lineOut UnitGenerator
+   * @param numSingleWaveguides int the number of delay lines used in the Banded waveguide
+   * @param engine WaveguideEngine how the bands of the banded waveguide are built
+   */
+  public BandedWaveguideNote(Synthesizer synth, UnitGenerator lineOut, int numSingleWaveguides, WaveguideEngine engine)
   {
     // Setup
     try
@@ -63,12 +80,13 @@ public class BandedWaveguideNote
       
       // Get the current default sampling rate, for Karplus-Strong calculations
       samplingRate = synth.getFrameRate();
+      delayTable = DelayLookupTable.getInstance(samplingRate);
       
       // Create new initial readers, one for each delay line
-      initialInput = new FixedRateMonoReader[numSingleWaveguides];
+      initialInput = new InitialExcitation[numSingleWaveguides];
       
       // Create banded waveguide
-      bandedWaveguide = new FullBandedWaveguide(samplingRate, MAX_BUFFER_SIZE, numSingleWaveguides);
+      bandedWaveguide = new FullBandedWaveguide(samplingRate, MAX_BUFFER_SIZE, numSingleWaveguides, engine);
       
       // Create output gain
       outputGain = new OutputGain();
@@ -80,7 +98,7 @@ public class BandedWaveguideNote
       
       for(int i=0; i<numSingleWaveguides; i++)
       {
-        synth.add(initialInput[i] = new FixedRateMonoReader());
+        synth.add(initialInput[i] = new InitialExcitation());
         
         // Connect to correct input on the banded waveguide
         initialInput[i].output.connect(0, bandedWaveguide.inputs[i], 0);
@@ -99,6 +117,15 @@ public class BandedWaveguideNote
       // Set overall volume control as 0 initially to stop buzz before not is played
       outputGain.gain.set(0);
       
+      // Everything feeding the output gain can be disabled once the note has decayed, never by default
+      sleepUnits = new UnitGenerator[numSingleWaveguides + 1];
+      sleepUnits[0] = bandedWaveguide;
+      for(int i=0; i<numSingleWaveguides; i++)
+      {
+        sleepUnits[i + 1] = initialInput[i];
+      }
+      outputGain.setSleep(sleepUnits, 0, SLEEP_HOLD_TIME);
+      
       // Set not started as false as it's not yet been hit
       noteStarted = false;
     }
@@ -138,49 +165,20 @@ public class BandedWaveguideNote
      
      this.fundimentalFrequency = fundimentalFrequency;
      
-     FloatSample[] floatSamples = new FloatSample[numSingleWaveguides]; // FloatSample for each initial input
-     float[] initialWaveTable = null;   // Float version of each initial input
-
-     // Work out delay length for the longest delay line
-     int maxNumSamples = (int) (samplingRate / fundimentalFrequency);
-     
-    
-     // Give each initial evaluator the right size of values
-     for(int i=0; i<numSingleWaveguides; i++)
-     {
-       // Get length of delay lines for this delay
-       int numSamples = (int) (samplingRate / params[i].getCenterFrequency());
-
-       // Scale the random numbers for the chosen amplitude
-       // Alternatve between - and + amplitude      
-       float[] data = new float[numSamples]; 
-       for (int j=0; j<numSamples; j++)
-       {
-         double flipper = 1;
-         if(j/2 != 0)
-         {
-           flipper = -1;
-         }
-         
-         data[j] = (float) (params[i].getAmplitude() * flipper);
-       }
-       
-       // Set as FloatSample
-       floatSamples[i] = new FloatSample(data);
-     }
+     // Wake the units up if the last note had decayed
+     outputGain.wake();
      
-     // Set overall volume control
-     outputGain.gain.set(gain);
+     // Set overall volume control, from the next block without queueing a port command
+     outputGain.setGain(gain);
      
      // Set up parameters in the banded waveguides
      bandedWaveguide.playNote(params);
      
-     // Queue the initial values into the initial evaluators to fill the delay line
-     
+     // Start each initial evaluator filling its delay line, with the length of the delay line
      for(int i=0; i<numSingleWaveguides; i++)
      {
-       initialInput[i].dataQueue.clear();
-       initialInput[i].dataQueue.queue(floatSamples[i], 0, floatSamples[i].getNumFrames());
+       int numSamples = (int) delayTable.getDelay(params[i].getCenterFrequency());
+       initialInput[i].start(params[i].getAmplitude(), numSamples);
      }
      
      // if this is the first time this note has been hit connect the output to the lineout
@@ -199,10 +197,10 @@ public class BandedWaveguideNote
        
        // Set noteStarted as true as it's been played once
        noteStarted = true;
+       
+       // Start the processing to play sound, it stays started for the following notes
+       lineOut.start();
      }
-     
-     // Start the processing to play sound
-     lineOut.start();
    }
    
    /**
@@ -283,4 +281,91 @@ public class BandedWaveguideNote
   {    
     return bandedWaveguide.isPitchBendFinished();
   }
-}
+  
+  /**************************************************************************************************/
+  //
+  /* Sleeping 
+  //
+  /**************************************************************************************************/
+  /**
+  * Set the level below which the note is treated as silent, and its units disabled until the next hit
+  * @param threshold double the peak output level, eg 0.0001 for -80dB, or 0 to never sleep
+  */
+   
+  public void setSleepThreshold(double threshold)
+  {
+    outputGain.setSleep(sleepUnits, threshold, SLEEP_HOLD_TIME);
+  }
+  
+  /**
+  * Return whether the note has been hit and has not yet decayed to sleep
+  * @return boolean
+  */
+   
+  public boolean isSounding()
+  {
+    return noteStarted && !outputGain.isAsleep();
+  }
+  
+  /**
+  * Return the peak output level over the last block
+  * @return double
+  */
+   
+  public double getLevel()
+  {
+    return outputGain.getPeak();
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* main 
+  //
+  /**************************************************************************************************/
+  /**
+  * Allocation check, plays many hits on a note with each engine and prints the bytes the calling thread
+  * allocated per hit, which should be 0 for the default engine
+  * @param args String[] optional number of hits, default 10000
+  */
+   
+  public static void main(String[] args) throws IOException
+  {
+    int numHits = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+    WaveguideParameters[] params = {
+      new WaveguideParameters(2544.6171875, 0.56427001953125, 125.1171875, 0.967529296875),
+      new WaveguideParameters(1403.3359375, 0.584136962890625, 357.34375, 0.929473876953125),
+      new WaveguideParameters(704.171875, 0.84820556640625, 94.0859375, 0.99322509765625),
+      new WaveguideParameters(1690.40625, 0.89715576171875, 272.265625, 0.975341796875),
+      new WaveguideParameters(2040.4921875, 0.45819091796875, 413.3984375, 0.77734375)
+    };
+    
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    
+    for(WaveguideEngine engine : WaveguideEngine.values())
+    {
+      Synthesizer synth = JSyn.createSynthesizer();
+      synth.setRealTime(false);
+      synth.start();
+      CaptureOutput lineOut = new CaptureOutput(1);
+      synth.add(lineOut);
+      BandedWaveguideNote note = new BandedWaveguideNote(synth, lineOut, params.length, engine);
+      
+      // The first hit connects the note to the output, and the rest warm up the JIT
+      for(int i=0; i<1000; i++)
+      {
+        note.playNote(params, 704.171875, 1.0);
+      }
+      
+      long before = threads.getThreadAllocatedBytes(threadId);
+      for(int i=0; i<numHits; i++)
+      {
+        note.playNote(params, 704.171875, 1.0);
+      }
+      long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+      synth.stop();
+      
+      System.out.printf("%s%s: %.1f bytes per hit%n", engine, (engine == DEFAULT_ENGINE) ? " (default)" : "", (double) allocated / numHits);
+    }
+  }
+}
@@ -0,0 +1,360 @@
+import com.jsyn.*;
+import com.jsyn.unitgen.*;
+import java.io.IOException;
+
+/**
+ * A fixed pool of BandedWaveguideNote voices for one drum, so a new hit can start on a free voice
+ * instead of cutting off the tail of the last one. All of the voices are created up front, choosing a
+ * voice does not allocate. When every voice is still ringing, one is stolen using the stealing policy.
+ */
+
+public class BandedWaveguideVoicePool
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double DEFAULT_RING_TIME = 2.0;           // Most seconds a voice is treated as still sounding
+  private static final double DEFAULT_SLEEP_THRESHOLD = 0.0001;   // Level a voice goes to sleep below, -80dB
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private Synthesizer synth;
+  private BandedWaveguideNote[] voices;
+
+  // State of each voice
+  private boolean[] used;               // Whether the voice has been played at all
+  private double[] startTimes;          // Synth time of the last hit on the voice
+  private int[] regions;                // Region of the drum of the last hit on the voice
+
+  private int polyphony;                // Number of voices that may be used, up to the pool size
+  private VoiceStealingPolicy policy;
+  private double ringTime;
+  private int lastVoice;                // Most recently hit voice, which gets the pitch bends
+
+  // Usage counters, only written by the thread playing the notes but read from the sketch thread
+  private volatile long notesPlayed;
+  private volatile long voicesStolen;
+  private volatile int peakVoicesInUse;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param synth Synthesizer
+   * @param lineOut UnitGenerator the output every voice is connected to
+   * @param numSingleWaveguides int the number of bands in each voice
+   * @param numVoices int the number of voices to create
+   * @param engine WaveguideEngine how the bands of each voice are built
+   * @param policy VoiceStealingPolicy which voice to take over when all are sounding
+   */
+
+  public BandedWaveguideVoicePool(Synthesizer synth, UnitGenerator lineOut, int numSingleWaveguides, int numVoices, WaveguideEngine engine, VoiceStealingPolicy policy)
+  {
+    if(numVoices < 1)
+    {
+      throw new IllegalArgumentException("Voice pool must have at least one voice!");
+    }
+
+    this.synth = synth;
+    this.policy = policy;
+
+    voices = new BandedWaveguideNote[numVoices];
+    for(int i=0; i<numVoices; i++)
+    {
+      voices[i] = new BandedWaveguideNote(synth, lineOut, numSingleWaveguides, engine);
+      voices[i].setSleepThreshold(DEFAULT_SLEEP_THRESHOLD);
+    }
+
+    used = new boolean[numVoices];
+    startTimes = new double[numVoices];
+    regions = new int[numVoices];
+
+    polyphony = numVoices;
+    ringTime = DEFAULT_RING_TIME;
+    lastVoice = 0;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* playNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Plays a hit on a free voice, or steals one if they are all sounding
+   * @param params WaveguideParameters[] the parameters for each single banded waveguide
+   * @param fundimentalFrequency double the fundimental for the note
+   * @param gain double the overall volume
+   * @param region int the region of the drum that was hit, used by the SAME_REGION policy
+   */
+
+  public void playNote(WaveguideParameters[] params, double fundimentalFrequency, double gain, int region) throws IOException
+  {
+    double now = synth.getCurrentTime();
+
+    // Use a free voice if there is one, otherwise steal one
+    int voice = findFreeVoice(now);
+    if(voice < 0)
+    {
+      voice = chooseVoiceToSteal(region);
+      voicesStolen++;
+    }
+
+    voices[voice].playNote(params, fundimentalFrequency, gain);
+
+    used[voice] = true;
+    startTimes[voice] = now;
+    regions[voice] = region;
+    lastVoice = voice;
+
+    notesPlayed++;
+    int inUse = getVoicesInUse();
+    if(inUse > peakVoicesInUse)
+    {
+      peakVoicesInUse = inUse;
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* pitchBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Bends the most recently hit voice
+   * @param newFrequency double the new frequency to bend to
+   * @param slideDuration double the duration of the pitch bend in seconds
+   */
+
+  public void pitchBend(double newFrequency, double slideDuration)
+  {
+    voices[lastVoice].pitchBend(newFrequency, slideDuration);
+  }
+
+  /**
+   * Return whether the last pitch bend on the most recently hit voice is finished
+   * @return boolean
+   */
+
+  public boolean isPitchBendFinished()
+  {
+    return voices[lastVoice].isPitchBendFinished();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* findFreeVoice
+  //
+  /**************************************************************************************************/
+  /**
+   * Finds a voice, within the polyphony limit, that is not sounding
+   * @param now double the current synth time
+   * @return int the voice, or -1 if they are all sounding
+   */
+
+  private int findFreeVoice(double now)
+  {
+    for(int i=0; i<polyphony; i++)
+    {
+      if(!isSounding(i, now))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* chooseVoiceToSteal
+  //
+  /**************************************************************************************************/
+  /**
+   * Picks the voice to take over, using the stealing policy
+   * @param region int the region of the drum of the new hit
+   * @return int the voice
+   */
+
+  private int chooseVoiceToSteal(int region)
+  {
+    int oldest = 0;
+    int quietest = 0;
+    int oldestInRegion = -1;
+
+    for(int i=0; i<polyphony; i++)
+    {
+      if(startTimes[i] < startTimes[oldest])
+      {
+        oldest = i;
+      }
+      if(voices[i].getLevel() < voices[quietest].getLevel())
+      {
+        quietest = i;
+      }
+      if(regions[i] == region && (oldestInRegion < 0 || startTimes[i] < startTimes[oldestInRegion]))
+      {
+        oldestInRegion = i;
+      }
+    }
+
+    switch(policy)
+    {
+      case QUIETEST:    return quietest;
+      case SAME_REGION: return (oldestInRegion >= 0) ? oldestInRegion : oldest;
+      default:          return oldest;
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* isSounding
+  //
+  /**************************************************************************************************/
+  /**
+   * Whether a voice is still ringing from its last hit, it stops once it has decayed to sleep
+   * @param voice int the voice
+   * @param now double the current synth time
+   * @return boolean
+   */
+
+  private boolean isSounding(int voice, double now)
+  {
+    return used[voice] && (now - startTimes[voice]) < ringTime && voices[voice].isSounding();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return int the number of voices currently sounding
+   */
+  public int getVoicesInUse()
+  {
+    double now = synth.getCurrentTime();
+    int count = 0;
+    for(int i=0; i<voices.length; i++)
+    {
+      if(isSounding(i, now))
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return int the number of voices in the pool
+   */
+  public int getNumVoices()
+  {
+    return voices.length;
+  }
+
+  /**
+   * @return int the number of voices that may be used
+   */
+  public int getPolyphony()
+  {
+    return polyphony;
+  }
+
+  /**
+   * @return long the number of notes played
+   */
+  public long getNotesPlayed()
+  {
+    return notesPlayed;
+  }
+
+  /**
+   * @return long the number of notes that had to steal a sounding voice
+   */
+  public long getVoicesStolen()
+  {
+    return voicesStolen;
+  }
+
+  /**
+   * @return int the most voices that have been sounding at once
+   */
+  public int getPeakVoicesInUse()
+  {
+    return peakVoicesInUse;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Mutator methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @param polyphony int the number of voices that may be used, between 1 and the pool size
+   */
+  public void setPolyphony(int polyphony)
+  {
+    if(polyphony < 1 || polyphony > voices.length)
+    {
+      throw new IllegalArgumentException("Polyphony must be between 1 and the number of voices in the pool!");
+    }
+    this.polyphony = polyphony;
+  }
+
+  /**
+   * @param policy VoiceStealingPolicy which voice to take over when all are sounding
+   */
+  public void setStealingPolicy(VoiceStealingPolicy policy)
+  {
+    this.policy = policy;
+  }
+
+  /**
+   * @param ringTime double the most seconds a voice is treated as sounding after a hit, even if it has not decayed
+   */
+  public void setRingTime(double ringTime)
+  {
+    this.ringTime = ringTime;
+  }
+
+  /**
+   * @param threshold double the peak level below which a voice goes to sleep, 0 to never sleep
+   */
+  public void setSleepThreshold(double threshold)
+  {
+    for(int i=0; i<voices.length; i++)
+    {
+      voices[i].setSleepThreshold(threshold);
+    }
+  }
+
+  /**
+   * Resets the usage counters
+   */
+  public void resetCounters()
+  {
+    notesPlayed = 0;
+    voicesStolen = 0;
+    peakVoicesInUse = 0;
+  }
+}
@@ -0,0 +1,255 @@
+import org.uncommons.maths.random.MersenneTwisterRNG;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Fits a banded waveguide to every sample in the sample folders and writes the results to one preset
+ * library. Given a TargetCache, every target is decoded and analysed through it, so only the first run
+ * over a folder pays for it and later runs map the cached files. Each file is one
+ * differential evolution run on a single thread, and the runs share a work-stealing pool with a thread
+ * for each core, so the whole library keeps every core busy. The library is rewritten as each fit
+ * finishes, and a run over an existing library keeps its presets and skips the files already fitted, so
+ * an overnight run can be stopped and started again without losing the fits already done.
+ */
+
+public class BatchFitter
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final String[] SAMPLE_DIRECTORIES = { "Samples/High", "Samples/Low", "DrumSamples" };
+  private static final String[] AUDIO_EXTENSIONS = { ".aif", ".aiff", ".wav" };
+
+  private static final int NUM_WAVEGUIDES = 5;
+  private static final int POPULATION_SIZE = 70;
+  private static final int DEFAULT_GENERATIONS = 100;
+  private static final String DEFAULT_LIBRARY = "presets.txt";
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final int numWaveguides;
+  private final int generations;
+  private final ForkJoinPool pool;
+  private final PresetLibrary library;
+  private final File libraryFile;
+  private final TargetCache targetCache;         // Decoded targets and spectrograms from earlier runs, null for none
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param numWaveguides int the number of waveguides in each banded waveguide
+   * @param generations int the number of generations to run for each file
+   * @param parallelism int the number of files to fit at once
+   * @param libraryFile File the preset library to write, its presets are kept if it already exists
+   * @param targetCache TargetCache the cache to decode the targets through, or null to decode each one every run
+   */
+
+  public BatchFitter(int numWaveguides, int generations, int parallelism, File libraryFile, TargetCache targetCache) throws IOException
+  {
+    this.numWaveguides = numWaveguides;
+    this.generations = generations;
+    this.libraryFile = libraryFile;
+    pool = new ForkJoinPool(parallelism);
+    library = libraryFile.exists() ? PresetLibrary.load(libraryFile) : new PresetLibrary();
+    this.targetCache = targetCache;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* fitAll
+  //
+  /**************************************************************************************************/
+  /**
+   * Fits every file not already in the library, waiting for them all to finish. A file that can't be
+   * read or fitted is reported and the others carry on
+   * @param files List<File> the target samples
+   * @return PresetLibrary the library of fits, also written to the library file
+   */
+
+  public PresetLibrary fitAll(List<File> files)
+  {
+    List<File> toFit = new ArrayList<File>(files.size());
+    for(File file : files)
+    {
+      if(library.get(file.getPath()) != null)
+      {
+        System.out.println("Already fitted " + file);
+        continue;
+      }
+
+      // Decode every new target once, before any fits start
+      if(targetCache != null)
+      {
+        try
+        {
+          targetCache.readAudio(file.getPath());
+        }
+        catch(IOException ex)
+        {
+          System.out.println("Failed to read " + file + ": " + ex);
+          continue;
+        }
+      }
+      toFit.add(file);
+    }
+
+    List<Future<Preset>> fits = new ArrayList<Future<Preset>>(toFit.size());
+    for(int i=0; i<toFit.size(); i++)
+    {
+      final String name = toFit.get(i).getPath();
+      fits.add(pool.submit(new Callable<Preset>()
+      {
+        public Preset call() throws IOException
+        {
+          return fit(name);
+        }
+      }));
+    }
+
+    try
+    {
+      for(int i=0; i<fits.size(); i++)
+      {
+        try
+        {
+          fits.get(i).get();
+        }
+        catch(ExecutionException ex)
+        {
+          // Carry on with the other files
+          System.out.println("Failed to fit " + toFit.get(i) + ": " + ex.getCause());
+        }
+      }
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+
+    return library;
+  }
+
+  /**
+   * Fits one file and adds it to the library
+   * @param name String the name of the preset, the path of the file
+   * @return Preset the fit
+   */
+
+  private Preset fit(String name) throws IOException
+  {
+    long start = System.currentTimeMillis();
+
+    WaveguideGenome genome = new WaveguideGenome(numWaveguides);
+    SpectralDistance spectralDistance = new SpectralDistance(SpectralMetric.L1);
+    WaveguideFitnessEvaluator evaluator = (targetCache == null)
+                                        ? new WaveguideFitnessEvaluator(numWaveguides, name, spectralDistance)
+                                        : new WaveguideFitnessEvaluator(numWaveguides, name, spectralDistance, targetCache);
+
+    // Each fit evaluates on the pool worker running it, the pool runs the fits in parallel
+    WaveguideDE de = new WaveguideDE(genome, evaluator, POPULATION_SIZE, WaveguideDE.DEFAULT_DIFFERENTIAL_WEIGHT,
+                                     WaveguideDE.DEFAULT_CROSSOVER_RATE, new MersenneTwisterRNG(), 1);
+    double[] best = de.optimise(generations, 0);
+
+    Preset preset = new Preset(name, genome.decode(best), genome.decodeOverallGain(best), de.getBestFitness());
+    library.add(preset);
+    library.save(libraryFile);
+
+    System.out.printf("%s: distance %.1f in %d s%n", name, preset.getDistance(), (System.currentTimeMillis() - start) / 1000);
+    return preset;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* findSamples
+  //
+  /**************************************************************************************************/
+  /**
+   * Lists the audio files in the given folders, not including sub folders
+   * @param directories String[] the folders to look in
+   * @return List<File> the audio files, sorted by path
+   */
+
+  public static List<File> findSamples(String[] directories)
+  {
+    List<File> files = new ArrayList<File>();
+    for(String directory : directories)
+    {
+      File[] contents = new File(directory).listFiles();
+      if(contents == null)
+      {
+        System.out.println("Skipping missing folder " + directory);
+        continue;
+      }
+
+      Arrays.sort(contents);
+      for(File file : contents)
+      {
+        String lowerName = file.getName().toLowerCase();
+        for(String extension : AUDIO_EXTENSIONS)
+        {
+          if(file.isFile() && lowerName.endsWith(extension))
+          {
+            files.add(file);
+            break;
+          }
+        }
+      }
+    }
+    return files;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* main
+  //
+  /**************************************************************************************************/
+  /**
+   * Fits every sample in Samples/High, Samples/Low and DrumSamples
+   * @param args String[] optional library file to write, default presets.txt, then optional number of generations, default 100,
+   *                      then optional folder to cache the decoded targets in, default targetCache
+   */
+
+  public static void main(String[] args) throws IOException
+  {
+    File libraryFile = new File((args.length > 0) ? args[0] : DEFAULT_LIBRARY);
+    int generations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_GENERATIONS;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    File cacheDirectory = new File((args.length > 2) ? args[2] : TargetCache.DEFAULT_DIRECTORY);
+
+    List<File> files = findSamples(SAMPLE_DIRECTORIES);
+    System.out.println("Fitting " + files.size() + " samples on " + parallelism + " threads");
+
+    BatchFitter fitter = new BatchFitter(NUM_WAVEGUIDES, generations, parallelism, libraryFile, new TargetCache(cacheDirectory));
+    fitter.fitAll(files);
+
+    System.out.println("Finished, presets written to " + libraryFile);
+  }
+}
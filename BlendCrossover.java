@@ -0,0 +1,69 @@
+import org.uncommons.watchmaker.framework.operators.AbstractCrossover;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Blend crossover (BLX-alpha) for real valued genomes: each gene of each child is picked uniformly from
+ * the range between the parents' genes, extended by alpha times their distance on either side, then
+ * clamped to the gene's bounds
+ */
+
+public class BlendCrossover extends AbstractCrossover<double[]>
+{
+  private final WaveguideGenome genome;     // Layout and bounds of the genes
+  private final double alpha;               // How far past the parents the children can go
+
+  /**
+   * Class constructor
+   * @param genome WaveguideGenome the layout and bounds of the genes
+   * @param alpha double how far past the parents, as a fraction of their distance, the children can go. 0.5 is usual
+   */
+
+  public BlendCrossover(WaveguideGenome genome, double alpha)
+  {
+    // Crossover points are not used by a blend, only that every pair is mated
+    super(1);
+
+    if(alpha < 0)
+    {
+      throw new IllegalArgumentException("Alpha must be greater than or equal to 0!");
+    }
+
+    this.genome = genome;
+    this.alpha = alpha;
+  }
+
+  /**
+   * Create two children from two parents
+   * @param parent1 double[] the first parent
+   * @param parent2 double[] the second parent
+   * @param numberOfCrossoverPoints int not used
+   * @param rng Random the random number generator
+   * @return List<double[]> the two children
+   */
+
+  protected List<double[]> mate(double[] parent1, double[] parent2, int numberOfCrossoverPoints, Random rng)
+  {
+    double[] child1 = new double[parent1.length];
+    double[] child2 = new double[parent1.length];
+
+    for(int i=0; i<parent1.length; i++)
+    {
+      double lower = Math.min(parent1[i], parent2[i]);
+      double upper = Math.max(parent1[i], parent2[i]);
+      double extension = alpha * (upper - lower);
+      lower -= extension;
+      double width = (upper + extension) - lower;
+
+      child1[i] = genome.clamp(i, lower + (rng.nextDouble() * width));
+      child2[i] = genome.clamp(i, lower + (rng.nextDouble() * width));
+    }
+
+    List<double[]> children = new ArrayList<double[]>(2);
+    children.add(child1);
+    children.add(child2);
+    return children;
+  }
+}
@@ -0,0 +1,74 @@
+import org.uncommons.maths.random.MersenneTwisterRNG;
+import org.uncommons.maths.random.RepeatableRNG;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose state can be saved in a checkpoint. A Mersenne Twister does the work,
+ * but its state can't be read out, so at each checkpoint it is replaced by a new one seeded from its own
+ * output. The seed of the current generator is then the whole state, and a run resumed from it draws
+ * the same numbers as if it had never stopped.
+ */
+
+public class CheckpointableRNG extends Random implements RepeatableRNG
+{
+  private static final long serialVersionUID = 1L;
+  private static final int SEED_SIZE_BYTES = 16;      // The same as MersenneTwisterRNG
+
+  private MersenneTwisterRNG generator;
+  private byte[] seed;
+
+  /**
+   * Class constructor, with a random seed
+   */
+
+  public CheckpointableRNG()
+  {
+    generator = new MersenneTwisterRNG();
+    seed = generator.getSeed();
+  }
+
+  /**
+   * Class constructor
+   * @param seed byte[] the seed, eg from a checkpoint
+   */
+
+  public CheckpointableRNG(byte[] seed)
+  {
+    generator = new MersenneTwisterRNG(seed);
+    this.seed = seed.clone();
+  }
+
+  /**
+   * Replace the generator by one seeded from its own output, call at a checkpoint
+   * @return byte[] the new seed, to save in the checkpoint
+   */
+
+  public synchronized byte[] reseed()
+  {
+    byte[] newSeed = new byte[SEED_SIZE_BYTES];
+    generator.nextBytes(newSeed);
+    generator = new MersenneTwisterRNG(newSeed);
+    seed = newSeed;
+
+    // Also drops the Gaussian Random keeps back for the next call, which a resumed run would not have
+    super.setSeed(0);
+
+    return newSeed.clone();
+  }
+
+  /**
+   * @return byte[] the seed of the current generator
+   */
+
+  public synchronized byte[] getSeed()
+  {
+    return seed.clone();
+  }
+
+  @Override
+  protected synchronized int next(int bits)
+  {
+    return generator.nextInt() >>> (32 - bits);
+  }
+}
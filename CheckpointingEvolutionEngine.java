@@ -0,0 +1,212 @@
+import org.uncommons.watchmaker.framework.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * GenerationalEvolutionEngine that keeps the last evaluated population, which the Watchmaker engine
+ * otherwise only passes to its own evolution steps, so an observer can save it in a checkpoint.
+ *
+ * Given a surrogate fitness it also pre-screens each generation: every new candidate is scored by the
+ * surrogate, and only the most promising fraction are given to the fitness evaluator. Candidates that
+ * were evaluated in the previous generation, such as the elites, keep their fitness, as do those whose
+ * exact fitness the surrogate can give without an evaluation, such as cached scores after resuming from
+ * a checkpoint. Those that only had a surrogate score are screened again, so no score is carried over
+ * without an evaluation. The
+ * rest are given their surrogate score on the scale of the evaluated ones, but never better than the
+ * worst evaluated, so selection still favours them by rank without one ever being taken as the best of
+ * a generation. That score is only for ranking within the generation, it may be far from the true one.
+ */
+
+public class CheckpointingEvolutionEngine<T> extends GenerationalEvolutionEngine<T>
+{
+  private volatile List<EvaluatedCandidate<T>> population;     // The population of the latest generation
+  private final boolean naturalFitness;
+  private ISurrogateFitness<? super T> surrogate;               // Null to evaluate every candidate
+  private double evaluatedFraction;                             // Of the new candidates given to the fitness evaluator
+  private volatile int numEvaluated;                            // In the latest generation
+  private volatile Set<T> evaluatedCandidates;                  // Of the latest generation scored by the evaluator, null for all
+
+  /**
+   * Class constructor
+   * @param candidateFactory CandidateFactory creates the initial population
+   * @param evolutionScheme EvolutionaryOperator the mutation and crossover
+   * @param fitnessEvaluator FitnessEvaluator scores each candidate
+   * @param selectionStrategy SelectionStrategy chooses the parents of the next generation
+   * @param rng Random the random number generator
+   */
+
+  public CheckpointingEvolutionEngine(CandidateFactory<T> candidateFactory,
+                                      EvolutionaryOperator<T> evolutionScheme,
+                                      FitnessEvaluator<? super T> fitnessEvaluator,
+                                      SelectionStrategy<? super T> selectionStrategy,
+                                      Random rng)
+  {
+    super(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
+    naturalFitness = fitnessEvaluator.isNatural();
+  }
+
+  /**
+   * Pre-screens each generation with a surrogate, so only the best of it by the surrogate are evaluated
+   * @param surrogate ISurrogateFitness a cheap estimate of the fitness, on the same sense as the evaluator's
+   * @param evaluatedFraction double the fraction of the new candidates in each generation to evaluate
+   */
+
+  public void setSurrogate(ISurrogateFitness<? super T> surrogate, double evaluatedFraction)
+  {
+    this.surrogate = surrogate;
+    this.evaluatedFraction = evaluatedFraction;
+  }
+
+  /**
+   * Evaluates a new generation, keeping it for getPopulation
+   * @param population List<T> the candidates
+   * @return List<EvaluatedCandidate<T>> the candidates with their fitness
+   */
+
+  @Override
+  protected List<EvaluatedCandidate<T>> evaluatePopulation(List<T> population)
+  {
+    List<EvaluatedCandidate<T>> evaluated;
+    if(surrogate == null)
+    {
+      evaluated = super.evaluatePopulation(population);
+      numEvaluated = population.size();
+      evaluatedCandidates = null;
+    }
+    else
+    {
+      evaluated = screenPopulation(population);
+    }
+    this.population = evaluated;
+    return evaluated;
+  }
+
+  /**
+   * Scores the new candidates with the surrogate and evaluates only the best of them
+   * @param population List<T> the candidates
+   * @return List<EvaluatedCandidate<T>> the candidates with their fitness, in the same order
+   */
+
+  private List<EvaluatedCandidate<T>> screenPopulation(List<T> population)
+  {
+    // Fitness already evaluated in the last generation, surrogate scores are screened again
+    Map<T, Double> known = new HashMap<T, Double>();
+    if(this.population != null)
+    {
+      Set<T> lastEvaluated = evaluatedCandidates;
+      for(EvaluatedCandidate<T> candidate : this.population)
+      {
+        if(lastEvaluated == null || lastEvaluated.contains(candidate.getCandidate()))
+        {
+          known.put(candidate.getCandidate(), candidate.getFitness());
+        }
+      }
+    }
+
+    final double[] surrogateFitness = new double[population.size()];
+    List<Integer> unknown = new ArrayList<Integer>();
+    for(int i=0; i<population.size(); i++)
+    {
+      T candidate = population.get(i);
+      if(known.containsKey(candidate))
+      {
+        continue;
+      }
+
+      // Exact fitness that is free, such as a cached score, is never screened
+      Double exact = surrogate.peekExact(candidate);
+      if(exact != null)
+      {
+        known.put(candidate, exact);
+        continue;
+      }
+
+      surrogateFitness[i] = surrogate.getSurrogateFitness(candidate);
+      unknown.add(i);
+    }
+
+    // Best by the surrogate first
+    Collections.sort(unknown, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        int order = Double.compare(surrogateFitness[a], surrogateFitness[b]);
+        return naturalFitness ? -order : order;
+      }
+    });
+
+    int numToEvaluate = Math.min(unknown.size(), Math.max(1, (int) Math.ceil(unknown.size() * evaluatedFraction)));
+    List<T> toEvaluate = new ArrayList<T>(numToEvaluate);
+    for(int i=0; i<numToEvaluate; i++)
+    {
+      toEvaluate.add(population.get(unknown.get(i)));
+    }
+    List<EvaluatedCandidate<T>> evaluated = super.evaluatePopulation(toEvaluate);
+    numEvaluated = evaluated.size();
+
+    Set<T> nowEvaluated = new HashSet<T>(toEvaluate);
+    for(T candidate : population)
+    {
+      if(known.containsKey(candidate))
+      {
+        nowEvaluated.add(candidate);
+      }
+    }
+    evaluatedCandidates = nowEvaluated;
+
+    Double[] fitness = new Double[population.size()];
+    for(int i=0; i<population.size(); i++)
+    {
+      fitness[i] = known.get(population.get(i));
+    }
+
+    // Put the surrogate on the scale of the evaluated candidates, no better than the worst of them
+    double evaluatedSum = 0, surrogateSum = 0;
+    double worst = naturalFitness ? Double.POSITIVE_INFINITY : 0;
+    for(int i=0; i<numToEvaluate; i++)
+    {
+      double value = evaluated.get(i).getFitness();
+      fitness[unknown.get(i)] = value;
+      evaluatedSum += value;
+      surrogateSum += surrogateFitness[unknown.get(i)];
+      worst = naturalFitness ? Math.min(worst, value) : Math.max(worst, value);
+    }
+    double scale = surrogateSum > 0 ? evaluatedSum / surrogateSum : 1;
+    for(int i=numToEvaluate; i<unknown.size(); i++)
+    {
+      double value = surrogateFitness[unknown.get(i)] * scale;
+      fitness[unknown.get(i)] = naturalFitness ? Math.min(worst, value) : Math.max(worst, value);
+    }
+
+    List<EvaluatedCandidate<T>> screened = new ArrayList<EvaluatedCandidate<T>>(population.size());
+    for(int i=0; i<population.size(); i++)
+    {
+      screened.add(new EvaluatedCandidate<T>(population.get(i), fitness[i]));
+    }
+    return screened;
+  }
+
+  /**
+   * @return List<EvaluatedCandidate<T>> the population of the latest generation, null before the first
+   */
+  public List<EvaluatedCandidate<T>> getPopulation()
+  {
+    return population;
+  }
+
+  /**
+   * @return int the number of candidates the fitness evaluator was given in the latest generation
+   */
+  public int getNumEvaluated()
+  {
+    return numEvaluated;
+  }
+}
@@ -0,0 +1,50 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the telemetry of each generation as a row of a CSV file, with a header row first. Each row is
+ * flushed as it is written, so the file can be watched or plotted while the run goes on. Runs on
+ * different threads, such as islands, can share one file, the run column tells their rows apart.
+ */
+
+public class CsvTelemetrySink implements ITelemetrySink
+{
+  private final PrintWriter writer;
+
+  /**
+   * Class constructor, replacing the file if it exists
+   * @param file File the CSV file to write
+   */
+
+  public CsvTelemetrySink(File file) throws IOException
+  {
+    writer = new PrintWriter(file, "UTF-8");
+    writer.println(GenerationTelemetry.CSV_HEADER);
+    writer.flush();
+  }
+
+  /**
+   * Write one generation
+   * @param telemetry GenerationTelemetry the generation
+   */
+
+  public synchronized void record(GenerationTelemetry telemetry)
+  {
+    writer.println(telemetry.toCsv());
+    writer.flush();
+  }
+
+  /**
+   * Close the file, no more generations can be written
+   */
+
+  public synchronized void close() throws IOException
+  {
+    writer.close();
+    if(writer.checkError())
+    {
+      throw new IOException("Could not write the telemetry file");
+    }
+  }
+}
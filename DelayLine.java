@@ -0,0 +1,193 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import com.jsyn.*;
+import com.jsyn.data.*;
+import com.jsyn.unitgen.*;
+import com.jsyn.util.*;
+import com.jsyn.ports.UnitInputPort;
+import com.jsyn.ports.UnitOutputPort;
+
+
+/**
+ * Implementation for a dual tap delay line, processing a whole block of samples at a time.
+ * Replaces the per-sample read / write of the old circular buffer, the buffer is rounded up to a
+ * power of two so the pointers can be wrapped with a mask instead of a modulo, and the tap positions
+ * are only read from the ports once per block. Nothing is allocated while generating.
+ * Has one input and two outputs (one for each read pointer)
+ */
+
+public class DelayLine extends UnitFilter
+{
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private double[] delayBuffer;   // The actual array for the buffer, length is a power of two
+  private int bufferMask;         // Buffer length - 1, used to wrap the pointers
+  private int writePointer;       // Write pointer
+  private int maxDelay;           // Largest delay the line was created for
+
+  // Ports
+  public UnitOutputPort outputB;       // Second output for second read pointer
+  public UnitInputPort delayPointer1;  // First pointer delay
+  public UnitInputPort delayPointer2;  // Second pointer delay
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param maxDelay int the largest delay needed, the buffer is rounded up to the next power of two
+   * @param delayLength int the distance from the first read pointer to the write pointer initially
+   * @param delayOfSecondReadPointer int the distance from the second read pointer to the write pointer initially
+   */
+
+  public DelayLine(int maxDelay, int delayLength, int delayOfSecondReadPointer)
+  {
+    super();
+
+    // Check parameters
+    if(maxDelay < 1)
+    {
+      throw new IllegalArgumentException("Cannot create a delay line of size 0!");
+    }
+    if(delayLength > maxDelay || delayOfSecondReadPointer > maxDelay)
+    {
+      throw new IllegalArgumentException("Delay cannot be larger than the buffer size!");
+    }
+
+    this.maxDelay = maxDelay;
+
+    // Round the size up to a power of two so the pointers can be masked
+    int size = Integer.highestOneBit(maxDelay);
+    if(size < maxDelay)
+    {
+      size <<= 1;
+    }
+    delayBuffer = new double[size];
+    bufferMask = size - 1;
+    writePointer = 0;
+
+    // Add ports
+    addPort(outputB = new UnitOutputPort("OutputB"));
+    addPort(delayPointer1 = new UnitInputPort("Pointer1", delayLength));
+    addPort(delayPointer2 = new UnitInputPort("Pointer2", delayOfSecondReadPointer));
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Allocate
+  //
+  /**************************************************************************************************/
+  /**
+   * Clears the delay line ready for a new note, reusing the existing buffer
+   * @param delayLength int the distance from the first read pointer to the write pointer
+   * @param delayOfSecondReadPointer int the distance from the second read pointer to the write pointer
+   */
+
+  public void allocate(int delayLength, int delayOfSecondReadPointer)
+  {
+    if(delayLength > maxDelay || delayOfSecondReadPointer > maxDelay)
+    {
+      throw new IllegalArgumentException("Delay cannot be larger than the buffer size!");
+    }
+
+    // Zero the samples, the read pointers are worked out from the ports every block
+    Arrays.fill(delayBuffer, 0);
+    writePointer = 0;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Generate
+  //
+  /**************************************************************************************************/
+  /**
+   * Process one block of samples through the delay line
+   * @param start int
+   * @param limit int
+   */
+
+  @Override
+  public void generate(int start, int limit)
+  {
+    // Get inputs and outputs from ports
+    double[] inputs = input.getValues();
+    double[] outputAs = output.getValues();
+    double[] outputBs = outputB.getValues();
+
+    // The tap positions can only change between blocks, so read them once
+    int delay1 = (int) delayPointer1.getValues()[start];
+    int delay2 = (int) delayPointer2.getValues()[start];
+
+    // Keep the buffer state in locals for the loop
+    double[] buffer = delayBuffer;
+    int mask = bufferMask;
+    int write = writePointer;
+
+    for(int i=start; i<limit; i++)
+    {
+      // Read both taps before writing, so a delay of N returns the input from N samples ago
+      outputAs[i] = buffer[(write - delay1) & mask];  // Pointer 1
+      outputBs[i] = buffer[(write - delay2) & mask];  // Pointer 2
+
+      // Write input and advance
+      buffer[write] = inputs[i];
+      write = (write + 1) & mask;
+    }
+
+    writePointer = write;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* main
+  //
+  /**************************************************************************************************/
+  /**
+   * Allocation check, runs the delay line over many 8 sample blocks and prints the bytes the calling
+   * thread allocated per block, which should be 0
+   * @param args String[] optional number of blocks, default 1000000
+   */
+
+  public static void main(String[] args)
+  {
+    int numBlocks = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+    DelayLine delayLine = new DelayLine(1000, 441, 220);
+    double[] inputs = delayLine.input.getValues();
+    for(int i=0; i<inputs.length; i++)
+    {
+      inputs[i] = Math.sin(i * 0.1);
+    }
+
+    // Warm up the JIT before measuring
+    for(int i=0; i<100000; i++)
+    {
+      delayLine.generate(0, 8);
+    }
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for(int i=0; i<numBlocks; i++)
+    {
+      delayLine.generate(0, 8);
+    }
+    long time = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    System.out.printf("%d blocks: %.3f bytes per block, %.1f ns per block%n", numBlocks, (double) allocated / numBlocks, (double) time / numBlocks);
+  }
+}
@@ -0,0 +1,149 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed tables for turning a frequency into a delay line length and an allpass coefficient, so
+ * moving the read pointers during a pitch bend does not need any divisions. One table is shared by every
+ * voice at the same sampling rate, and is never changed once created, so can be read from any thread.
+ * The delay is looked up on a fine frequency grid, and the coefficient on a fine fractional delay grid,
+ * both with linear interpolation.
+ */
+
+public class DelayLookupTable
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double MIN_FREQUENCY = 20.0;        // Lowest frequency in the delay table
+  private static final double FREQUENCY_STEP = 0.5;        // Hz between entries in the delay table
+  private static final int COEFFICIENT_STEPS = 1024;       // Entries in the coefficient table, over fractional delays 0-1
+
+  // One table for each sampling rate in use
+  private static final Map<Double, DelayLookupTable> tables = new HashMap<Double, DelayLookupTable>();
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final double samplingRate;
+  private final double maxFrequency;          // Highest frequency in the delay table
+  private final double[] delays;              // Delay in samples for each frequency on the grid
+  private final double[] coefficients;        // Allpass coefficient for each fractional delay on the grid
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, use getInstance to share tables
+   * @param samplingRate double the sampling rate of the Synth
+   */
+
+  private DelayLookupTable(double samplingRate)
+  {
+    if(samplingRate <= 0)
+    {
+      throw new IllegalArgumentException("Sampling rate must be greater than 0!");
+    }
+
+    this.samplingRate = samplingRate;
+
+    // Cover every frequency up to Nyquist
+    int numFrequencies = (int) (((samplingRate / 2) - MIN_FREQUENCY) / FREQUENCY_STEP) + 1;
+    maxFrequency = MIN_FREQUENCY + ((numFrequencies - 1) * FREQUENCY_STEP);
+
+    delays = new double[numFrequencies];
+    for(int i=0; i<numFrequencies; i++)
+    {
+      delays[i] = samplingRate / (MIN_FREQUENCY + (i * FREQUENCY_STEP));
+    }
+
+    // One extra entry so a fractional delay of exactly 1 can be interpolated
+    coefficients = new double[COEFFICIENT_STEPS + 1];
+    for(int i=0; i<=COEFFICIENT_STEPS; i++)
+    {
+      double fracPart = (double) i / COEFFICIENT_STEPS;
+      coefficients[i] = (1-fracPart)/(1+fracPart);
+    }
+  }
+
+  /**
+   * Get the shared table for a sampling rate, creating it the first time. Creating a table allocates,
+   * so do it when setting up voices rather than on the audio thread
+   * @param samplingRate double the sampling rate of the Synth
+   * @return DelayLookupTable
+   */
+
+  public static synchronized DelayLookupTable getInstance(double samplingRate)
+  {
+    DelayLookupTable table = tables.get(samplingRate);
+    if(table == null)
+    {
+      table = new DelayLookupTable(samplingRate);
+      tables.put(samplingRate, table);
+    }
+    return table;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Lookups
+  //
+  /**************************************************************************************************/
+  /**
+   * Get the length of delay line, in samples, needed for a frequency. Frequencies outside the table
+   * are worked out directly
+   * @param frequency double the frequency in Hz
+   * @return double the delay, the integer part is the delay line length and the rest the fractional delay
+   */
+
+  public double getDelay(double frequency)
+  {
+    if(frequency < MIN_FREQUENCY || frequency >= maxFrequency)
+    {
+      return samplingRate / frequency;
+    }
+
+    double position = (frequency - MIN_FREQUENCY) * (1 / FREQUENCY_STEP);
+    int index = (int) position;
+    double fraction = position - index;
+
+    return delays[index] + (fraction * (delays[index + 1] - delays[index]));
+  }
+
+  /**
+   * Get the coefficient of the allpass filter giving a fractional delay
+   * @param fracPart double the fractional delay, between 0 and 1
+   * @return double the allpass coefficient
+   */
+
+  public double getCoefficient(double fracPart)
+  {
+    double position = fracPart * COEFFICIENT_STEPS;
+    int index = (int) position;
+    if(index >= COEFFICIENT_STEPS)
+    {
+      return coefficients[COEFFICIENT_STEPS];
+    }
+    double fraction = position - index;
+
+    return coefficients[index] + (fraction * (coefficients[index + 1] - coefficients[index]));
+  }
+
+  /**
+   * @return double the sampling rate the table was made for
+   */
+  public double getSamplingRate()
+  {
+    return samplingRate;
+  }
+}
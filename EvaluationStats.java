@@ -0,0 +1,185 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the work done by a WaveguideFitnessEvaluator: how many candidates it was asked to
+ * evaluate, how many it rendered and gave up on, and the time spent in each phase of an evaluation.
+ * Each evaluation adds its times once at the end, so the atomic counters are shared by every thread
+ * without slowing the evaluations down.
+ */
+
+public class EvaluationStats
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final AtomicLong evaluations;          // Candidates asked for, including cache hits and rejections
+  private final AtomicLong renders;              // Candidates rendered, in full or until abandoned
+  private final AtomicLong abandoned;            // Renders stopped at the abort bound
+  private final AtomicLong surrogates;           // Candidates estimated by the surrogate
+  private final AtomicLong decodeNanos;          // Bit strings to parameters
+  private final AtomicLong renderNanos;          // Synthesising the samples
+  private final AtomicLong stftNanos;            // Spectrum of each frame
+  private final AtomicLong distanceNanos;        // Comparing each frame with the target
+  private final AtomicLong surrogateNanos;       // Predicting and comparing the surrogate spectrogram
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, with every total at zero
+   */
+
+  public EvaluationStats()
+  {
+    evaluations = new AtomicLong();
+    renders = new AtomicLong();
+    abandoned = new AtomicLong();
+    surrogates = new AtomicLong();
+    decodeNanos = new AtomicLong();
+    renderNanos = new AtomicLong();
+    stftNanos = new AtomicLong();
+    distanceNanos = new AtomicLong();
+    surrogateNanos = new AtomicLong();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Counting
+  //
+  /**************************************************************************************************/
+  /**
+   * Count a candidate asked for
+   */
+
+  public void addEvaluation()
+  {
+    evaluations.incrementAndGet();
+  }
+
+  /**
+   * Add the time taken to decode a candidate
+   * @param nanos long the time in nanoseconds
+   */
+
+  public void addDecode(long nanos)
+  {
+    decodeNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Count a rendered candidate, with the time spent in each phase
+   * @param render long nanoseconds synthesising the samples
+   * @param stft long nanoseconds taking the spectrum of each frame
+   * @param distance long nanoseconds comparing the frames with the target
+   * @param wasAbandoned boolean true if it was stopped at the abort bound
+   */
+
+  public void addRender(long render, long stft, long distance, boolean wasAbandoned)
+  {
+    renders.incrementAndGet();
+    if(wasAbandoned)
+    {
+      abandoned.incrementAndGet();
+    }
+    renderNanos.addAndGet(render);
+    stftNanos.addAndGet(stft);
+    distanceNanos.addAndGet(distance);
+  }
+
+  /**
+   * Count a candidate estimated by the surrogate
+   * @param nanos long the time in nanoseconds
+   */
+
+  public void addSurrogate(long nanos)
+  {
+    surrogates.incrementAndGet();
+    surrogateNanos.addAndGet(nanos);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return long the number of candidates asked for
+   */
+  public long getEvaluations()
+  {
+    return evaluations.get();
+  }
+
+  /**
+   * @return long the number of candidates rendered
+   */
+  public long getRenders()
+  {
+    return renders.get();
+  }
+
+  /**
+   * @return long the number of renders stopped at the abort bound
+   */
+  public long getAbandoned()
+  {
+    return abandoned.get();
+  }
+
+  /**
+   * @return long the number of candidates estimated by the surrogate
+   */
+  public long getSurrogates()
+  {
+    return surrogates.get();
+  }
+
+  /**
+   * @return long nanoseconds decoding candidates
+   */
+  public long getDecodeNanos()
+  {
+    return decodeNanos.get();
+  }
+
+  /**
+   * @return long nanoseconds synthesising samples
+   */
+  public long getRenderNanos()
+  {
+    return renderNanos.get();
+  }
+
+  /**
+   * @return long nanoseconds taking spectra
+   */
+  public long getStftNanos()
+  {
+    return stftNanos.get();
+  }
+
+  /**
+   * @return long nanoseconds comparing spectra with the target
+   */
+  public long getDistanceNanos()
+  {
+    return distanceNanos.get();
+  }
+
+  /**
+   * @return long nanoseconds in the surrogate
+   */
+  public long getSurrogateNanos()
+  {
+    return surrogateNanos.get();
+  }
+}
@@ -0,0 +1,196 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least recently used cache of fitness scores, so candidates that decode to the same banded
+ * waveguide are only rendered once. Keyed by a 64 bit hash of the quantised parameters and overall gain.
+ * Safe to use from many threads, the map is locked for each lookup and the counters are atomic.
+ */
+
+public class FitnessCache
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double QUANTISATION = 65536.0;       // Steps per unit, finer than any of the decoded bits
+
+  // 64 bit FNV-1a hash
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final Map<Long, Double> scores;     // Access ordered, the eldest entry is the least recently used
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param capacity int the most scores to keep, the least recently used is dropped after that
+   */
+
+  public FitnessCache(final int capacity)
+  {
+    if(capacity < 1)
+    {
+      throw new IllegalArgumentException("Cache capacity must be at least 1!");
+    }
+
+    scores = new LinkedHashMap<Long, Double>(capacity, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+    hits = new AtomicLong();
+    misses = new AtomicLong();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Lookups
+  //
+  /**************************************************************************************************/
+  /**
+   * Get the score of a candidate, counting a hit or a miss
+   * @param key long the key of the candidate, see getKey
+   * @return Double the score, or null if it has not been evaluated
+   */
+
+  public Double get(long key)
+  {
+    Double score;
+    synchronized(scores)
+    {
+      score = scores.get(key);
+    }
+
+    if(score == null)
+    {
+      misses.incrementAndGet();
+    }
+    else
+    {
+      hits.incrementAndGet();
+    }
+    return score;
+  }
+
+  /**
+   * Get the score of a candidate without counting a hit or a miss, eg to check a score is exact
+   * @param key long the key of the candidate, see getKey
+   * @return Double the score, or null if it has not been evaluated
+   */
+
+  public Double peek(long key)
+  {
+    synchronized(scores)
+    {
+      return scores.get(key);
+    }
+  }
+
+  /**
+   * Store the score of a candidate
+   * @param key long the key of the candidate, see getKey
+   * @param score double the fitness score
+   */
+
+  public void put(long key, double score)
+  {
+    synchronized(scores)
+    {
+      scores.put(key, score);
+    }
+  }
+
+  /**
+   * Work out the key of a candidate from its decoded parameters
+   * @param params WaveguideParameters[] the parameters of each waveguide
+   * @param overallGain double the overall gain
+   * @return long the key
+   */
+
+  public static long getKey(WaveguideParameters[] params, double overallGain)
+  {
+    long hash = FNV_OFFSET;
+    for(int i=0; i<params.length; i++)
+    {
+      hash = mix(hash, params[i].getCenterFrequency());
+      hash = mix(hash, params[i].getAmplitude());
+      hash = mix(hash, params[i].getQ());
+      hash = mix(hash, params[i].getGain());
+    }
+    return mix(hash, overallGain);
+  }
+
+  /**
+   * Add one quantised value to the hash, a byte at a time
+   * @param hash long the hash so far
+   * @param value double the value to add
+   * @return long the new hash
+   */
+
+  private static long mix(long hash, double value)
+  {
+    long quantised = Math.round(value * QUANTISATION);
+    for(int i=0; i<8; i++)
+    {
+      hash ^= (quantised >>> (i * 8)) & 0xFF;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return long the number of lookups that found a score
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * @return long the number of lookups that did not find a score
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * @return int the number of scores held
+   */
+  public int size()
+  {
+    synchronized(scores)
+    {
+      return scores.size();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Everything one thread needs to evaluate a candidate: a renderer, a spectrogram calculator (the FFT has
+ * scratch state of its own), a surrogate to predict the spectrogram without rendering, and a buffer for
+ * the rendered sound. Only used by one thread at a time, the
+ * WaveguideFitnessEvaluator hands them out from a pool.
+ */
+
+public class FitnessContext
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private OfflineWaveguideRenderer renderer;     // Renders each candidate without running a synthesiser
+  private Spectrogram spectrogram;               // Spectrogram calculator
+  private SpectralSurrogate surrogate;           // Predicts the spectrogram without rendering
+  private double[] sound;                        // Samples of the candidate, reused for each evaluation
+  private double[] spectrum;                     // Magnitudes of one spectrogram frame
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate to render at
+   * @param maxBufferSize int the largest delay length needed
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   * @param soundLength int the number of samples to render
+   * @param windowSize int the spectrogram window size
+   * @param stepSamples int the number of samples the spectrogram window moves along
+   * @param surrogateFrameStride int the surrogate predicts one frame in this many
+   */
+
+  public FitnessContext(double samplingRate, int maxBufferSize, int numWaveguides, int soundLength, int windowSize, int stepSamples, int surrogateFrameStride)
+  {
+    renderer = new OfflineWaveguideRenderer(samplingRate, maxBufferSize, numWaveguides);
+    spectrogram = new Spectrogram(windowSize, stepSamples);
+    surrogate = new SpectralSurrogate(samplingRate, windowSize, stepSamples * surrogateFrameStride);
+    sound = new double[soundLength];
+    spectrum = new double[spectrogram.getNumBins()];
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return OfflineWaveguideRenderer the renderer
+   */
+  public OfflineWaveguideRenderer getRenderer()
+  {
+    return renderer;
+  }
+
+  /**
+   * @return Spectrogram the spectrogram calculator
+   */
+  public Spectrogram getSpectrogram()
+  {
+    return spectrogram;
+  }
+
+  /**
+   * @return SpectralSurrogate the surrogate spectrogram predictor
+   */
+  public SpectralSurrogate getSurrogate()
+  {
+    return surrogate;
+  }
+
+  /**
+   * @return double[] the buffer to render into
+   */
+  public double[] getSound()
+  {
+    return sound;
+  }
+
+  /**
+   * @return double[] the buffer for one spectrogram frame
+   */
+  public double[] getSpectrum()
+  {
+    return spectrum;
+  }
+}
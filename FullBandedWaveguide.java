@@ -7,7 +7,9 @@ import com.jsyn.ports.UnitOutputPort;
 
 
 /**
- * Circuit for a FullBandedWaveguide, to group together a number of SingleBandedWaveguides
+ * Circuit for a FullBandedWaveguide, to group together a number of single band waveguides, 
+ * built either as SingleBandedWaveguide circuits, as FusedBandedWaveguide units, or as one 
+ * BandedWaveguideBank running all of the bands and the mix together
  */
  
 public class FullBandedWaveguide extends Circuit
@@ -20,8 +22,9 @@ public class FullBandedWaveguide extends Circuit
   /**************************************************************************************************/
   
   // UnitGenerators
-  private SingleBandedWaveguide[] waveguides;
+  private IWaveguideBand[] waveguides;
   private Mixer mixer;
+  private BandedWaveguideBank bank;   // Only used by the BANK engine, in place of the bands and mixer
   
   // Set up and input and output
   public UnitInputPort[] inputs;    // Array of inputs for each initial evaluator / delay line
@@ -41,11 +44,35 @@ public class FullBandedWaveguide extends Circuit
    */
    
   public FullBandedWaveguide(double samplingRate, int maxBufferSize, int numSingleWaveguides)
+  {
+    this(samplingRate, maxBufferSize, numSingleWaveguides, WaveguideEngine.CIRCUIT);
+  }
+  
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate of the Synth
+   * @param maxBufferSize int the size of the circular buffer
+   * @param n int the number of single banded waveguides in the full waveguide
+   * @param engine WaveguideEngine how to build the bands
+   */
+   
+  public FullBandedWaveguide(double samplingRate, int maxBufferSize, int numSingleWaveguides, WaveguideEngine engine)
   {
     super();
     
+    // The bank runs every band and the mix in one unit
+    if(engine == WaveguideEngine.BANK)
+    {
+      add(bank = new BandedWaveguideBank(samplingRate, maxBufferSize, numSingleWaveguides));
+      inputs = bank.inputs;
+      output = bank.output;
+      return;
+    }
+    
     // Create a mixer to mix all delay lines down to, with the correct number of inputs
     mixer = new Mixer(numSingleWaveguides);
+    // Add to the circuit so it is disabled with the bands
+    add(mixer);
     // Output of circuit is the output of the mixer
     output = mixer.output;
     
@@ -53,21 +80,31 @@ public class FullBandedWaveguide extends Circuit
     inputs = new UnitInputPort[numSingleWaveguides];
     
     // Create desired number of Single banded waveguides
-    waveguides = new SingleBandedWaveguide[numSingleWaveguides];
+    waveguides = new IWaveguideBand[numSingleWaveguides];
     
     for(int i=0; i<numSingleWaveguides; i++)
     {
       // Add port for this waveguide
       addPort(inputs[i] = new UnitInputPort("Intput"));
       
+      // Create the band for the chosen engine
+      if(engine == WaveguideEngine.FUSED)
+      {
+        waveguides[i] = new FusedBandedWaveguide(samplingRate, maxBufferSize);
+      }
+      else
+      {
+        waveguides[i] = new SingleBandedWaveguide(samplingRate, maxBufferSize);
+      }
+      
       // Add waveguide to circuit
-      add(waveguides[i] = new SingleBandedWaveguide(samplingRate, maxBufferSize));
+      add(waveguides[i].getUnitGenerator());
       
       // Make each input correspond to the input of each waveguide
-      inputs[i] = waveguides[i].input;
+      inputs[i] = waveguides[i].getInput();
       
       // Connect output of each single banded waveguide to the input of the mixer
-      waveguides[i].output.connect(0, mixer.input, i); 
+      waveguides[i].getOutput().connect(0, mixer.input, i); 
     } 
   }
   
@@ -83,6 +120,12 @@ public class FullBandedWaveguide extends Circuit
    
   public void playNote(WaveguideParameters[] waveguideParameters)
   {
+    if(bank != null)
+    {
+      bank.playNote(waveguideParameters);
+      return;
+    }
+    
     // For each single banded waveguide, set up the required parameters
     for(int i=0; i<waveguides.length; i++)
     {
@@ -104,7 +147,13 @@ public class FullBandedWaveguide extends Circuit
    
   public void pitchBend(double frequencyChange, double duration)
   {   
-    for(SingleBandedWaveguide s : waveguides)
+    if(bank != null)
+    {
+      bank.pitchBend(frequencyChange, duration);
+      return;
+    }
+    
+    for(IWaveguideBand s : waveguides)
     {
       s.pitchBend(frequencyChange, duration);
     }
@@ -121,8 +170,13 @@ public class FullBandedWaveguide extends Circuit
    
   public boolean isPitchBendFinished()
   {    
+    if(bank != null)
+    {
+      return bank.isPitchBendFinished();
+    }
+    
     // Just need to look at first waveguide pitch bend controller, as all are finished at the same time
     return waveguides[0].isPitchBendFinished();
   }
 
-}
+}
@@ -0,0 +1,545 @@
+import java.util.Arrays;
+
+import com.jsyn.*;
+import com.jsyn.data.*;
+import com.jsyn.unitgen.*;
+import com.jsyn.util.*;
+import com.jsyn.ports.UnitInputPort;
+import com.jsyn.ports.UnitOutputPort;
+
+
+/**
+ * A single band of a banded waveguide as one unit generator. Runs the bandpass filter, dual tap
+ * delay line, two allpass filters and the pitch bend legato crossfade in a single loop, instead of
+ * passing each block between the five units of the SingleBandedWaveguide circuit.
+ * Produces the same output as the circuit: parameter changes made during a block (by the pitch bend
+ * or from playNote) only take effect from the next block, as they would through the unit ports.
+ */
+
+public class FusedBandedWaveguide extends UnitFilter implements IWaveguideBand
+{
+
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  // Matches the limits used by the JSyn biquad filters
+  private static final double MINIMUM_VALUE = 0.00001;
+  private static final double MAXIMUM_RATIO = 0.499;
+  private static final double VERY_SMALL = 1.0E-26;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private double samplingRate;
+  private DelayLookupTable delayTable;      // Shared frequency to delay and coefficient lookups
+  private double frequency;                 // Current frequency, updated by each pitch bend
+
+  // Values that would be held on the unit ports, read at the start of each block
+  private double bandFrequency;
+  private double bandQ;
+  private double bandAmplitude;
+  private int delay1;
+  private int delay2;
+  private double coefficient1;
+  private double coefficient2;
+
+  // Bandpass filter state
+  private double previousFrequency;
+  private double previousQ;
+  private double a0;
+  private double a2;
+  private double b1;
+  private double b2;
+  private double x1;
+  private double x2;
+  private double y1;
+  private double y2;
+
+  // Delay line state
+  private double[] delayBuffer;
+  private int bufferMask;
+  private int writePointer;
+  private int maxDelay;
+
+  // Allpass filter state
+  private double lastInput1;
+  private double lastOutput1;
+  private double lastInput2;
+  private double lastOutput2;
+
+  // Pitch bend state, as in the PitchBendController
+  private boolean pitchBend;
+  private double frequencyPointer1;
+  private double frequencyPointer2;
+  private double frequencyStep;
+  private double totalSamplesOfBend;
+  private double numSteps;
+  private double blendFactor;
+  private int count16;
+  private long totalCount;
+  private boolean currentPointer;
+
+  // Requests made from outside the audio thread, picked up at the start of the next block
+  private double pendingFrequency;
+  private double pendingQ;
+  private double pendingAmplitude;
+  private int pendingDelay;
+  private double pendingCoefficient;
+  private volatile boolean notePending;
+  private double pendingBendFrom;
+  private double pendingBendTo;
+  private double pendingBendDuration;
+  private volatile boolean bendPending;
+  private volatile boolean bending;          // Copy of pitchBend for other threads, updated every block
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate of the Synth
+   * @param maxBufferSize int the largest delay length needed, rounded up to a power of two
+   */
+
+  public FusedBandedWaveguide(double samplingRate, int maxBufferSize)
+  {
+    super();
+
+    this.samplingRate = samplingRate;
+    delayTable = DelayLookupTable.getInstance(samplingRate);
+    this.maxDelay = maxBufferSize;
+
+    // Round the delay line up to a power of two so the pointers can be masked
+    int size = Integer.highestOneBit(maxBufferSize);
+    if(size < maxBufferSize)
+    {
+      size <<= 1;
+    }
+    delayBuffer = new double[size];
+    bufferMask = size - 1;
+
+    // Same initial values as the ports in the circuit
+    delay1 = 1;
+    delay2 = 1;
+    coefficient1 = 1.0;
+    coefficient2 = 1.0;
+    bandFrequency = 400.0;
+    bandQ = 1.0;
+    bandAmplitude = 1.0;
+    currentPointer = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* IWaveguideBand
+  //
+  /**************************************************************************************************/
+
+  public UnitInputPort getInput()
+  {
+    return input;
+  }
+
+  public UnitOutputPort getOutput()
+  {
+    return output;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* PlayNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Update the parameters of the delay line, filters for new notes, applied from the next block
+   * @param waveGuideParameters WaveguideParameters the parameters for the bandpass, allpass and delay line
+   */
+
+  public void playNote(WaveguideParameters waveguideParameters)
+  {
+    // Stop any previous pitch bending
+    bendPending = false;
+
+    // Work out the length of the delay line, and the allpass coefficients from the frequency
+    frequency = waveguideParameters.getCenterFrequency();
+    double loop = delayTable.getDelay(frequency);
+    int delayLength = (int) loop;
+    double fractionalDelay = loop - delayLength;
+
+    if(delayLength > maxDelay)
+    {
+      throw new IllegalArgumentException("Delay cannot be larger than the buffer size!");
+    }
+
+    pendingDelay = delayLength;
+    pendingCoefficient = delayTable.getCoefficient(fractionalDelay);
+    pendingFrequency = frequency;
+    pendingQ = waveguideParameters.getQ();
+    pendingAmplitude = waveguideParameters.getGain();
+
+    // Publish to the audio thread
+    notePending = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* PitchBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Start bending from the current frequency, the bend begins at the next block
+   * @param frequencyChange double the +/- distance between the current frequency and the frequency to slide to
+   * @param duration double the length of the pitch bend in time
+   */
+
+  public void pitchBend(double frequencyChange, double duration)
+  {
+    double newFrequency = frequency + frequencyChange;
+
+    pendingBendFrom = frequency;
+    pendingBendTo = newFrequency;
+    pendingBendDuration = duration;
+    bendPending = true;
+
+    // Update current frequency
+    frequency = newFrequency;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* isPitchBendFinished
+  //
+  /**************************************************************************************************/
+  /**
+  * Return whether the last pitch bend is finished
+  * @return boolean
+  */
+
+  public boolean isPitchBendFinished()
+  {
+    return !bendPending && !bending;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Generate
+  //
+  /**************************************************************************************************/
+  /**
+   * Process one block through the bandpass, delay line, allpass filters and crossfade
+   * @param start int
+   * @param limit int
+   */
+
+  @Override
+  public void generate(int start, int limit)
+  {
+    // Pick up any new note or bend requested since the last block
+    if(notePending)
+    {
+      notePending = false;
+      startNote();
+    }
+    if(bendPending)
+    {
+      bendPending = false;
+      startBend(pendingBendFrom, pendingBendTo, pendingBendDuration);
+    }
+
+    // Update the bandpass coefficients if the frequency or Q has changed
+    recalculateBandpass();
+
+    double[] inputs = input.getValues();
+    double[] outputs = output.getValues();
+
+    // Latch this block's parameters, anything the bend changes below is used from the next block
+    double amplitude = bandAmplitude;
+    int d1 = delay1;
+    int d2 = delay2;
+    double c1 = coefficient1;
+    double c2 = coefficient2;
+
+    // Keep the filter state in locals for the loop
+    double fa0 = a0;
+    double fa2 = a2;
+    double fb1 = b1;
+    double fb2 = b2;
+    double fx1 = x1;
+    double fx2 = x2;
+    double fy1 = y1;
+    double fy2 = y2;
+    double[] buffer = delayBuffer;
+    int mask = bufferMask;
+    int write = writePointer;
+    double in1 = lastInput1;
+    double out1 = lastOutput1;
+    double in2 = lastInput2;
+    double out2 = lastOutput2;
+
+    for(int i=start; i<limit; i++)
+    {
+      // Bandpass
+      double x = inputs[i];
+      double y = (fa0 * x) + (fa2 * fx2) - (fb1 * fy1) - (fb2 * fy2);
+      fx2 = fx1;
+      fx1 = x;
+      fy2 = fy1;
+      fy1 = y;
+
+      // Delay line, read both taps before writing
+      double tap1 = buffer[(write - d1) & mask];
+      double tap2 = buffer[(write - d2) & mask];
+      buffer[write] = amplitude * y;
+      write = (write + 1) & mask;
+
+      // Allpass interpolation for each tap
+      double sample1 = (c1*tap1) + in1 - (c1*out1);
+      in1 = tap1;
+      out1 = sample1;
+      double sample2 = (c2*tap2) + in2 - (c2*out2);
+      in2 = tap2;
+      out2 = sample2;
+
+      // Legato crossfade
+      outputs[i] = crossfade(sample1, sample2);
+    }
+
+    // Store state back, with the same denormal offset as the JSyn biquad
+    x1 = fx1;
+    x2 = fx2;
+    y1 = fy1 + VERY_SMALL;
+    y2 = fy2 - VERY_SMALL;
+    writePointer = write;
+    lastInput1 = in1;
+    lastOutput1 = out1;
+    lastInput2 = in2;
+    lastOutput2 = out2;
+    bending = pitchBend;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* startNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Apply the parameters requested by playNote, called on the audio thread
+   */
+
+  private void startNote()
+  {
+    pitchBend = false;
+
+    delay1 = pendingDelay;
+    delay2 = pendingDelay;
+    coefficient1 = pendingCoefficient;
+    coefficient2 = pendingCoefficient;
+    bandFrequency = pendingFrequency;
+    bandQ = pendingQ;
+    bandAmplitude = pendingAmplitude;
+
+    // Empty the delay line
+    Arrays.fill(delayBuffer, 0);
+    writePointer = 0;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* recalculateBandpass
+  //
+  /**************************************************************************************************/
+  /**
+   * Works out the bandpass coefficients in the same way as the JSyn FilterBandPass
+   */
+
+  private void recalculateBandpass()
+  {
+    double f = bandFrequency;
+    double q = bandQ;
+    if(f < MINIMUM_VALUE)
+    {
+      f = MINIMUM_VALUE;
+    }
+    if(q < MINIMUM_VALUE)
+    {
+      q = MINIMUM_VALUE;
+    }
+
+    if(f == previousFrequency && q == previousQ)
+    {
+      return;
+    }
+    previousFrequency = f;
+    previousQ = q;
+
+    double ratio = f * getFramePeriod();
+    if(ratio >= MAXIMUM_RATIO)
+    {
+      ratio = MAXIMUM_RATIO;
+    }
+    double omega = 2.0 * Math.PI * ratio;
+    double alpha = Math.sin(omega) / (2.0 * q);
+    double scalar = 1.0 / (1.0 + alpha);
+
+    a0 = alpha * scalar;
+    a2 = -a0;
+    b1 = -2.0 * Math.cos(omega) * scalar;
+    b2 = (1.0 - alpha) * scalar;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* startBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Start the pitch bend, as in PitchBendController.startBend, called on the audio thread
+   * @param f1 double the frequency to bend from
+   * @param f2 double the frequency to bend to
+   * @param duration double the length of the pitch bend in seconds
+   */
+
+  private void startBend(double f1, double f2, double duration)
+  {
+    frequencyPointer1 = f1;
+    frequencyPointer2 = f1;
+
+    totalSamplesOfBend = (int) (samplingRate * duration);
+    numSteps = (int) (totalSamplesOfBend / 16);
+    frequencyStep = 2 * ((f2 - f1) / numSteps);
+
+    if(currentPointer == true)
+    {
+      frequencyPointer2 = frequencyPointer1 - (0.5 * frequencyStep);
+      double delay = delayTable.getDelay(frequencyPointer2);
+      int intPart = (int) delay;
+      delay2 = intPart;
+      double fracPart = delay - intPart;
+      coefficient2 = delayTable.getCoefficient(fracPart);
+    }
+    else
+    {
+      frequencyPointer1 = frequencyPointer2 - (0.5 * frequencyStep);
+      double delay = delayTable.getDelay(frequencyPointer1);
+      int intPart = (int) delay;
+      delay1 = intPart;
+      double fracPart = delay - intPart;
+      coefficient1 = delayTable.getCoefficient(fracPart);
+    }
+
+    pitchBend = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* crossfade
+  //
+  /**************************************************************************************************/
+  /**
+   * One sample of the PitchBendController, moving the read pointers every 16 samples while bending.
+   * Changes to the delays, coefficients and bandpass frequency are picked up at the next block
+   * @param sample1 double the output of the first allpass filter
+   * @param sample2 double the output of the second allpass filter
+   * @return double the crossfaded sample
+   */
+
+  private double crossfade(double sample1, double sample2)
+  {
+    if(pitchBend == true)
+    {
+      // If count is 0, 16 samples have passed to alter delay length
+      if(count16 == 0)
+      {
+        if(currentPointer == true)
+        {
+          frequencyPointer2 += frequencyStep;
+          double delay = delayTable.getDelay(frequencyPointer2);
+          int intPart = (int) delay;
+          delay2 = intPart;
+          double fracPart = delay - intPart;
+          coefficient2 = delayTable.getCoefficient(fracPart);
+          bandFrequency = frequencyPointer2;
+        }
+        else
+        {
+          frequencyPointer1 += frequencyStep;
+          double delay = delayTable.getDelay(frequencyPointer1);
+          int intPart = (int) delay;
+          delay1 = intPart;
+          double fracPart = delay - intPart;
+          coefficient1 = delayTable.getCoefficient(fracPart);
+          bandFrequency = frequencyPointer1;
+        }
+
+        blendFactor = 0;
+      }
+
+      if(count16 > 4)
+      {
+        blendFactor = (count16 - 5) / 11;
+      }
+
+      // Pitch bend is finished so reset variables
+      if(totalCount >= totalSamplesOfBend)
+      {
+        pitchBend = false;
+        count16 = 0;
+        totalCount = 0;
+        blendFactor = 0;
+        currentPointer = (numSteps % 2 == 0);
+      }
+    }
+
+    // Set the current pointer sample to interpolate from for the legato crossfade
+    double firstSample = sample1;
+    double secondSample = sample2;
+    if(currentPointer == false)
+    {
+      firstSample = sample2;
+      secondSample = sample1;
+    }
+
+    double range = Math.abs(firstSample - secondSample);
+    double result = 0;
+    if(firstSample < secondSample)
+    {
+      result = firstSample + (blendFactor * range);
+    }
+    else
+    {
+      result = firstSample - (blendFactor * range);
+    }
+
+    // If pitchbending and time to swap pointer, swap
+    if(pitchBend == true)
+    {
+      if(count16 == 0)
+      {
+        currentPointer = !currentPointer;
+      }
+      count16 = (count16 + 1) % 16;
+      totalCount++;
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,252 @@
+import org.uncommons.maths.binary.BitString;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of a bit string genetic algorithm: the generation number, the seed of the random number
+ * generator, and every candidate with its fitness and whether that fitness is exact, rather than an
+ * estimate from an abandoned render or the surrogate. Stored as a compact binary file, with each
+ * candidate packed 8 bits to a byte:
+ *   int magic, int version, int generation, int seed length, seed bytes,
+ *   int number of candidates, int bits per candidate, then for each candidate double fitness,
+ *   byte exact and its bytes
+ */
+
+public class GACheckpoint
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int MAGIC = 0x57474143;     // "WGAC"
+  private static final int VERSION = 1;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final int generation;
+  private final byte[] seed;
+  private final List<BitString> candidates;
+  private final double[] fitness;
+  private final boolean[] exact;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param generation int the generation number of the population
+   * @param seed byte[] the seed of the random number generator after this generation
+   * @param candidates List<BitString> every candidate in the population, all the same length
+   * @param fitness double[] the fitness of each candidate
+   * @param exact boolean[] whether the fitness of each candidate is exact
+   */
+
+  public GACheckpoint(int generation, byte[] seed, List<BitString> candidates, double[] fitness, boolean[] exact)
+  {
+    if(candidates.size() != fitness.length || candidates.size() != exact.length)
+    {
+      throw new IllegalArgumentException("Number of fitness values must be equal to the number of candidates!");
+    }
+
+    this.generation = generation;
+    this.seed = seed.clone();
+    this.candidates = new ArrayList<BitString>(candidates);
+    this.fitness = fitness.clone();
+    this.exact = exact.clone();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* encode
+  //
+  /**************************************************************************************************/
+  /**
+   * Writes the checkpoint into a buffer, ready to be written to a file
+   * @return ByteBuffer the encoded checkpoint, flipped ready for reading
+   */
+
+  public ByteBuffer encode()
+  {
+    int numBits = candidates.isEmpty() ? 0 : candidates.get(0).getLength();
+    int bytesPerCandidate = (numBits + 7) / 8;
+
+    ByteBuffer buffer = ByteBuffer.allocate((6 * 4) + seed.length + (candidates.size() * (8 + 1 + bytesPerCandidate)));
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(generation);
+    buffer.putInt(seed.length);
+    buffer.put(seed);
+    buffer.putInt(candidates.size());
+    buffer.putInt(numBits);
+
+    byte[] packed = new byte[bytesPerCandidate];
+    for(int c=0; c<candidates.size(); c++)
+    {
+      BitString candidate = candidates.get(c);
+      if(candidate.getLength() != numBits)
+      {
+        throw new IllegalArgumentException("Every candidate must be the same length!");
+      }
+
+      for(int i=0; i<bytesPerCandidate; i++)
+      {
+        packed[i] = 0;
+      }
+      for(int i=0; i<numBits; i++)
+      {
+        if(candidate.getBit(i))
+        {
+          packed[i / 8] |= (byte) (1 << (i % 8));
+        }
+      }
+
+      buffer.putDouble(fitness[c]);
+      buffer.put((byte) (exact[c] ? 1 : 0));
+      buffer.put(packed);
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* read
+  //
+  /**************************************************************************************************/
+  /**
+   * Reads a checkpoint file
+   * @param file File the checkpoint
+   * @return GACheckpoint the checkpoint
+   */
+
+  public static GACheckpoint read(File file) throws IOException
+  {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = input.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      while(buffer.hasRemaining())
+      {
+        if(channel.read(buffer) < 0)
+        {
+          break;
+        }
+      }
+      buffer.flip();
+
+      if(buffer.remaining() < 16 || buffer.getInt() != MAGIC)
+      {
+        throw new IOException("Not a genetic algorithm checkpoint: " + file);
+      }
+      int version = buffer.getInt();
+      if(version != VERSION)
+      {
+        throw new IOException("Unsupported genetic algorithm checkpoint version " + version + ": " + file);
+      }
+
+      int generation = buffer.getInt();
+      byte[] seed = new byte[buffer.getInt()];
+      buffer.get(seed);
+
+      int numCandidates = buffer.getInt();
+      int numBits = buffer.getInt();
+      int bytesPerCandidate = (numBits + 7) / 8;
+
+      List<BitString> candidates = new ArrayList<BitString>(numCandidates);
+      double[] fitness = new double[numCandidates];
+      boolean[] exact = new boolean[numCandidates];
+      byte[] packed = new byte[bytesPerCandidate];
+      for(int c=0; c<numCandidates; c++)
+      {
+        fitness[c] = buffer.getDouble();
+        exact[c] = (buffer.get() != 0);
+        buffer.get(packed);
+
+        BitString candidate = new BitString(numBits);
+        for(int i=0; i<numBits; i++)
+        {
+          candidate.setBit(i, (packed[i / 8] & (1 << (i % 8))) != 0);
+        }
+        candidates.add(candidate);
+      }
+
+      return new GACheckpoint(generation, seed, candidates, fitness, exact);
+    }
+    catch(RuntimeException ex)
+    {
+      // A truncated or corrupt file runs off the end of the buffer
+      throw new IOException("Invalid genetic algorithm checkpoint: " + file, ex);
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return int the generation number of the population
+   */
+  public int getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * @return byte[] the seed of the random number generator to resume with
+   */
+  public byte[] getSeed()
+  {
+    return seed.clone();
+  }
+
+  /**
+   * @return List<BitString> every candidate in the population
+   */
+  public List<BitString> getCandidates()
+  {
+    return new ArrayList<BitString>(candidates);
+  }
+
+  /**
+   * @return double[] the fitness of each candidate
+   */
+  public double[] getFitness()
+  {
+    return fitness.clone();
+  }
+
+  /**
+   * @return boolean[] whether the fitness of each candidate is exact, false for an estimate
+   */
+  public boolean[] getExact()
+  {
+    return exact.clone();
+  }
+}
@@ -0,0 +1,181 @@
+import org.uncommons.maths.binary.BitString;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.PopulationData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EvolutionObserver that saves a GACheckpoint every few generations. The population is encoded on the
+ * evolution thread, which is quick, and written to disk on a background thread, so evaluation never
+ * waits for the disk. Each checkpoint is written to a temporary file then moved over the last one, so
+ * a crash while writing leaves the previous checkpoint intact.
+ */
+
+public class GACheckpointer implements EvolutionObserver<BitString>
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final CheckpointingEvolutionEngine<BitString> engine;     // Holds the population
+  private final CheckpointableRNG rng;                              // The engine's random number generator
+  private final WaveguideFitnessEvaluator evaluator;                // Tells exact scores from estimates
+  private final Path file;
+  private final Path temporaryFile;
+  private final int interval;                                       // Generations between checkpoints
+  private final int generationOffset;                               // Generations done before a resume
+  private final ExecutorService writer;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param engine CheckpointingEvolutionEngine the engine to save the population of
+   * @param rng CheckpointableRNG the random number generator the engine was created with
+   * @param evaluator WaveguideFitnessEvaluator the evaluator of the engine
+   * @param file File the checkpoint file
+   * @param interval int the number of generations between checkpoints
+   * @param generationOffset int the generation the run resumed from, 0 for a new run
+   */
+
+  public GACheckpointer(CheckpointingEvolutionEngine<BitString> engine, CheckpointableRNG rng, WaveguideFitnessEvaluator evaluator, File file, int interval, int generationOffset)
+  {
+    if(interval < 1)
+    {
+      throw new IllegalArgumentException("Checkpoint interval must be at least 1!");
+    }
+
+    this.engine = engine;
+    this.rng = rng;
+    this.evaluator = evaluator;
+    this.file = file.toPath();
+    this.temporaryFile = new File(file.getPath() + ".tmp").toPath();
+    this.interval = interval;
+    this.generationOffset = generationOffset;
+
+    // One background thread, so checkpoints are written in order, which doesn't keep the program running
+    writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "GA checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* populationUpdate
+  //
+  /**************************************************************************************************/
+  /**
+   * Called by the engine after each generation, saves a checkpoint every interval generations
+   * @param data PopulationData statistics of the generation
+   */
+
+  public void populationUpdate(PopulationData<? extends BitString> data)
+  {
+    int generation = generationOffset + data.getGenerationNumber();
+    if(data.getGenerationNumber() == 0 || generation % interval != 0)
+    {
+      return;
+    }
+
+    List<EvaluatedCandidate<BitString>> population = engine.getPopulation();
+    if(population == null)
+    {
+      return;
+    }
+
+    List<BitString> candidates = new ArrayList<BitString>(population.size());
+    double[] fitness = new double[population.size()];
+    boolean[] exact = new boolean[population.size()];
+    for(int i=0; i<population.size(); i++)
+    {
+      candidates.add(population.get(i).getCandidate());
+      fitness[i] = population.get(i).getFitness();
+      exact[i] = evaluator.isExact(candidates.get(i), fitness[i]);
+    }
+
+    // The next generation is drawn from the new seed, whether or not the run is resumed
+    byte[] seed = rng.reseed();
+
+    final ByteBuffer buffer = new GACheckpoint(generation, seed, candidates, fitness, exact).encode();
+    writer.execute(new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          write(buffer);
+        }
+        catch(IOException ex)
+        {
+          System.out.println("Failed to write checkpoint " + file + ": " + ex);
+        }
+      }
+    });
+  }
+
+  /**
+   * Writes an encoded checkpoint, replacing the last one
+   * @param buffer ByteBuffer the encoded checkpoint
+   */
+
+  private void write(ByteBuffer buffer) throws IOException
+  {
+    FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try
+    {
+      while(buffer.hasRemaining())
+      {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    finally
+    {
+      channel.close();
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* close
+  //
+  /**************************************************************************************************/
+  /**
+   * Waits for checkpoints still being written, call once the run has finished
+   */
+
+  public void close() throws InterruptedException
+  {
+    writer.shutdown();
+    writer.awaitTermination(1, TimeUnit.MINUTES);
+  }
+}
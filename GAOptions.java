@@ -0,0 +1,179 @@
+/**
+ * Simple Class for the optional settings of a WaveguideGA run, shared by the single population and
+ * island runs. A new GAOptions compares spectrograms with the L1 metric, seeds from the target's spectral
+ * peaks, decodes the target rather than caching it, and neither checkpoints, writes telemetry nor
+ * screens with the surrogate. Change only the settings that should differ.
+ */
+
+public class GAOptions
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  // Default seeding from spectral peaks, a longer window than the fitness spectrogram to resolve the peaks
+  private static final int SEED_WINDOW_SIZE = 2048;
+  private static final int SEED_SAMPLES_STEP = 256;
+  private static final int SAMPLE_RATE = 44100;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private SpectralDistance spectralDistance;
+  private String checkpointFilePath;
+  private IModeEstimator modeEstimator;
+  private String telemetryFilePath;
+  private boolean screenWithSurrogate;
+  private TargetCache targetCache;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, with the default settings
+   */
+
+  public GAOptions()
+  {
+    spectralDistance = new SpectralDistance(SpectralMetric.L1);
+    checkpointFilePath = null;
+    modeEstimator = new SpectralPeakSeeder(SEED_WINDOW_SIZE, SEED_SAMPLES_STEP, SAMPLE_RATE);
+    telemetryFilePath = null;
+    screenWithSurrogate = false;
+    targetCache = null;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return SpectralDistance how to compare the spectrograms of the candidates and target
+   */
+  public SpectralDistance getSpectralDistance()
+  {
+    return spectralDistance;
+  }
+
+  /**
+   * @return String the checkpoint file, or null to not checkpoint
+   */
+  public String getCheckpointFilePath()
+  {
+    return checkpointFilePath;
+  }
+
+  /**
+   * @return IModeEstimator estimates the modes to seed from, or null for an unseeded population
+   */
+  public IModeEstimator getModeEstimator()
+  {
+    return modeEstimator;
+  }
+
+  /**
+   * @return String the CSV file for the telemetry, or null to only print it
+   */
+  public String getTelemetryFilePath()
+  {
+    return telemetryFilePath;
+  }
+
+  /**
+   * @return boolean true to only render the candidates the surrogate ranks best
+   */
+  public boolean getScreenWithSurrogate()
+  {
+    return screenWithSurrogate;
+  }
+
+  /**
+   * @return TargetCache the cache of decoded targets, or null to decode the target
+   */
+  public TargetCache getTargetCache()
+  {
+    return targetCache;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Mutator methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @param spectralDistance SpectralDistance how to compare the spectrograms of the candidates and target
+   */
+  public void setSpectralDistance(SpectralDistance spectralDistance)
+  {
+    if(spectralDistance == null)
+    {
+      throw new IllegalArgumentException("A spectral distance is required");
+    }
+    this.spectralDistance = spectralDistance;
+  }
+
+  /**
+   * Saves a checkpoint every few generations. If the checkpoint file already exists the run carries on
+   * from it, otherwise a new run is started. Only the single population run checkpoints
+   * @param checkpointFilePath String the checkpoint file, or null to not checkpoint
+   */
+  public void setCheckpointFilePath(String checkpointFilePath)
+  {
+    this.checkpointFilePath = checkpointFilePath;
+  }
+
+  /**
+   * Seeds part of a new population from the given estimate of the target's modes, such as the spectral
+   * peaks or a PronyModeEstimator fit
+   * @param modeEstimator IModeEstimator estimates the modes to seed from, or null for an unseeded population
+   */
+  public void setModeEstimator(IModeEstimator modeEstimator)
+  {
+    this.modeEstimator = modeEstimator;
+  }
+
+  /**
+   * Writes the telemetry of each generation, the evaluations per second, cache hits and time spent
+   * decoding, rendering, taking spectra and comparing them, to a CSV file. Every island writes to the same file
+   * @param telemetryFilePath String the CSV file, or null to only print the telemetry
+   */
+  public void setTelemetryFilePath(String telemetryFilePath)
+  {
+    this.telemetryFilePath = telemetryFilePath;
+  }
+
+  /**
+   * Pre-screens each generation with the spectral surrogate so only the best of the new candidates are
+   * rendered. Off by default, as on some targets the surrogate ranks candidates poorly, and when most
+   * renders are abandoned early anyway it can cost more than it saves
+   * @param screenWithSurrogate boolean true to only render the candidates the surrogate ranks best
+   */
+  public void setScreenWithSurrogate(boolean screenWithSurrogate)
+  {
+    this.screenWithSurrogate = screenWithSurrogate;
+  }
+
+  /**
+   * Reads the target and its spectrogram through a TargetCache, so only the first run on a file decodes
+   * and analyses it
+   * @param targetCache TargetCache the cache of decoded targets, or null to decode the target
+   */
+  public void setTargetCache(TargetCache targetCache)
+  {
+    this.targetCache = targetCache;
+  }
+}
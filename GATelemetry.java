@@ -0,0 +1,152 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Turns the running totals of a WaveguideFitnessEvaluator and its fitness cache into a GenerationTelemetry
+ * for each generation, by taking the difference from the totals at the end of the last one, and sends
+ * it to each sink. Call endGeneration from an EvolutionObserver, once per generation. The sinks are
+ * left open, as they may be shared with other runs.
+ */
+
+public class GATelemetry
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double NANOS_PER_MILLI = 1e6;
+  private static final double NANOS_PER_SECOND = 1e9;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final String run;
+  private final EvaluationStats stats;
+  private final FitnessCache cache;
+  private final List<ITelemetrySink> sinks;
+
+  // Totals at the end of the last generation
+  private long lastTime;
+  private long lastEvaluations;
+  private long lastRenders;
+  private long lastAbandoned;
+  private long lastSurrogates;
+  private long lastCacheHits;
+  private long lastCacheMisses;
+  private long lastDecodeNanos;
+  private long lastRenderNanos;
+  private long lastStftNanos;
+  private long lastDistanceNanos;
+  private long lastSurrogateNanos;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, the first generation is timed from here
+   * @param run String which run this is, written with each generation
+   * @param evaluator WaveguideFitnessEvaluator the evaluator of the run
+   */
+
+  public GATelemetry(String run, WaveguideFitnessEvaluator evaluator)
+  {
+    this.run = run;
+    stats = evaluator.getStats();
+    cache = evaluator.getCache();
+    sinks = new CopyOnWriteArrayList<ITelemetrySink>();
+
+    lastTime = System.nanoTime();
+    lastEvaluations = stats.getEvaluations();
+    lastRenders = stats.getRenders();
+    lastAbandoned = stats.getAbandoned();
+    lastSurrogates = stats.getSurrogates();
+    lastCacheHits = cache.getHits();
+    lastCacheMisses = cache.getMisses();
+    lastDecodeNanos = stats.getDecodeNanos();
+    lastRenderNanos = stats.getRenderNanos();
+    lastStftNanos = stats.getStftNanos();
+    lastDistanceNanos = stats.getDistanceNanos();
+    lastSurrogateNanos = stats.getSurrogateNanos();
+  }
+
+  /**
+   * Send each generation to a sink as well
+   * @param sink ITelemetrySink the sink
+   */
+
+  public void addSink(ITelemetrySink sink)
+  {
+    sinks.add(sink);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* endGeneration
+  //
+  /**************************************************************************************************/
+  /**
+   * Works out what the generation just finished cost and sends it to the sinks
+   * @param generation int the generation number
+   * @param bestFitness double the fitness of the best candidate
+   * @return GenerationTelemetry the generation
+   */
+
+  public synchronized GenerationTelemetry endGeneration(int generation, double bestFitness)
+  {
+    long time = System.nanoTime();
+    long evaluations = stats.getEvaluations();
+    long renders = stats.getRenders();
+    long abandoned = stats.getAbandoned();
+    long surrogates = stats.getSurrogates();
+    long cacheHits = cache.getHits();
+    long cacheMisses = cache.getMisses();
+    long decodeNanos = stats.getDecodeNanos();
+    long renderNanos = stats.getRenderNanos();
+    long stftNanos = stats.getStftNanos();
+    long distanceNanos = stats.getDistanceNanos();
+    long surrogateNanos = stats.getSurrogateNanos();
+
+    GenerationTelemetry telemetry = new GenerationTelemetry(run, generation, bestFitness,
+                                                            (time - lastTime) / NANOS_PER_SECOND,
+                                                            evaluations - lastEvaluations,
+                                                            renders - lastRenders,
+                                                            abandoned - lastAbandoned,
+                                                            surrogates - lastSurrogates,
+                                                            cacheHits - lastCacheHits,
+                                                            cacheMisses - lastCacheMisses,
+                                                            (decodeNanos - lastDecodeNanos) / NANOS_PER_MILLI,
+                                                            (renderNanos - lastRenderNanos) / NANOS_PER_MILLI,
+                                                            (stftNanos - lastStftNanos) / NANOS_PER_MILLI,
+                                                            (distanceNanos - lastDistanceNanos) / NANOS_PER_MILLI,
+                                                            (surrogateNanos - lastSurrogateNanos) / NANOS_PER_MILLI);
+
+    lastTime = time;
+    lastEvaluations = evaluations;
+    lastRenders = renders;
+    lastAbandoned = abandoned;
+    lastSurrogates = surrogates;
+    lastCacheHits = cacheHits;
+    lastCacheMisses = cacheMisses;
+    lastDecodeNanos = decodeNanos;
+    lastRenderNanos = renderNanos;
+    lastStftNanos = stftNanos;
+    lastDistanceNanos = distanceNanos;
+    lastSurrogateNanos = surrogateNanos;
+
+    for(ITelemetrySink sink : sinks)
+    {
+      sink.record(telemetry);
+    }
+    return telemetry;
+  }
+}
@@ -0,0 +1,64 @@
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.maths.random.Probability;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mutation for real valued genomes: each gene is changed, with the given probability, by adding
+ * Gaussian noise with a standard deviation proportional to the range of the gene, then clamped to
+ * its bounds
+ */
+
+public class GaussianMutation implements EvolutionaryOperator<double[]>
+{
+  private final WaveguideGenome genome;     // Layout and bounds of the genes
+  private final Probability probability;    // Chance of each gene being mutated
+  private final double deviation;           // Standard deviation, as a fraction of each gene's range
+
+  /**
+   * Class constructor
+   * @param genome WaveguideGenome the layout and bounds of the genes
+   * @param probability Probability the chance of each gene being mutated
+   * @param deviation double the standard deviation of the noise, as a fraction of each gene's range
+   */
+
+  public GaussianMutation(WaveguideGenome genome, Probability probability, double deviation)
+  {
+    if(deviation <= 0)
+    {
+      throw new IllegalArgumentException("Deviation must be greater than 0!");
+    }
+
+    this.genome = genome;
+    this.probability = probability;
+    this.deviation = deviation;
+  }
+
+  /**
+   * Mutate the selected candidates
+   * @param selectedCandidates List<double[]> the candidates to mutate, which are not changed
+   * @param rng Random the random number generator
+   * @return List<double[]> the mutated candidates
+   */
+
+  public List<double[]> apply(List<double[]> selectedCandidates, Random rng)
+  {
+    List<double[]> mutated = new ArrayList<double[]>(selectedCandidates.size());
+    for(double[] candidate : selectedCandidates)
+    {
+      double[] genes = candidate.clone();
+      for(int i=0; i<genes.length; i++)
+      {
+        if(probability.nextEvent(rng))
+        {
+          double range = genome.getUpperBound(i) - genome.getLowerBound(i);
+          genes[i] = genome.clamp(i, genes[i] + (rng.nextGaussian() * deviation * range));
+        }
+      }
+      mutated.add(genes);
+    }
+    return mutated;
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * What one generation of a genetic algorithm cost: how many candidates were evaluated and how fast, the
+ * fitness cache hits, and the wall clock time split across decoding, rendering, spectra, distances and the
+ * surrogate. The phase times are summed over every evaluating thread, so on many cores they can add up to
+ * more than the generation took.
+ */
+
+public class GenerationTelemetry
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  public static final String CSV_HEADER = "run,generation,best_fitness,seconds,evaluations,evaluations_per_second,"
+                                        + "renders,abandoned,surrogates,cache_hits,cache_misses,"
+                                        + "decode_ms,render_ms,stft_ms,distance_ms,surrogate_ms";
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final String run;                      // Which run, eg the target or the island
+  private final int generation;
+  private final double bestFitness;
+  private final double seconds;                  // Wall clock time of the generation
+  private final long evaluations;
+  private final long renders;
+  private final long abandoned;
+  private final long surrogates;
+  private final long cacheHits;
+  private final long cacheMisses;
+  private final double decodeMillis;
+  private final double renderMillis;
+  private final double stftMillis;
+  private final double distanceMillis;
+  private final double surrogateMillis;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, each count and time is for this generation alone
+   * @param run String which run the generation belongs to
+   * @param generation int the generation number
+   * @param bestFitness double the fitness of the best candidate
+   * @param seconds double the wall clock time of the generation
+   * @param evaluations long the number of candidates asked for
+   * @param renders long the number of candidates rendered
+   * @param abandoned long the number of renders stopped at the abort bound
+   * @param surrogates long the number of candidates estimated by the surrogate
+   * @param cacheHits long the number of fitness cache hits
+   * @param cacheMisses long the number of fitness cache misses
+   * @param decodeMillis double the time decoding candidates
+   * @param renderMillis double the time synthesising samples
+   * @param stftMillis double the time taking spectra
+   * @param distanceMillis double the time comparing spectra with the target
+   * @param surrogateMillis double the time in the surrogate
+   */
+
+  public GenerationTelemetry(String run, int generation, double bestFitness, double seconds,
+                             long evaluations, long renders, long abandoned, long surrogates, long cacheHits, long cacheMisses,
+                             double decodeMillis, double renderMillis, double stftMillis, double distanceMillis, double surrogateMillis)
+  {
+    this.run = run;
+    this.generation = generation;
+    this.bestFitness = bestFitness;
+    this.seconds = seconds;
+    this.evaluations = evaluations;
+    this.renders = renders;
+    this.abandoned = abandoned;
+    this.surrogates = surrogates;
+    this.cacheHits = cacheHits;
+    this.cacheMisses = cacheMisses;
+    this.decodeMillis = decodeMillis;
+    this.renderMillis = renderMillis;
+    this.stftMillis = stftMillis;
+    this.distanceMillis = distanceMillis;
+    this.surrogateMillis = surrogateMillis;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Formatting
+  //
+  /**************************************************************************************************/
+  /**
+   * @return String one row of values in the order of CSV_HEADER
+   */
+
+  public String toCsv()
+  {
+    return String.format("%s,%d,%s,%.4f,%d,%.1f,%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+                         run.replace(',', ' '), generation, bestFitness, seconds, evaluations, getEvaluationsPerSecond(),
+                         renders, abandoned, surrogates, cacheHits, cacheMisses,
+                         decodeMillis, renderMillis, stftMillis, distanceMillis, surrogateMillis);
+  }
+
+  /**
+   * @return String a one line summary for the console
+   */
+
+  @Override
+  public String toString()
+  {
+    return String.format("%.0f evaluations/s, %d rendered (%d abandoned), %d surrogate, %d cache hits; "
+                         + "decode %.1f ms, render %.1f ms, stft %.1f ms, distance %.1f ms, surrogate %.1f ms",
+                         getEvaluationsPerSecond(), renders, abandoned, surrogates, cacheHits,
+                         decodeMillis, renderMillis, stftMillis, distanceMillis, surrogateMillis);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return double the candidates evaluated per second of wall clock time
+   */
+  public double getEvaluationsPerSecond()
+  {
+    return (seconds > 0) ? evaluations / seconds : 0;
+  }
+
+  /**
+   * @return String which run the generation belongs to
+   */
+  public String getRun()
+  {
+    return run;
+  }
+
+  /**
+   * @return int the generation number
+   */
+  public int getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * @return double the fitness of the best candidate
+   */
+  public double getBestFitness()
+  {
+    return bestFitness;
+  }
+
+  /**
+   * @return double the wall clock time of the generation
+   */
+  public double getSeconds()
+  {
+    return seconds;
+  }
+
+  /**
+   * @return long the number of candidates asked for
+   */
+  public long getEvaluations()
+  {
+    return evaluations;
+  }
+
+  /**
+   * @return long the number of candidates rendered
+   */
+  public long getRenders()
+  {
+    return renders;
+  }
+
+  /**
+   * @return long the number of renders stopped at the abort bound
+   */
+  public long getAbandoned()
+  {
+    return abandoned;
+  }
+
+  /**
+   * @return long the number of candidates estimated by the surrogate
+   */
+  public long getSurrogates()
+  {
+    return surrogates;
+  }
+
+  /**
+   * @return long the number of fitness cache hits
+   */
+  public long getCacheHits()
+  {
+    return cacheHits;
+  }
+
+  /**
+   * @return long the number of fitness cache misses
+   */
+  public long getCacheMisses()
+  {
+    return cacheMisses;
+  }
+
+  /**
+   * @return double milliseconds decoding candidates
+   */
+  public double getDecodeMillis()
+  {
+    return decodeMillis;
+  }
+
+  /**
+   * @return double milliseconds synthesising samples
+   */
+  public double getRenderMillis()
+  {
+    return renderMillis;
+  }
+
+  /**
+   * @return double milliseconds taking spectra
+   */
+  public double getStftMillis()
+  {
+    return stftMillis;
+  }
+
+  /**
+   * @return double milliseconds comparing spectra with the target
+   */
+  public double getDistanceMillis()
+  {
+    return distanceMillis;
+  }
+
+  /**
+   * @return double milliseconds in the surrogate
+   */
+  public double getSurrogateMillis()
+  {
+    return surrogateMillis;
+  }
+}
@@ -1,4 +1,10 @@
+/**
+ * Interface for the sound generators, played by the sketch thread for each hit. playSound is called 
+ * from the draw loop, so implementations should hand the hit to the audio thread rather than 
+ * changing unit generators directly
+ */
+
 public interface IAudioPlayer 
 {
   public void playSound(MidiMessage midi);
-}
+}
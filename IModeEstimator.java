@@ -0,0 +1,11 @@
+import java.util.List;
+
+/**
+ * Estimates banded waveguide parameters directly from a target sound, so a genetic algorithm can be
+ * seeded near the target or skipped entirely
+ */
+
+public interface IModeEstimator
+{
+  public List<WaveguideParameters> estimate(double[] target, int maxModes);
+}
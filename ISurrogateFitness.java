@@ -0,0 +1,16 @@
+/**
+ * A cheap approximation of a fitness function, used to rank candidates so only the most promising get
+ * the full evaluation
+ */
+
+public interface ISurrogateFitness<T>
+{
+  public double getSurrogateFitness(T candidate);
+
+  /**
+   * Get the exact fitness of a candidate if it is known without evaluating it, eg from a cache
+   * @param candidate T the candidate
+   * @return Double the exact fitness, or null if it would have to be evaluated
+   */
+  public Double peekExact(T candidate);
+}
@@ -0,0 +1,13 @@
+import java.io.IOException;
+
+/**
+ * Somewhere the per generation telemetry of a genetic algorithm is sent, such as a CSV file. Sinks may
+ * be shared by runs on different threads
+ */
+
+public interface ITelemetrySink
+{
+  public void record(GenerationTelemetry telemetry);
+
+  public void close() throws IOException;
+}
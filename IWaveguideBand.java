@@ -0,0 +1,18 @@
+import com.jsyn.unitgen.UnitGenerator;
+import com.jsyn.ports.UnitInputPort;
+import com.jsyn.ports.UnitOutputPort;
+
+/**
+ * A single band of a banded waveguide, so the FullBandedWaveguide can be built from either the 
+ * SingleBandedWaveguide circuit or the FusedBandedWaveguide unit
+ */
+
+public interface IWaveguideBand 
+{
+  public UnitGenerator getUnitGenerator();
+  public UnitInputPort getInput();
+  public UnitOutputPort getOutput();
+  public void playNote(WaveguideParameters waveguideParameters);
+  public void pitchBend(double frequencyChange, double duration);
+  public boolean isPitchBendFinished();
+}
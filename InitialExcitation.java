@@ -0,0 +1,140 @@
+import com.jsyn.*;
+import com.jsyn.unitgen.*;
+import com.jsyn.ports.UnitOutputPort;
+import com.jsyn.unitgen.UnitGenerator;
+
+/**
+ * Outputs the initial values used to fill a delay line when a note is hit, then silence. Does the job
+ * of queueing a FloatSample into a FixedRateMonoReader, but without allocating anything per note.
+ * The values start at the next block, the first two are + amplitude and the rest - amplitude.
+ */
+
+public class InitialExcitation extends UnitGenerator
+{
+
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double READER_AMPLITUDE = 0.999969482421875;   // Default amplitude of JSyn's sample readers, kept so notes sound the same
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  public UnitOutputPort output;
+
+  // Excitation being played, only used on the audio thread
+  private double amplitude;
+  private int numSamples;
+  private int position;                  // Next sample of the excitation to output
+
+  // Excitation requested from outside the audio thread, picked up at the start of the next block
+  private double pendingAmplitude;
+  private int pendingNumSamples;
+  private volatile boolean pending;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   */
+
+  public InitialExcitation()
+  {
+    super();
+    addPort(output = new UnitOutputPort());
+
+    // Nothing to play until the first note
+    position = 0;
+    numSamples = 0;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Start
+  //
+  /**************************************************************************************************/
+  /**
+   * Start outputting a new excitation from the next block, replacing any still playing
+   * @param amplitude double the amplitude of the values
+   * @param numSamples int the number of values, normally the length of the delay line
+   */
+
+  public void start(double amplitude, int numSamples)
+  {
+    pendingAmplitude = amplitude;
+    pendingNumSamples = numSamples;
+
+    // Publish to the audio thread
+    pending = true;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* getSample
+  //
+  /**************************************************************************************************/
+  /**
+   * Work out one value of an excitation, also used when rendering without JSyn
+   * @param amplitude double the amplitude of the excitation
+   * @param position int the position in the excitation
+   * @return double the value
+   */
+
+  public static double getSample(double amplitude, int position)
+  {
+    // Rounded to a float, as the values used to be queued in a FloatSample
+    float value = (float) ((position < 2) ? amplitude : -amplitude);
+    return value * READER_AMPLITUDE;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Generate
+  //
+  /**************************************************************************************************/
+  /**
+   * Output the next values of the excitation, or silence once it has finished
+   * @param start int
+   * @param limit int
+   */
+
+  @Override
+  public void generate(int start, int limit)
+  {
+    if(pending)
+    {
+      pending = false;
+      amplitude = pendingAmplitude;
+      numSamples = pendingNumSamples;
+      position = 0;
+    }
+
+    double[] outputs = output.getValues();
+
+    for(int i=start; i<limit; i++)
+    {
+      if(position < numSamples)
+      {
+        outputs[i] = getSample(amplitude, position);
+        position++;
+      }
+      else
+      {
+        outputs[i] = 0;
+      }
+    }
+  }
+}
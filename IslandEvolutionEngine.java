@@ -0,0 +1,98 @@
+import org.uncommons.watchmaker.framework.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * One island of an island model genetic algorithm. Each island evolves its own population on its own
+ * thread, and every few generations offers copies of its best candidates to the next island through a
+ * lock-free queue. Arrivals from the previous island replace the worst of the population at the next
+ * generation, so no island ever waits for another. Unlike Watchmaker's IslandEvolution there is no
+ * barrier between epochs, so a fast island is not held up by one that has drawn slow candidates.
+ */
+
+public class IslandEvolutionEngine<T> extends CheckpointingEvolutionEngine<T>
+{
+  private final Queue<EvaluatedCandidate<T>> immigrants;       // From the previous island
+  private final Queue<EvaluatedCandidate<T>> emigrants;        // To the next island
+  private final int migrationInterval;                         // Generations between sending migrants
+  private final int numMigrants;                               // Best candidates sent each time
+  private final boolean naturalFitness;
+  private int generation;
+
+  /**
+   * Class constructor
+   * @param candidateFactory CandidateFactory creates the initial population
+   * @param evolutionScheme EvolutionaryOperator the mutation and crossover
+   * @param fitnessEvaluator FitnessEvaluator scores each candidate, not shared with other islands
+   * @param selectionStrategy SelectionStrategy chooses the parents of the next generation
+   * @param rng Random the random number generator, not shared with other islands
+   * @param immigrants Queue the candidates arriving from the previous island, must be thread-safe
+   * @param emigrants Queue the candidates leaving for the next island, must be thread-safe
+   * @param migrationInterval int the number of generations between sending migrants
+   * @param numMigrants int the number of the best candidates sent each time
+   */
+
+  public IslandEvolutionEngine(CandidateFactory<T> candidateFactory,
+                               EvolutionaryOperator<T> evolutionScheme,
+                               FitnessEvaluator<? super T> fitnessEvaluator,
+                               SelectionStrategy<? super T> selectionStrategy,
+                               Random rng,
+                               Queue<EvaluatedCandidate<T>> immigrants,
+                               Queue<EvaluatedCandidate<T>> emigrants,
+                               int migrationInterval,
+                               int numMigrants)
+  {
+    super(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
+    this.immigrants = immigrants;
+    this.emigrants = emigrants;
+    this.migrationInterval = migrationInterval;
+    this.numMigrants = numMigrants;
+    naturalFitness = fitnessEvaluator.isNatural();
+  }
+
+  /**
+   * Sends and takes in migrants, then breeds the next generation
+   * @param evaluatedPopulation List<EvaluatedCandidate<T>> the population, sorted best first
+   * @param eliteCount int the number of the best candidates kept as they are
+   * @param rng Random the random number generator
+   * @return List<EvaluatedCandidate<T>> the next generation
+   */
+
+  @Override
+  protected List<EvaluatedCandidate<T>> nextEvolutionStep(List<EvaluatedCandidate<T>> evaluatedPopulation, int eliteCount, Random rng)
+  {
+    generation++;
+    if(generation % migrationInterval == 0)
+    {
+      for(int i=0; i<numMigrants && i<evaluatedPopulation.size(); i++)
+      {
+        emigrants.offer(evaluatedPopulation.get(i));
+      }
+    }
+
+    // Arrivals replace the worst, leaving the elites alone
+    List<EvaluatedCandidate<T>> population = evaluatedPopulation;
+    int replaced = 0;
+    int maxReplaced = evaluatedPopulation.size() - eliteCount;
+    EvaluatedCandidate<T> immigrant;
+    while(replaced < maxReplaced && (immigrant = immigrants.poll()) != null)
+    {
+      if(replaced == 0)
+      {
+        population = new ArrayList<EvaluatedCandidate<T>>(evaluatedPopulation);
+      }
+      population.set(population.size() - 1 - replaced, immigrant);
+      replaced++;
+    }
+
+    // The elites are taken from the front of the list
+    if(replaced > 0)
+    {
+      EvolutionUtils.sortEvaluatedPopulation(population, naturalFitness);
+    }
+    return super.nextEvolutionStep(population, eliteCount, rng);
+  }
+}
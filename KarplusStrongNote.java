@@ -10,6 +10,13 @@ import com.jsyn.util.*;
 
 public class KarplusStrongNote
 { 
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+  private static final int MAX_BUFFER_SIZE = 4096;
+  
   /**************************************************************************************************/
   //
   /* Instance variables 
@@ -20,7 +27,7 @@ public class KarplusStrongNote
   private Synthesizer synth;                           // JSyn synthesizer
   private LineOut lineOut;                             // Output
   private FixedRateMonoReader initialInput;            // Evaluator to initialise the delay line with values
-  private CircularBuffer buffer;                       // Circular buffer to store the values
+  private DelayLine buffer;                            // Delay line to store the values
   private float[] initialData;  
   // Filters
   private AllpassFilter allpassFilterReader1;
@@ -33,6 +40,7 @@ public class KarplusStrongNote
   // Karplus-Strong parameters
   private double frequencyPointer1;
   private int samplingRate;
+  private DelayLookupTable delayTable;                 // Shared frequency to delay lookups
   
   /**************************************************************************************************/
   //
@@ -58,6 +66,10 @@ public class KarplusStrongNote
 
       lineOut.stop();
       
+      // Get the current default sampling rate, for Karplus-Strong calculations, before the pitch bend controller needs it
+      samplingRate = synth.getFrameRate();
+      delayTable = DelayLookupTable.getInstance(samplingRate);
+      
       // Initialise Filters
       allpassFilterReader1 = new AllpassFilter();
       allpassFilterReader2 = new AllpassFilter();
@@ -67,8 +79,8 @@ public class KarplusStrongNote
       // Create new reader to output the initial values
       initialInput = new FixedRateMonoReader();
       
-      // Initialise circular buffer with empty fields
-      buffer = new CircularBuffer(1, 1, 1);
+      // Initialise delay line with empty fields
+      buffer = new DelayLine(MAX_BUFFER_SIZE, 1, 1);
       
       // Initialise pitch bend controller
       pitchBendController = new PitchBendController(samplingRate, null, buffer, allpassFilterReader1, allpassFilterReader2);
@@ -96,9 +108,6 @@ public class KarplusStrongNote
       pitchBendController.output.connect(0, lineOut.input, 0);               // Output from controller values to speaker
       pitchBendController.output.connect(0, lineOut.input, 1);               // Output from controller values to speaker
       
-      // Get the current default sampling rate, for Karplus-Strong calculations
-      samplingRate = synth.getFrameRate();
-      
       // Initialise fundimental frequency 
       frequencyPointer1 = 1000;
     }
@@ -132,7 +141,7 @@ public class KarplusStrongNote
      this.frequencyPointer1 = frequencyPointer1;
      
      // Work out p, the number of samples needed in the buffer for the chosen frequency
-     double loop = samplingRate / frequencyPointer1;
+     double loop = delayTable.getDelay(frequencyPointer1);
      int numSamples = (int) loop;
      
      // Create the circular buffer and give it the initial data samples
@@ -220,7 +229,7 @@ public class KarplusStrongNote
      
      // Set c1 and c2 initial values in the filters
      double fracPart = loop - numSamples;
-     double coefficient = (1-fracPart)/(1+fracPart);
+     double coefficient = delayTable.getCoefficient(fracPart);
      allpassFilterReader1.coefficient.set(coefficient);
      allpassFilterReader2.coefficient.set(coefficient); 
      
@@ -289,4 +298,4 @@ public class KarplusStrongNote
      pitchBendController.startBend(frequencyPointer1, frequencyPointer2, slideDuration);
    }
 }
-
+
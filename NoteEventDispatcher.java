@@ -0,0 +1,69 @@
+import com.jsyn.*;
+import com.jsyn.unitgen.*;
+import com.jsyn.unitgen.UnitGenerator;
+
+/**
+ * Unit generator that plays the events waiting in a NoteEventQueue on the audio thread, at the start 
+ * of the block containing each event's frame. Events are stamped with a frame a fixed latency ahead, 
+ * so they wait in the queue until that block comes round. The voices only start at a block boundary, 
+ * so an event can play up to one block (Synthesizer.FRAMES_PER_BLOCK frames) before its frame. Has no 
+ * ports, so must be started to be run every block.
+ */
+
+public class NoteEventDispatcher extends UnitGenerator
+{
+  
+  /**************************************************************************************************/
+  //
+  /* Instance variables 
+  //
+  /**************************************************************************************************/
+  
+  private NoteEventQueue queue;             // Events from the sketch thread
+  private TablaSynthesiser synthesiser;     // Plays the events
+  
+  
+  /**************************************************************************************************/
+  //
+  /* Constructor 
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param queue NoteEventQueue the queue to read events from
+   * @param synthesiser TablaSynthesiser the synthesiser to play the events on
+   */
+   
+  public NoteEventDispatcher(NoteEventQueue queue, TablaSynthesiser synthesiser)
+  {
+    super();
+    this.queue = queue;
+    this.synthesiser = synthesiser;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* Generate  
+  //
+  /**************************************************************************************************/
+  /**
+   * Play every event due before the end of this block, the rest stay queued for a later block. Events
+   * are queued in frame order, so only the head needs checking
+   * @param start int
+   * @param limit int 
+   */
+   
+  @Override
+  public void generate(int start, int limit)
+  { 
+    long blockEnd = getSynthesisEngine().getFrameCount() + (limit - start);
+    
+    while(!queue.isEmpty() && queue.peekFrame() < blockEnd)
+    {
+      long event = queue.peekEvent();
+      queue.remove();
+      synthesiser.handleNoteEvent(event);
+    }
+  }
+}
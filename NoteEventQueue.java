@@ -0,0 +1,214 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer, single consumer ring buffer of note events, to pass hits and pitch bends from the
+ * sketch thread to the audio thread without locks or allocation. Each event is packed into a long
+ * (type, drum, note and velocity) and stored with the synth frame it should be played at.
+ * Only one thread may call offer, and only one other thread may call the reading methods.
+ */
+
+public class NoteEventQueue
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  // Event types
+  public static final int NOTE_ON = 1;
+  public static final int PITCH_BEND = 2;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final long[] events;         // Packed events
+  private final long[] frames;         // Frame each event should be played at
+  private final int mask;              // Capacity - 1, capacity is a power of two
+
+  private final AtomicLong head;       // Next event to read, only advanced by the consumer
+  private final AtomicLong tail;       // Next slot to write, only advanced by the producer
+  private long cachedHead;             // Producer's copy of head, to avoid reading it on every offer
+  private long cachedTail;             // Consumer's copy of tail, to avoid reading it on every poll
+  private long droppedEvents;          // Events offered while the queue was full, producer only
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param capacity int the number of events the queue can hold, rounded up to a power of two
+   */
+
+  public NoteEventQueue(int capacity)
+  {
+    if(capacity < 1)
+    {
+      throw new IllegalArgumentException("Queue capacity must be at least 1!");
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if(size < capacity)
+    {
+      size <<= 1;
+    }
+
+    events = new long[size];
+    frames = new long[size];
+    mask = size - 1;
+    head = new AtomicLong(0);
+    tail = new AtomicLong(0);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Producer
+  //
+  /**************************************************************************************************/
+  /**
+   * Adds an event to the queue, in constant time
+   * @param event long the packed event, see pack
+   * @param frame long the synth frame the event should be played at
+   * @return boolean false if the queue was full and the event was dropped
+   */
+
+  public boolean offer(long event, long frame)
+  {
+    long t = tail.get();
+
+    // Check for space, only re-reading the consumer's position when the cached one says full
+    if(t - cachedHead > mask)
+    {
+      cachedHead = head.get();
+      if(t - cachedHead > mask)
+      {
+        droppedEvents++;
+        return false;
+      }
+    }
+
+    int index = (int) t & mask;
+    events[index] = event;
+    frames[index] = frame;
+
+    // Publish the event to the consumer
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * @return long the number of events dropped because the queue was full, read on the producer thread
+   */
+  public long getDroppedEvents()
+  {
+    return droppedEvents;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Consumer
+  //
+  /**************************************************************************************************/
+  /**
+   * @return boolean whether there are no events waiting
+   */
+  public boolean isEmpty()
+  {
+    long h = head.get();
+    if(h < cachedTail)
+    {
+      return false;
+    }
+    cachedTail = tail.get();
+    return h >= cachedTail;
+  }
+
+  /**
+   * @return long the frame of the next event, only valid when the queue is not empty
+   */
+  public long peekFrame()
+  {
+    return frames[(int) head.get() & mask];
+  }
+
+  /**
+   * @return long the next packed event, only valid when the queue is not empty
+   */
+  public long peekEvent()
+  {
+    return events[(int) head.get() & mask];
+  }
+
+  /**
+   * Removes the next event, freeing its slot for the producer
+   */
+  public void remove()
+  {
+    head.lazySet(head.get() + 1);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Packing
+  //
+  /**************************************************************************************************/
+  /**
+   * Packs an event into a long
+   * @param type int NOTE_ON or PITCH_BEND
+   * @param drum TablaDrum the drum
+   * @param note int the note 0-127
+   * @param velocity int the velocity 0-127
+   * @return long the packed event
+   */
+
+  public static long pack(int type, TablaDrum drum, int note, int velocity)
+  {
+    return ((long) (type & 0xFF) << 24) | ((drum.ordinal() & 0xFF) << 16) | ((note & 0xFF) << 8) | (velocity & 0xFF);
+  }
+
+  /**
+   * @param event long the packed event
+   * @return int the event type
+   */
+  public static int getType(long event)
+  {
+    return (int) (event >>> 24) & 0xFF;
+  }
+
+  /**
+   * @param event long the packed event
+   * @return int the ordinal of the TablaDrum
+   */
+  public static int getDrum(long event)
+  {
+    return (int) (event >>> 16) & 0xFF;
+  }
+
+  /**
+   * @param event long the packed event
+   * @return byte the note 0-127
+   */
+  public static byte getNote(long event)
+  {
+    return (byte) ((event >>> 8) & 0xFF);
+  }
+
+  /**
+   * @param event long the packed event
+   * @return byte the velocity 0-127
+   */
+  public static byte getVelocity(long event)
+  {
+    return (byte) (event & 0xFF);
+  }
+}
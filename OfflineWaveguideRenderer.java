@@ -0,0 +1,230 @@
+import java.util.Arrays;
+
+/**
+ * Renders a banded waveguide note straight into an array, in a plain loop on the calling thread, without
+ * a JSyn Synthesizer. Follows the BandedWaveguideNote graph block by block: the initial excitation and
+ * the mixed output of the last block feed each band, and the mix is scaled by the overall gain, so the
+ * samples match a note played through the synthesiser. Not thread safe, use one renderer per thread.
+ */
+
+public class OfflineWaveguideRenderer
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int BLOCK_SIZE = 8;     // Frames per block in the JSyn engine
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private BandedWaveguideKernel kernel;        // All of the bands and the mix
+  private DelayLookupTable delayTable;
+  private int numBands;
+
+  private double[][] inputs;                   // Input to each band for the current block
+  private double[] mix;                        // Mixed output of the last block, fed back into every band
+  private double[] block;                      // Output of the current block after the overall gain
+  private int blockPosition;                   // Next sample of the current block to hand out
+
+  // Note being rendered
+  private double[] excitationAmplitudes;
+  private int[] excitationLengths;
+  private int excitationPosition;
+  private double gain;
+  private double fundimentalFrequency;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate to render at
+   * @param maxBufferSize int the largest delay length needed
+   * @param numBands int the number of single banded waveguides
+   */
+
+  public OfflineWaveguideRenderer(double samplingRate, int maxBufferSize, int numBands)
+  {
+    this.numBands = numBands;
+    kernel = new BandedWaveguideKernel(samplingRate, maxBufferSize, numBands);
+    delayTable = DelayLookupTable.getInstance(samplingRate);
+
+    inputs = new double[numBands][BLOCK_SIZE];
+    mix = new double[BLOCK_SIZE];
+    block = new double[BLOCK_SIZE];
+    excitationAmplitudes = new double[numBands];
+    excitationLengths = new int[numBands];
+
+    reset();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* render
+  //
+  /**************************************************************************************************/
+  /**
+   * Renders a whole note from silence, as a newly created BandedWaveguideNote would play it
+   * @param params WaveguideParameters[] the parameters for each single banded waveguide
+   * @param fundimentalFrequency double the fundimental for the note
+   * @param gain double the overall volume
+   * @param output double[] filled with the samples of the note
+   */
+
+  public void render(WaveguideParameters[] params, double fundimentalFrequency, double gain, double[] output)
+  {
+    reset();
+    playNote(params, fundimentalFrequency, gain);
+    render(output, 0, output.length);
+  }
+
+  /**
+   * Renders the next samples of the current note, carrying on from the last call
+   * @param output double[] the array to write to
+   * @param offset int the first index to write
+   * @param length int the number of samples to write
+   */
+
+  public void render(double[] output, int offset, int length)
+  {
+    int end = offset + length;
+
+    for(int i=offset; i<end; i++)
+    {
+      if(blockPosition == BLOCK_SIZE)
+      {
+        processBlock();
+      }
+      output[i] = block[blockPosition];
+      blockPosition++;
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* playNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Starts a note from the next block, without clearing what is still ringing, like BandedWaveguideNote.playNote.
+   * Samples left in the current block are still rendered first, as in the synthesiser
+   * @param params WaveguideParameters[] the parameters for each single banded waveguide
+   * @param fundimentalFrequency double the fundimental for the note, used by pitch bends
+   * @param gain double the overall volume
+   */
+
+  public void playNote(WaveguideParameters[] params, double fundimentalFrequency, double gain)
+  {
+    // Check inputs
+    if(params.length != numBands)
+    {
+      throw new IllegalArgumentException("Can't play note! Number of waveguide parameters supplied must be equal to the number of delay lines");
+    }
+    if(gain < 0)
+    {
+      throw new IllegalArgumentException("Gain must be greater than or equal to 0!");
+    }
+
+    for(int b=0; b<numBands; b++)
+    {
+      int numSamples = (int) delayTable.getDelay(params[b].getCenterFrequency());
+      if(numSamples > kernel.getMaxDelay())
+      {
+        throw new IllegalArgumentException("Delay cannot be larger than the buffer size!");
+      }
+      excitationAmplitudes[b] = params[b].getAmplitude();
+      excitationLengths[b] = numSamples;
+    }
+
+    kernel.playNote(params);
+    excitationPosition = 0;
+    this.gain = gain;
+    this.fundimentalFrequency = fundimentalFrequency;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* pitchBend
+  //
+  /**************************************************************************************************/
+  /**
+   * Bends the note from the next block
+   * @param newFrequency double the new frequency to bend to, in relation to the fundimental
+   * @param slideDuration double the duration of the pitch bend in seconds
+   */
+
+  public void pitchBend(double newFrequency, double slideDuration)
+  {
+    kernel.pitchBend(newFrequency - fundimentalFrequency, slideDuration);
+    fundimentalFrequency = newFrequency;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* reset
+  //
+  /**************************************************************************************************/
+  /**
+   * Silence everything, as if the renderer had just been created
+   */
+
+  public void reset()
+  {
+    kernel.reset();
+    Arrays.fill(mix, 0);
+    Arrays.fill(block, 0);
+    Arrays.fill(excitationLengths, 0);
+    excitationPosition = 0;
+    gain = 0;
+    blockPosition = BLOCK_SIZE;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* processBlock
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs one block through the bands, the same as one block of the synthesiser
+   */
+
+  private void processBlock()
+  {
+    // Each band gets its excitation plus the mix of the last block, as the input port sums its connections
+    for(int b=0; b<numBands; b++)
+    {
+      double[] input = inputs[b];
+      for(int i=0; i<BLOCK_SIZE; i++)
+      {
+        int position = excitationPosition + i;
+        double excitation = (position < excitationLengths[b]) ? InitialExcitation.getSample(excitationAmplitudes[b], position) : 0;
+        input[i] = excitation + mix[i];
+      }
+    }
+    excitationPosition += BLOCK_SIZE;
+
+    kernel.process(inputs, mix, 0, BLOCK_SIZE);
+
+    // Overall output volume
+    for(int i=0; i<BLOCK_SIZE; i++)
+    {
+      block[i] = mix[i] * gain;
+    }
+    blockPosition = 0;
+  }
+}
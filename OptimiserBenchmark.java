@@ -0,0 +1,182 @@
+import org.uncommons.maths.binary.BitString;
+import org.uncommons.watchmaker.framework.*;
+import org.uncommons.watchmaker.framework.factories.BitStringFactory;
+import org.uncommons.watchmaker.framework.operators.BitStringMutation;
+import org.uncommons.watchmaker.framework.operators.BitStringCrossover;
+import org.uncommons.watchmaker.framework.operators.EvolutionPipeline;
+import org.uncommons.watchmaker.framework.selection.RouletteWheelSelection;
+import org.uncommons.maths.random.MersenneTwisterRNG;
+import org.uncommons.maths.random.Probability;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+
+/**
+ * Compares the bit string genetic algorithm with differential evolution, fitting the same targets with
+ * the same fitness evaluator and the same budget of fitness evaluations. For each target, reports how
+ * many evaluations each optimiser needed to reach the distance the worse of the two finished on
+ */
+
+public class OptimiserBenchmark
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int NUM_WAVEGUIDES = 5;
+  private static final int POPULATION_SIZE = 70;
+  private static final int DEFAULT_BUDGET = 2100;        // Fitness evaluations for each optimiser on each target
+
+  // Bit Strings, the same as WaveguideGA
+  private static final int TOTAL_STRING_LENGTH = 72;
+  private static final int TOTAL_VOLUME_LENGTH = 14;
+
+  private static final String[] TARGETS = { "Samples/High/21_14_01.AIF", "Samples/Low/21_15_09.AIF" };
+
+
+  /**************************************************************************************************/
+  //
+  /* main
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs the comparison
+   * @param args String[] optional budget of fitness evaluations, default 2100
+   */
+
+  public static void main(String[] args) throws IOException
+  {
+    int budget = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_BUDGET;
+
+    for(String target : TARGETS)
+    {
+      List<double[]> gaProgress = runGeneticAlgorithm(target, budget);
+      List<double[]> deProgress = runDifferentialEvolution(target, budget);
+
+      double gaBest = gaProgress.get(gaProgress.size() - 1)[1];
+      double deBest = deProgress.get(deProgress.size() - 1)[1];
+      double targetDistance = Math.max(gaBest, deBest);
+
+      System.out.println(target);
+      System.out.printf("  GA: best %.1f, reached %.1f after %d evaluations%n", gaBest, targetDistance, evaluationsToReach(gaProgress, targetDistance));
+      System.out.printf("  DE: best %.1f, reached %.1f after %d evaluations%n", deBest, targetDistance, evaluationsToReach(deProgress, targetDistance));
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Optimisers
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs the bit string genetic algorithm as WaveguideGA does, until the budget is spent
+   * @param target String the path of the target sample
+   * @param budget int the number of fitness evaluations
+   * @return List<double[]> the evaluations so far and best distance after each generation
+   */
+
+  private static List<double[]> runGeneticAlgorithm(String target, final int budget) throws IOException
+  {
+    final WaveguideFitnessEvaluator waveguideEvaluator = new WaveguideFitnessEvaluator(NUM_WAVEGUIDES, target);
+    final AtomicLong evaluations = new AtomicLong();
+    final List<double[]> progress = new ArrayList<double[]>();
+
+    // Count every evaluation, the engine evaluates on many threads
+    FitnessEvaluator<BitString> countingEvaluator = new FitnessEvaluator<BitString>()
+    {
+      public double getFitness(BitString candidate, List<? extends BitString> population)
+      {
+        evaluations.incrementAndGet();
+        return waveguideEvaluator.getFitness(candidate, population);
+      }
+
+      public boolean isNatural()
+      {
+        return waveguideEvaluator.isNatural();
+      }
+    };
+
+    List<EvolutionaryOperator<BitString>> operators = new LinkedList<EvolutionaryOperator<BitString>>();
+    operators.add(new BitStringMutation(new Probability(0.01)));
+    operators.add(new BitStringCrossover());
+
+    EvolutionEngine<BitString> engine = new GenerationalEvolutionEngine<BitString>(
+      new BitStringFactory((TOTAL_STRING_LENGTH * NUM_WAVEGUIDES) + TOTAL_VOLUME_LENGTH),
+      new EvolutionPipeline<BitString>(operators),
+      countingEvaluator,
+      new RouletteWheelSelection(),
+      new MersenneTwisterRNG());
+
+    engine.addEvolutionObserver(new EvolutionObserver<BitString>()
+    {
+      public void populationUpdate(PopulationData<? extends BitString> data)
+      {
+        progress.add(new double[] {evaluations.get(), data.getBestCandidateFitness()});
+        waveguideEvaluator.setAbortBound(data.getBestCandidateFitness());
+      }
+    });
+
+    engine.evolve(POPULATION_SIZE, 1, new TerminationCondition()
+    {
+      public boolean shouldTerminate(PopulationData<?> populationData)
+      {
+        return evaluations.get() >= budget;
+      }
+    });
+
+    return progress;
+  }
+
+  /**
+   * Runs differential evolution until the budget is spent
+   * @param target String the path of the target sample
+   * @param budget int the number of fitness evaluations
+   * @return List<double[]> the evaluations so far and best distance after each generation
+   */
+
+  private static List<double[]> runDifferentialEvolution(String target, int budget) throws IOException
+  {
+    WaveguideGenome genome = new WaveguideGenome(NUM_WAVEGUIDES);
+    WaveguideFitnessEvaluator waveguideEvaluator = new WaveguideFitnessEvaluator(NUM_WAVEGUIDES, target);
+    final WaveguideDE de = new WaveguideDE(genome, waveguideEvaluator, POPULATION_SIZE, new MersenneTwisterRNG());
+    final List<double[]> progress = new ArrayList<double[]>();
+
+    de.addEvolutionObserver(new EvolutionObserver<double[]>()
+    {
+      public void populationUpdate(PopulationData<? extends double[]> data)
+      {
+        progress.add(new double[] {de.getEvaluations(), data.getBestCandidateFitness()});
+      }
+    });
+
+    // Each generation evaluates the whole population, the first is the initial population
+    de.optimise((budget / POPULATION_SIZE) - 1, 0);
+
+    return progress;
+  }
+
+  /**
+   * Find how many evaluations an optimiser took to get within a distance of the target
+   * @param progress List<double[]> the evaluations so far and best distance after each generation
+   * @param targetDistance double the distance to reach
+   * @return long the evaluations, or -1 if never reached
+   */
+
+  private static long evaluationsToReach(List<double[]> progress, double targetDistance)
+  {
+    for(double[] point : progress)
+    {
+      if(point[1] <= targetDistance)
+      {
+        return (long) point[0];
+      }
+    }
+    return -1;
+  }
+}
@@ -7,7 +7,9 @@ import com.jsyn.ports.UnitOutputPort;
 import com.jsyn.unitgen.UnitGenerator;
 
 /**
- * Applies overall gain volume to it's input
+ * Applies overall gain volume to it's input, and tracks the level of the output. When a sleep threshold
+ * is set, the units feeding it are disabled once the output has stayed below the threshold for the
+ * hold time, so a decayed note stops using CPU until it is woken by the next hit.
  */
  
 public class OutputGain extends UnitFilter
@@ -21,6 +23,21 @@ public class OutputGain extends UnitFilter
   
   public UnitInputPort gain;
   
+  // Gain set from outside the audio thread, picked up at the start of the next block
+  private double pendingGain;
+  private volatile boolean gainPending;
+  
+  // Level of the last block, read from any thread
+  private volatile double peak;
+  private volatile double rms;
+  
+  // Sleeping
+  private UnitGenerator[] sleepUnits;        // Units disabled while asleep
+  private double sleepThreshold;             // Peak level below which the output is treated as silent, 0 to never sleep
+  private double sleepHoldTime;              // Seconds the output must stay silent before sleeping
+  private long quietFrames;                  // Frames the output has been silent for
+  private volatile boolean asleep;
+  
   /**************************************************************************************************/
   //
   /* Constructor 
@@ -37,6 +54,76 @@ public class OutputGain extends UnitFilter
     
     // Set default value for gain
     gain.set(1);
+    
+    sleepUnits = new UnitGenerator[0];
+    sleepThreshold = 0;
+    asleep = false;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* setGain
+  //
+  /**************************************************************************************************/
+  /**
+   * Set the gain from the next block, like gain.set but without allocating a port command
+   * @param value double the new gain
+   */
+   
+  public void setGain(double value)
+  {
+    pendingGain = value;
+    gainPending = true;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* Sleeping
+  //
+  /**************************************************************************************************/
+  /**
+   * Set the units to disable when the output falls silent
+   * @param units UnitGenerator[] the units feeding this one
+   * @param threshold double the peak level below which the output is silent, 0 to never sleep
+   * @param holdTime double the number of seconds the output must stay silent before sleeping
+   */
+   
+  public void setSleep(UnitGenerator[] units, double threshold, double holdTime)
+  {
+    sleepUnits = units;
+    sleepThreshold = threshold;
+    sleepHoldTime = holdTime;
+  }
+  
+  /**
+   * Re-enable the sleeping units, and restart the silence count. Call before starting a new note
+   */
+   
+  public void wake()
+  {
+    quietFrames = 0;
+    for(int i=0; i<sleepUnits.length; i++)
+    {
+      sleepUnits[i].setEnabled(true);
+    }
+    asleep = false;
+  }
+  
+  /**
+   * Disable the units feeding this one, the output stays at zero until woken
+   */
+   
+  private void sleep()
+  {
+    asleep = true;
+    for(int i=0; i<sleepUnits.length; i++)
+    {
+      sleepUnits[i].setEnabled(false);
+    }
+    peak = 0;
+    rms = 0;
   }
   
   
@@ -54,16 +141,96 @@ public class OutputGain extends UnitFilter
    @Override
    public void generate(int start, int limit)
    { 
+     // Pick up a gain set since the last block
+     if(gainPending)
+     {
+       gainPending = false;
+       gain.setValueInternal(pendingGain);
+     }
+     
      // Get number of inputs
      double[] inputs = input.getValues();
      double[] outputs = output.getValues();
      double[] gains = gain.getValues();
      
+     // Nothing to do while asleep, the disabled units are not run
+     if(asleep)
+     {
+       for(int i=start; i<limit; i++)
+       {
+         outputs[i] = 0;
+       }
+       return;
+     }
+     
+     double blockPeak = 0;
+     double sumOfSquares = 0;
+     
      for(int i=start; i<limit; i++)
      {
        // Multiply input by gain
-       outputs[i] = inputs[i] * gains[i]; 
+       double value = inputs[i] * gains[i];
+       outputs[i] = value;
+       
+       // Track the level
+       double magnitude = Math.abs(value);
+       if(magnitude > blockPeak)
+       {
+         blockPeak = magnitude;
+       }
+       sumOfSquares += value * value;
+     }
+     
+     peak = blockPeak;
+     rms = Math.sqrt(sumOfSquares / (limit - start));
+     
+     // Go to sleep once the output has been silent for long enough
+     if(sleepThreshold > 0)
+     {
+       if(blockPeak < sleepThreshold)
+       {
+         quietFrames += limit - start;
+         if(quietFrames >= (long) (sleepHoldTime * getFrameRate()))
+         {
+           sleep();
+         }
+       }
+       else
+       {
+         quietFrames = 0;
+       }
      }
    }
   
+  
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+  
+  /**
+   * @return double the peak level of the output over the last block
+   */
+  public double getPeak()
+  {
+    return peak;
+  }
+  
+  /**
+   * @return double the RMS level of the output over the last block
+   */
+  public double getRms()
+  {
+    return rms;
+  }
+  
+  /**
+   * @return boolean whether the units feeding this one are disabled
+   */
+  public boolean isAsleep()
+  {
+    return asleep;
+  }
+  
 }
@@ -0,0 +1,320 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the same spectrogram as Spectrogram, but splits the frames into ranges worked on by a
+ * ForkJoinPool, for long recordings and whole folders of samples. The frames are independent, and each
+ * worker thread has its own StreamingSTFT (FFT, window table and scratch), so the results are bit
+ * identical to the sequential path. Safe to call from many threads at once. Close it when finished to
+ * shut down the pool it created, a pool passed in is left for its owner to shut down.
+ */
+
+public class ParallelSpectrogram implements AutoCloseable
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int MIN_FRAMES_PER_TASK = 16;     // Ranges smaller than this are not split any further
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final ForkJoinPool pool;
+  private final boolean ownsPool;        // Whether the pool was created here, and so is shut down by close
+  private final int windowSize;
+  private final int stepSamples;
+  private final int numBins;
+
+  // One STFT for each worker thread, created the first time the thread needs it
+  private final ThreadLocal<StreamingSTFT> workerSTFT;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, using a new pool with a thread for each core, which close shuts down
+   * @param windowSize int the size of each window, a power of two
+   * @param stepSamples int the number of samples to move the window along
+   */
+
+  public ParallelSpectrogram(int windowSize, int stepSamples)
+  {
+    this(windowSize, stepSamples, new ForkJoinPool(), true);
+  }
+
+  /**
+   * Class constructor
+   * @param windowSize int the size of each window, a power of two
+   * @param stepSamples int the number of samples to move the window along
+   * @param pool ForkJoinPool the pool to compute the frames in, not shut down by close
+   */
+
+  public ParallelSpectrogram(int windowSize, int stepSamples, ForkJoinPool pool)
+  {
+    this(windowSize, stepSamples, pool, false);
+  }
+
+  /**
+   * Class constructor
+   * @param windowSize int the size of each window, a power of two
+   * @param stepSamples int the number of samples to move the window along
+   * @param pool ForkJoinPool the pool to compute the frames in
+   * @param ownsPool boolean true to shut down the pool on close
+   */
+
+  private ParallelSpectrogram(final int windowSize, final int stepSamples, ForkJoinPool pool, boolean ownsPool)
+  {
+    if(windowSize < 2 || stepSamples < 1)
+    {
+      throw new IllegalArgumentException("Window size must be at least 2 and step at least 1!");
+    }
+
+    this.pool = pool;
+    this.ownsPool = ownsPool;
+    this.windowSize = windowSize;
+    this.stepSamples = stepSamples;
+    numBins = windowSize / 2;
+
+    workerSTFT = new ThreadLocal<StreamingSTFT>()
+    {
+      @Override
+      protected StreamingSTFT initialValue()
+      {
+        return new StreamingSTFT(windowSize, stepSamples);
+      }
+    };
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* spectrogram
+  //
+  /**************************************************************************************************/
+  /**
+   * Computes the spectrogram for the given audio data, laid out as Spectrogram.spectrogram
+   * @param samples double[] the audio data samples to analyse
+   * @return double[][] the magnitudes, time vs frequency
+   */
+
+  public double[][] spectrogram(double[] samples)
+  {
+    if(samples.length < 1)
+    {
+      throw new IllegalArgumentException("Invalid arguments, window size must be less than sample length");
+    }
+
+    double[][] results = new double[samples.length / stepSamples][numBins];
+    pool.invoke(new FrameRange(samples, null, results, 0, getNumFrames(samples.length)));
+    return results;
+  }
+
+  /**
+   * Computes the spectrogram into a flat, frame-major array
+   * @param samples double[] the audio data samples to analyse
+   * @param result double[] filled with getNumFrames(samples.length) * getNumBins() magnitudes
+   * @return int the number of frames
+   */
+
+  public int spectrogram(double[] samples, double[] result)
+  {
+    int numFrames = getNumFrames(samples.length);
+    pool.invoke(new FrameRange(samples, result, null, 0, numFrames));
+    return numFrames;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* close
+  //
+  /**************************************************************************************************/
+  /**
+   * Shuts down the pool if it was created by this class, so its threads can exit. Spectrograms already
+   * being computed finish, but no more can be started
+   */
+
+  @Override
+  public void close()
+  {
+    if(ownsPool)
+    {
+      pool.shutdown();
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* FrameRange
+  //
+  /**************************************************************************************************/
+  /**
+   * A range of frames to compute, split in half until small enough to do on one worker
+   */
+
+  private class FrameRange extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] samples;
+    private final double[] flatResult;     // Set when writing a flat array
+    private final double[][] rowResult;    // Set when writing one array per frame
+    private final int firstFrame;
+    private final int endFrame;
+
+    FrameRange(double[] samples, double[] flatResult, double[][] rowResult, int firstFrame, int endFrame)
+    {
+      this.samples = samples;
+      this.flatResult = flatResult;
+      this.rowResult = rowResult;
+      this.firstFrame = firstFrame;
+      this.endFrame = endFrame;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if(endFrame - firstFrame <= MIN_FRAMES_PER_TASK)
+      {
+        StreamingSTFT stft = workerSTFT.get();
+        for(int frame=firstFrame; frame<endFrame; frame++)
+        {
+          if(flatResult != null)
+          {
+            stft.spectrum(samples, frame * stepSamples, flatResult, frame * numBins);
+          }
+          else
+          {
+            stft.spectrum(samples, frame * stepSamples, rowResult[frame], 0);
+          }
+        }
+        return;
+      }
+
+      int middle = (firstFrame + endFrame) >>> 1;
+      invokeAll(new FrameRange(samples, flatResult, rowResult, firstFrame, middle),
+                new FrameRange(samples, flatResult, rowResult, middle, endFrame));
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * Get the number of whole windows that fit in the audio data
+   * @param numSamples int the number of audio samples
+   * @return int the number of frames
+   */
+  public int getNumFrames(int numSamples)
+  {
+    if(numSamples < windowSize)
+    {
+      return 0;
+    }
+    return ((numSamples - windowSize) / stepSamples) + 1;
+  }
+
+  /**
+   * @return int the number of frequency bins in each frame
+   */
+  public int getNumBins()
+  {
+    return numBins;
+  }
+
+  /**
+   * @return int the number of worker threads in the pool
+   */
+  public int getParallelism()
+  {
+    return pool.getParallelism();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* main
+  //
+  /**************************************************************************************************/
+  /**
+   * Scaling benchmark, times the spectrogram of a long recording with 1 to N worker threads and checks
+   * each result against the sequential Spectrogram
+   * @param args String[] optional number of seconds of audio to analyse, default 180
+   */
+
+  public static void main(String[] args)
+  {
+    int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 180;
+    int windowSize = 512;
+    int stepSamples = 128;
+    int repeats = 5;
+
+    // Decaying tones with a little noise, like a session of drum hits
+    double[] samples = new double[seconds * 44100];
+    Random random = new Random(1);
+    for(int i=0; i<samples.length; i++)
+    {
+      int sinceHit = i % 22050;
+      samples[i] = (Math.sin(sinceHit * 0.05) * Math.exp(-sinceHit / 6000.0)) + (0.01 * random.nextGaussian());
+    }
+
+    // Sequential reference
+    Spectrogram sequential = new Spectrogram(windowSize, stepSamples);
+    double[] expected = new double[sequential.getNumFrames(samples.length) * sequential.getNumBins()];
+    sequential.spectrogram(samples, expected);
+    long start = System.nanoTime();
+    for(int r=0; r<repeats; r++)
+    {
+      sequential.spectrogram(samples, expected);
+    }
+    double sequentialTime = (System.nanoTime() - start) / (repeats * 1e6);
+    System.out.printf("Sequential: %.1f ms%n", sequentialTime);
+
+    double[] result = new double[expected.length];
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+    for(int threads=1; threads<=maxThreads; threads++)
+    {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      ParallelSpectrogram parallel = new ParallelSpectrogram(windowSize, stepSamples, pool);
+
+      // Warm up the workers
+      parallel.spectrogram(samples, result);
+
+      start = System.nanoTime();
+      for(int r=0; r<repeats; r++)
+      {
+        parallel.spectrogram(samples, result);
+      }
+      double time = (System.nanoTime() - start) / (repeats * 1e6);
+      pool.shutdown();
+
+      boolean identical = true;
+      for(int i=0; i<expected.length; i++)
+      {
+        if(Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(result[i]))
+        {
+          identical = false;
+          break;
+        }
+      }
+
+      System.out.printf("%d threads: %.1f ms, speedup %.2f, bit identical %b%n", threads, time, sequentialTime / time, identical);
+    }
+  }
+}
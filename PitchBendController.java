@@ -21,6 +21,7 @@ public class PitchBendController extends UnitBinaryOperator
   /**************************************************************************************************/
   
   private double samplingRate;       // Sample rate
+  private DelayLookupTable delayTable; // Shared frequency to delay and coefficient lookups
   
   private boolean pitchBend;         // Whether to perform pitch bend
   private double frequencyPointer1;  // Frequency of first pointer
@@ -35,7 +36,7 @@ public class PitchBendController extends UnitBinaryOperator
   
   // References to other unit gens to control
   private FilterBandPass bandpass;
-  private CircularBuffer buffer;
+  private DelayLine buffer;
   private AllpassFilter allpassFilterReader1;
   private AllpassFilter allpassFilterReader2;
 
@@ -48,17 +49,18 @@ public class PitchBendController extends UnitBinaryOperator
    * Class constructor
    * @param samplingRate double the sampling rate of the synthesiser, needed to work out how many samples the pitch bend will last
    * @param bandpass FilterBandPass reference to the bandpass for this delay line, needed to update the center frequency as the delay length changes
-   * @param buffer CircularBuffer reference to the delay line, needed to update the delay lengths
+   * @param buffer DelayLine reference to the delay line, needed to update the delay lengths
    * @param allpassFilteredReader1 AllpassFilter reference to the first allpass filter, needed to update the coefficient
    * @param allpassFilteredReader2 AllpassFilter reference to the second allpass filter, needed to update the coefficient
    */
    
-  public PitchBendController(double samplingRate, FilterBandPass bandpass, CircularBuffer buffer, AllpassFilter allpassFilterReader1, AllpassFilter allpassFilterReader2)
+  public PitchBendController(double samplingRate, FilterBandPass bandpass, DelayLine buffer, AllpassFilter allpassFilterReader1, AllpassFilter allpassFilterReader2)
   {
     super();
     
     // Initialise instance variables 
     this.samplingRate = samplingRate;
+    delayTable = DelayLookupTable.getInstance(samplingRate);
     this.bandpass = bandpass;
     this.buffer = buffer;
     this.allpassFilterReader1 = allpassFilterReader1;
@@ -109,13 +111,13 @@ public class PitchBendController extends UnitBinaryOperator
        frequencyPointer2 = frequencyPointer1 - (0.5 * frequencyStep);
        
        // Move position of second readPointer
-       double delay = samplingRate / frequencyPointer2;
+       double delay = delayTable.getDelay(frequencyPointer2);
        int intPart = (int) delay;
        buffer.delayPointer2.set(intPart);
        
        // Set the coefficient of the second allpass interpolated readpointer
        double fracPart = delay - intPart;
-       allpassFilterReader2.coefficient.set((1-fracPart)/(1+fracPart));
+       allpassFilterReader2.coefficient.set(delayTable.getCoefficient(fracPart));
      }
      // Else moving from pointer 2 -> 1
      else
@@ -124,13 +126,13 @@ public class PitchBendController extends UnitBinaryOperator
        frequencyPointer1 = frequencyPointer2 - (0.5 * frequencyStep);
        
        // Move position of first readPointer
-       double delay = samplingRate / frequencyPointer1;
+       double delay = delayTable.getDelay(frequencyPointer1);
        int intPart = (int) delay;
        buffer.delayPointer1.set(intPart);
        
        // Set the coefficient of the first allpass interpolated readpointer
        double fracPart = delay - intPart;
-       allpassFilterReader1.coefficient.set((1-fracPart)/(1+fracPart));
+       allpassFilterReader1.coefficient.set(delayTable.getCoefficient(fracPart));
      }
      
      // Set the flag for pitch bend to true, to be carried out by the function evaluator
@@ -170,21 +172,21 @@ public class PitchBendController extends UnitBinaryOperator
           if(currentPointer == true)
           {
             frequencyPointer2 += frequencyStep;
-            double delay = samplingRate / frequencyPointer2;
+            double delay = delayTable.getDelay(frequencyPointer2);
             int intPart = (int) delay;
             buffer.delayPointer2.set(intPart);
             double fracPart = delay - intPart;
-            allpassFilterReader2.coefficient.set((1-fracPart)/(1+fracPart));
+            allpassFilterReader2.coefficient.set(delayTable.getCoefficient(fracPart));
             bandpass.frequency.set(frequencyPointer2);
           }
           else
           {
             frequencyPointer1 += frequencyStep;
-            double delay = samplingRate / frequencyPointer1;
+            double delay = delayTable.getDelay(frequencyPointer1);
             int intPart = (int) delay;
             buffer.delayPointer1.set(intPart);
             double fracPart = delay - intPart;
-            allpassFilterReader1.coefficient.set((1-fracPart)/(1+fracPart));
+            allpassFilterReader1.coefficient.set(delayTable.getCoefficient(fracPart));
             bandpass.frequency.set(frequencyPointer1);
           }
             
@@ -295,4 +297,4 @@ public class PitchBendController extends UnitBinaryOperator
   {
     return !pitchBend;
   }
-}
+}
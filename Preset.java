@@ -0,0 +1,79 @@
+/**
+ * Simple Class for the result of fitting a banded waveguide to one sample: the parameters of each
+ * waveguide, the overall gain, and how far the fit is from the sample
+ */
+
+public class Preset
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final String name;
+  private final WaveguideParameters[] parameters;
+  private final double gain;
+  private final double distance;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param name String the name of the preset, eg the path of the sample it was fitted to
+   * @param parameters WaveguideParameters[] the parameters for each waveguide
+   * @param gain double the overall gain
+   * @param distance double the spectral distance from the sample
+   */
+
+  public Preset(String name, WaveguideParameters[] parameters, double gain, double distance)
+  {
+    this.name = name;
+    this.parameters = parameters.clone();
+    this.gain = gain;
+    this.distance = distance;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return String the name of the preset
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @return WaveguideParameters[] the parameters for each waveguide
+   */
+  public WaveguideParameters[] getParameters()
+  {
+    return parameters.clone();
+  }
+
+  /**
+   * @return double the overall gain
+   */
+  public double getGain()
+  {
+    return gain;
+  }
+
+  /**
+   * @return double the spectral distance from the sample
+   */
+  public double getDistance()
+  {
+    return distance;
+  }
+}
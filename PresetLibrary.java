@@ -0,0 +1,206 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of fitted presets, saved as one text file. Each preset is a [name] line, then gain and distance
+ * lines, then a line of centre frequency, amplitude, Q and gain for each waveguide, in the same order
+ * WaveguideGA prints them. Presets can be added from many threads at once.
+ */
+
+public class PresetLibrary
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final Map<String, Preset> presets;     // Sorted by name, so the file is in a stable order
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, for an empty library
+   */
+
+  public PresetLibrary()
+  {
+    presets = new TreeMap<String, Preset>();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Presets
+  //
+  /**************************************************************************************************/
+  /**
+   * Add a preset, replacing any with the same name
+   * @param preset Preset the preset
+   */
+
+  public synchronized void add(Preset preset)
+  {
+    presets.put(preset.getName(), preset);
+  }
+
+  /**
+   * Get a preset by name
+   * @param name String the name of the preset
+   * @return Preset the preset, or null if there is none with that name
+   */
+
+  public synchronized Preset get(String name)
+  {
+    return presets.get(name);
+  }
+
+  /**
+   * @return List<Preset> every preset, sorted by name
+   */
+
+  public synchronized List<Preset> getPresets()
+  {
+    return new ArrayList<Preset>(presets.values());
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* save
+  //
+  /**************************************************************************************************/
+  /**
+   * Write every preset to a file. Written to a temporary file first then moved over the old one, so a
+   * library being rewritten as fits finish is never left half written or missing
+   * @param file File the file to write
+   */
+
+  public synchronized void save(File file) throws IOException
+  {
+    File temporary = new File(file.getPath() + ".tmp");
+    PrintWriter writer = new PrintWriter(temporary, "UTF-8");
+    try
+    {
+      writer.println("# Banded waveguide presets: centre frequency, amplitude, Q, gain for each waveguide");
+      for(Preset preset : presets.values())
+      {
+        writer.println("[" + preset.getName() + "]");
+        writer.println("gain: " + preset.getGain());
+        writer.println("distance: " + preset.getDistance());
+
+        WaveguideParameters[] p = preset.getParameters();
+        for(int i=0; i<p.length; i++)
+        {
+          writer.println(p[i].getCenterFrequency() + ", " + p[i].getAmplitude() + ", " + p[i].getQ() + ", " + p[i].getGain());
+        }
+        writer.println();
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+
+    if(writer.checkError())
+    {
+      throw new IOException("Could not write " + temporary);
+    }
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* load
+  //
+  /**************************************************************************************************/
+  /**
+   * Read a library written by save
+   * @param file File the file to read
+   * @return PresetLibrary the presets in the file
+   */
+
+  public static PresetLibrary load(File file) throws IOException
+  {
+    PresetLibrary library = new PresetLibrary();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try
+    {
+      String name = null;
+      double gain = 0;
+      double distance = 0;
+      List<WaveguideParameters> parameters = new ArrayList<WaveguideParameters>();
+
+      String line;
+      while((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+        if(line.isEmpty() || line.startsWith("#"))
+        {
+          continue;
+        }
+
+        if(line.startsWith("["))
+        {
+          // Finish the last preset before starting the next
+          if(name != null)
+          {
+            library.add(new Preset(name, parameters.toArray(new WaveguideParameters[parameters.size()]), gain, distance));
+          }
+          name = line.substring(1, line.length() - 1);
+          parameters.clear();
+        }
+        else if(line.startsWith("gain:"))
+        {
+          gain = Double.parseDouble(line.substring(5).trim());
+        }
+        else if(line.startsWith("distance:"))
+        {
+          distance = Double.parseDouble(line.substring(9).trim());
+        }
+        else
+        {
+          String[] values = line.split(",");
+          if(values.length != 4)
+          {
+            throw new IOException("Expected 4 values for a waveguide: " + line);
+          }
+          parameters.add(new WaveguideParameters(
+            Double.parseDouble(values[0].trim()),
+            Double.parseDouble(values[1].trim()),
+            Double.parseDouble(values[2].trim()),
+            Double.parseDouble(values[3].trim())));
+        }
+      }
+
+      if(name != null)
+      {
+        library.add(new Preset(name, parameters.toArray(new WaveguideParameters[parameters.size()]), gain, distance));
+      }
+    }
+    catch(NumberFormatException ex)
+    {
+      throw new IOException("Invalid preset library " + file, ex);
+    }
+    finally
+    {
+      reader.close();
+    }
+    return library;
+  }
+}
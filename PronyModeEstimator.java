@@ -0,0 +1,528 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fits a sum of exponentially decaying sinusoids to the target with the least squares Prony method,
+ * instead of searching for it. A drum stroke after its attack is close to such a sum, so each mode
+ * gives one waveguide: the angle of its pole is the centre frequency, the radius is how much it decays
+ * each sample, and the fitted amplitude is the waveguide amplitude.
+ *
+ * The signal from the loudest sample is low pass filtered and decimated, as the waveguides only go up to
+ * 4096Hz, then linear prediction coefficients are found by least squares. The roots of the prediction
+ * polynomial are the poles of the modes. The model order is a few times the number of modes wanted, so
+ * the extra poles take up the noise, and the strongest modes are kept. Nothing is rendered, so a sample
+ * takes milliseconds rather than the thousands of renders of WaveguideGA.
+ */
+
+public class PronyModeEstimator implements IModeEstimator
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int DEFAULT_DECIMATION = 4;        // 44.1kHz down to 11kHz, above 2 x 4096Hz
+  private static final double ANALYSIS_SECONDS = 0.3;     // Length of signal fitted, from the loudest sample
+  private static final int ORDER_PER_MODE = 6;            // Poles in the model for each mode wanted
+  private static final int MIN_ORDER = 16;
+  private static final int FILTER_TAPS = 63;              // Length of the decimation filter
+  private static final double REGULARISATION = 1e-9;      // Added to the diagonal, relative to the mean
+
+  // Root finding
+  private static final int MAX_ITERATIONS = 500;
+  private static final double ROOT_TOLERANCE = 1e-12;
+
+  // Modes outside the range the waveguides can play are dropped
+  private static final double MIN_FREQUENCY = 70.0;
+  private static final double MAX_FREQUENCY = 4096.0;
+  private static final double MIN_Q = 1.0;
+  private static final double MAX_Q = 1023.0;
+  private static final double MAX_GAIN = 0.9999;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final double samplingRate;
+  private final int decimation;
+  private final double[] filter;                          // Low pass filter applied before decimating
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate of the targets
+   */
+
+  public PronyModeEstimator(double samplingRate)
+  {
+    this(samplingRate, DEFAULT_DECIMATION);
+  }
+
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate of the targets
+   * @param decimation int the factor to reduce the sampling rate by before fitting, 1 to not decimate
+   */
+
+  public PronyModeEstimator(double samplingRate, int decimation)
+  {
+    if(decimation < 1)
+    {
+      throw new IllegalArgumentException("Decimation must be at least 1!");
+    }
+    if(MAX_FREQUENCY >= samplingRate / (2 * decimation))
+    {
+      throw new IllegalArgumentException("Decimated sampling rate must be above twice the highest waveguide frequency!");
+    }
+
+    this.samplingRate = samplingRate;
+    this.decimation = decimation;
+
+    // Hamming windowed sinc, cut off half way between the highest frequency and the new Nyquist
+    filter = new double[FILTER_TAPS];
+    double cutoff = 0.5 * (MAX_FREQUENCY + (samplingRate / (2 * decimation))) / samplingRate;
+    double sum = 0;
+    for(int n=0; n<FILTER_TAPS; n++)
+    {
+      int m = n - (FILTER_TAPS / 2);
+      double sinc = (m == 0) ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * m) / (Math.PI * m);
+      filter[n] = sinc * (0.54 - (0.46 * Math.cos(2 * Math.PI * n / (FILTER_TAPS - 1))));
+      sum += filter[n];
+    }
+    for(int n=0; n<FILTER_TAPS; n++)
+    {
+      filter[n] /= sum;
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* estimate
+  //
+  /**************************************************************************************************/
+  /**
+   * Estimates the parameters of the strongest modes of the target
+   * @param target double[] the samples of the target sound
+   * @param maxModes int the most modes to find
+   * @return List<WaveguideParameters> one for each mode found, most energy first, amplitudes relative to
+   * the loudest, may be fewer than maxModes
+   */
+
+  public List<WaveguideParameters> estimate(double[] target, int maxModes)
+  {
+    List<WaveguideParameters> estimates = new ArrayList<WaveguideParameters>();
+    double[] x = decimate(target);
+    int order = Math.max(MIN_ORDER, ORDER_PER_MODE * maxModes);
+    if(x.length < 3 * order)
+    {
+      return estimates;
+    }
+
+    double[] coefficients = linearPrediction(x, order);
+
+    // Poles are the roots of z^p - a1 z^(p-1) - ... - ap
+    double[] polynomial = new double[order + 1];
+    polynomial[0] = 1;
+    for(int k=1; k<=order; k++)
+    {
+      polynomial[k] = -coefficients[k - 1];
+    }
+    double[][] roots = findRoots(polynomial);
+
+    // Keep one pole of each conjugate pair, decaying and in range
+    final double decimatedRate = samplingRate / decimation;
+    List<double[]> poles = new ArrayList<double[]>();
+    for(int k=0; k<order; k++)
+    {
+      double re = roots[0][k];
+      double im = roots[1][k];
+      double radius = Math.hypot(re, im);
+      double frequency = Math.atan2(im, re) * decimatedRate / (2 * Math.PI);
+      if(radius < 1 && radius > 0 && frequency >= MIN_FREQUENCY && frequency <= MAX_FREQUENCY)
+      {
+        poles.add(new double[] { frequency, radius, 0 });
+      }
+    }
+    if(poles.isEmpty())
+    {
+      return estimates;
+    }
+
+    fitAmplitudes(x, poles, decimatedRate);
+
+    // Strongest first, by the energy of the whole decay rather than the starting amplitude
+    Collections.sort(poles, new Comparator<double[]>()
+    {
+      public int compare(double[] a, double[] b)
+      {
+        return Double.compare(energy(b), energy(a));
+      }
+    });
+
+    // Amplitudes relative to the loudest mode kept, as waveguide amplitudes are at most 1
+    int numModes = Math.min(maxModes, poles.size());
+    double loudest = 0;
+    for(int k=0; k<numModes; k++)
+    {
+      loudest = Math.max(loudest, poles.get(k)[2]);
+    }
+
+    for(int k=0; k<numModes; k++)
+    {
+      double[] pole = poles.get(k);
+      double frequency = pole[0];
+      double decayRate = -Math.log(pole[1]) * decimatedRate;
+
+      double q = Math.max(MIN_Q, Math.min(MAX_Q, frequency * Math.PI / decayRate));
+      double gain = Math.max(0, Math.min(MAX_GAIN, Math.exp(-decayRate / frequency)));
+      estimates.add(new WaveguideParameters(frequency, pole[2] / loudest, q, gain));
+    }
+    return estimates;
+  }
+
+  /**
+   * @param pole double[] frequency, radius and amplitude of a mode
+   * @return double the total energy of the mode's decay
+   */
+
+  private static double energy(double[] pole)
+  {
+    return (pole[2] * pole[2]) / (1 - (pole[1] * pole[1]));
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* decimate
+  //
+  /**************************************************************************************************/
+  /**
+   * Filters and decimates the target from its loudest sample, for ANALYSIS_SECONDS
+   * @param target double[] the samples of the target sound
+   * @return double[] the decimated samples
+   */
+
+  private double[] decimate(double[] target)
+  {
+    int start = 0;
+    for(int n=1; n<target.length; n++)
+    {
+      if(Math.abs(target[n]) > Math.abs(target[start]))
+      {
+        start = n;
+      }
+    }
+
+    int length = Math.min(target.length - start, (int) (ANALYSIS_SECONDS * samplingRate));
+    double[] x = new double[length / decimation];
+    int half = FILTER_TAPS / 2;
+    for(int i=0; i<x.length; i++)
+    {
+      int centre = start + (i * decimation);
+      double sum = 0;
+      for(int n=0; n<FILTER_TAPS; n++)
+      {
+        int index = centre + n - half;
+        if(index >= 0 && index < target.length)
+        {
+          sum += filter[n] * target[index];
+        }
+      }
+      x[i] = sum;
+    }
+    return x;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* linearPrediction
+  //
+  /**************************************************************************************************/
+  /**
+   * Finds the coefficients that best predict each sample from the ones before, by least squares over the
+   * whole signal (the covariance method)
+   * @param x double[] the signal
+   * @param order int the number of coefficients
+   * @return double[] a1 to ap, where x[n] is close to a1 x[n-1] + ... + ap x[n-p]
+   */
+
+  private static double[] linearPrediction(double[] x, int order)
+  {
+    double[][] normal = new double[order][order];
+    double[] rightSide = new double[order];
+
+    for(int n=order; n<x.length; n++)
+    {
+      for(int i=0; i<order; i++)
+      {
+        double xi = x[n - 1 - i];
+        rightSide[i] += xi * x[n];
+        for(int j=0; j<=i; j++)
+        {
+          normal[i][j] += xi * x[n - 1 - j];
+        }
+      }
+    }
+
+    return solveSymmetric(normal, rightSide);
+  }
+
+  /**
+   * Solves a symmetric positive definite system by Cholesky decomposition, with a little added to the
+   * diagonal so a near singular system from a short or quiet signal still solves
+   * @param a double[][] the matrix, only the lower triangle is used, overwritten
+   * @param b double[] the right hand side
+   * @return double[] the solution
+   */
+
+  private static double[] solveSymmetric(double[][] a, double[] b)
+  {
+    int n = b.length;
+    double trace = 0;
+    for(int i=0; i<n; i++)
+    {
+      trace += a[i][i];
+    }
+    double loading = REGULARISATION * Math.max(trace / n, Double.MIN_NORMAL);
+
+    // A = L L^T, L stored in the lower triangle
+    for(int i=0; i<n; i++)
+    {
+      a[i][i] += loading;
+      for(int j=0; j<=i; j++)
+      {
+        double sum = a[i][j];
+        for(int k=0; k<j; k++)
+        {
+          sum -= a[i][k] * a[j][k];
+        }
+        a[i][j] = (i == j) ? Math.sqrt(Math.max(sum, loading)) : sum / a[j][j];
+      }
+    }
+
+    double[] y = new double[n];
+    for(int i=0; i<n; i++)
+    {
+      double sum = b[i];
+      for(int k=0; k<i; k++)
+      {
+        sum -= a[i][k] * y[k];
+      }
+      y[i] = sum / a[i][i];
+    }
+    for(int i=n-1; i>=0; i--)
+    {
+      double sum = y[i];
+      for(int k=i+1; k<n; k++)
+      {
+        sum -= a[k][i] * y[k];
+      }
+      y[i] = sum / a[i][i];
+    }
+    return y;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* findRoots
+  //
+  /**************************************************************************************************/
+  /**
+   * Finds every root of a polynomial at once with the Durand-Kerner iteration
+   * @param c double[] the coefficients, highest power first, c[0] must be 1
+   * @return double[][] the real parts then the imaginary parts of the roots
+   */
+
+  private static double[][] findRoots(double[] c)
+  {
+    int degree = c.length - 1;
+    double[] re = new double[degree];
+    double[] im = new double[degree];
+
+    // Start on a spiral, not symmetric about the real axis, so conjugate roots separate
+    double startRe = 0.4, startIm = 0.9;
+    double powRe = 1, powIm = 0;
+    for(int k=0; k<degree; k++)
+    {
+      double r = (powRe * startRe) - (powIm * startIm);
+      powIm = (powRe * startIm) + (powIm * startRe);
+      powRe = r;
+      re[k] = powRe;
+      im[k] = powIm;
+    }
+
+    for(int iteration=0; iteration<MAX_ITERATIONS; iteration++)
+    {
+      double largestStep = 0;
+      for(int k=0; k<degree; k++)
+      {
+        // Value of the polynomial at root k, by Horner's method
+        double valueRe = 1, valueIm = 0;
+        for(int i=1; i<=degree; i++)
+        {
+          double r = (valueRe * re[k]) - (valueIm * im[k]) + c[i];
+          valueIm = (valueRe * im[k]) + (valueIm * re[k]);
+          valueRe = r;
+        }
+
+        // Product of the distances to the other roots
+        double productRe = 1, productIm = 0;
+        for(int j=0; j<degree; j++)
+        {
+          if(j != k)
+          {
+            double dRe = re[k] - re[j];
+            double dIm = im[k] - im[j];
+            double r = (productRe * dRe) - (productIm * dIm);
+            productIm = (productRe * dIm) + (productIm * dRe);
+            productRe = r;
+          }
+        }
+
+        double denominator = (productRe * productRe) + (productIm * productIm);
+        if(denominator == 0)
+        {
+          continue;
+        }
+        double stepRe = ((valueRe * productRe) + (valueIm * productIm)) / denominator;
+        double stepIm = ((valueIm * productRe) - (valueRe * productIm)) / denominator;
+        re[k] -= stepRe;
+        im[k] -= stepIm;
+        largestStep = Math.max(largestStep, Math.hypot(stepRe, stepIm));
+      }
+
+      if(largestStep < ROOT_TOLERANCE)
+      {
+        break;
+      }
+    }
+
+    return new double[][] { re, im };
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* fitAmplitudes
+  //
+  /**************************************************************************************************/
+  /**
+   * Fits the amplitude and phase of every mode together by least squares, with a decaying cosine and
+   * sine for each, and stores each mode's amplitude after its frequency and radius
+   * @param x double[] the signal
+   * @param poles List<double[]> frequency, radius and amplitude of each mode, amplitude is written
+   * @param decimatedRate double the sampling rate of the signal
+   */
+
+  private static void fitAmplitudes(double[] x, List<double[]> poles, double decimatedRate)
+  {
+    int numModes = poles.size();
+    int numBasis = 2 * numModes;
+    double[][] normal = new double[numBasis][numBasis];
+    double[] rightSide = new double[numBasis];
+    double[] basis = new double[numBasis];
+
+    // Each mode's decaying phasor, stepped along a sample at a time
+    double[] stepRe = new double[numModes];
+    double[] stepIm = new double[numModes];
+    double[] phasorRe = new double[numModes];
+    double[] phasorIm = new double[numModes];
+    for(int m=0; m<numModes; m++)
+    {
+      double[] pole = poles.get(m);
+      double w = 2 * Math.PI * pole[0] / decimatedRate;
+      stepRe[m] = pole[1] * Math.cos(w);
+      stepIm[m] = pole[1] * Math.sin(w);
+      phasorRe[m] = 1;
+    }
+
+    for(int n=0; n<x.length; n++)
+    {
+      for(int m=0; m<numModes; m++)
+      {
+        basis[2 * m] = phasorRe[m];
+        basis[(2 * m) + 1] = phasorIm[m];
+
+        double r = (phasorRe[m] * stepRe[m]) - (phasorIm[m] * stepIm[m]);
+        phasorIm[m] = (phasorRe[m] * stepIm[m]) + (phasorIm[m] * stepRe[m]);
+        phasorRe[m] = r;
+      }
+
+      for(int i=0; i<numBasis; i++)
+      {
+        rightSide[i] += basis[i] * x[n];
+        for(int j=0; j<=i; j++)
+        {
+          normal[i][j] += basis[i] * basis[j];
+        }
+      }
+    }
+
+    double[] weights = solveSymmetric(normal, rightSide);
+    for(int m=0; m<numModes; m++)
+    {
+      poles.get(m)[2] = Math.hypot(weights[2 * m], weights[(2 * m) + 1]);
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* main
+  //
+  /**************************************************************************************************/
+  /**
+   * Fits a sample and prints the parameters and how close they are to the target, the spectral distance
+   * of the modes rendered at the closest of SpectralPeakSeeder's overall gains
+   * @param args String[] the target audio file, then optionally the number of waveguides, default 5
+   */
+
+  public static void main(String[] args) throws IOException
+  {
+    if(args.length < 1)
+    {
+      System.out.println("Usage: PronyModeEstimator <target audio file> [number of waveguides]");
+      return;
+    }
+    int numWaveguides = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+    double[] target = WaveguideFitnessEvaluator.readAudioFromFile(args[0]);
+    PronyModeEstimator estimator = new PronyModeEstimator(44100);
+
+    long start = System.nanoTime();
+    List<WaveguideParameters> modes = estimator.estimate(target, numWaveguides);
+    long elapsed = System.nanoTime() - start;
+
+    for(WaveguideParameters p : modes)
+    {
+      System.out.println(p.getCenterFrequency() + ", " + p.getAmplitude() + ", " + p.getQ() + ", " + p.getGain());
+    }
+    System.out.printf("Found %d modes in %.1f ms%n", modes.size(), elapsed / 1e6);
+    if(modes.isEmpty())
+    {
+      return;
+    }
+
+    // Score the modes as the genetic algorithm would, with a waveguide for each mode
+    WaveguideParameters[] params = modes.toArray(new WaveguideParameters[modes.size()]);
+    WaveguideFitnessEvaluator evaluator = new WaveguideFitnessEvaluator(params.length, target, new SpectralDistance(SpectralMetric.L1));
+    double overallGain = SpectralPeakSeeder.findOverallGain(evaluator, params);
+    double distance = evaluator.getFitness(params, overallGain, Double.POSITIVE_INFINITY);
+    System.out.printf("Distance to the target %.1f at overall gain %s%n", distance, overallGain);
+  }
+}
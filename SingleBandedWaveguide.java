@@ -12,7 +12,7 @@ import com.jsyn.ports.UnitOutputPort;
  * multiple times. 
  */
 
-public class SingleBandedWaveguide extends Circuit
+public class SingleBandedWaveguide extends Circuit implements IWaveguideBand
 {
 
   /**************************************************************************************************/
@@ -23,7 +23,7 @@ public class SingleBandedWaveguide extends Circuit
 
   // UnitGenerators
   private FilterBandPass bandpass;
-  private CircularBuffer buffer;
+  private DelayLine buffer;
   private AllpassFilter allpass1;
   private AllpassFilter allpass2;
   private PitchBendController pitchBendController;
@@ -34,6 +34,7 @@ public class SingleBandedWaveguide extends Circuit
 
   // Parameters
   private double samplingRate;
+  private DelayLookupTable delayTable;   // Shared frequency to delay and coefficient lookups
   private double frequency;
 
 
@@ -53,10 +54,11 @@ public class SingleBandedWaveguide extends Circuit
     super();
 
     this.samplingRate = samplingRate;
+    delayTable = DelayLookupTable.getInstance(samplingRate);
 
     // Initialise units and add to circuit
     add(bandpass = new FilterBandPass());
-    add(buffer = new CircularBuffer(maxBufferSize, 1, 1));
+    add(buffer = new DelayLine(maxBufferSize, 1, 1));
     add(allpass1 = new AllpassFilter());
     add(allpass2 = new AllpassFilter());
     add(pitchBendController = new PitchBendController(samplingRate, bandpass, buffer, allpass1, allpass2));
@@ -73,6 +75,22 @@ public class SingleBandedWaveguide extends Circuit
     allpass2.output.connect(0, pitchBendController.inputB, 0);  // Output from allpass2 into the pitchbend controller
   }
 
+  /**************************************************************************************************/
+  //
+  /* IWaveguideBand 
+   //
+  /**************************************************************************************************/
+
+  public UnitInputPort getInput()
+  {
+    return input;
+  }
+
+  public UnitOutputPort getOutput()
+  {
+    return output;
+  }
+
   /**************************************************************************************************/
   //
   /* PlayNote 
@@ -91,10 +109,10 @@ public class SingleBandedWaveguide extends Circuit
     // Work out the length of the delay line, and the allpass coefficients from the frequency 
 
     frequency = waveguideParameters.getCenterFrequency();
-    double loop = samplingRate / frequency;
+    double loop = delayTable.getDelay(frequency);
     int delayLength = (int) loop;
     double fractionalDelay = loop - delayLength;
-    double coefficient = (1-fractionalDelay)/(1+fractionalDelay);
+    double coefficient = delayTable.getCoefficient(fractionalDelay);
     allpass1.coefficient.set(coefficient);
     allpass2.coefficient.set(coefficient);
 
@@ -151,4 +169,4 @@ public class SingleBandedWaveguide extends Circuit
     return pitchBendController.isFinished();
   }
 }
-
+
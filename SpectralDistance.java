@@ -0,0 +1,260 @@
+/**
+ * Distance between spectrograms held as flat, frame-major arrays (frame f, bin b at f * numBins + b),
+ * using one of the SpectralMetric metrics, optionally with a weight for each frequency bin. The distance
+ * of a whole spectrogram is the sum of the distance of each frame, so it can be built up a frame at a
+ * time. Frames must be passed through prepare before being compared, which takes the logs for
+ * LOG_MAGNITUDE once per frame rather than once per comparison. Never changed once created, so can be
+ * shared between threads.
+ */
+
+public class SpectralDistance
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final double LOG_FLOOR = 1e-6;     // Added to magnitudes before taking the log, so silence is finite
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final SpectralMetric metric;
+  private final double[] weights;                   // Weight of each bin, null to weight them all as 1
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, weighting every bin the same
+   * @param metric SpectralMetric how to compare the magnitudes
+   */
+
+  public SpectralDistance(SpectralMetric metric)
+  {
+    this(metric, null);
+  }
+
+  /**
+   * Class constructor
+   * @param metric SpectralMetric how to compare the magnitudes
+   * @param weights double[] the weight of each frequency bin, or null to weight them all as 1
+   */
+
+  public SpectralDistance(SpectralMetric metric, double[] weights)
+  {
+    if(weights != null)
+    {
+      for(int i=0; i<weights.length; i++)
+      {
+        if(weights[i] < 0)
+        {
+          throw new IllegalArgumentException("Band weights must be greater than or equal to 0!");
+        }
+      }
+    }
+
+    this.metric = metric;
+    this.weights = (weights == null) ? null : weights.clone();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* prepare
+  //
+  /**************************************************************************************************/
+  /**
+   * Converts magnitudes, in place, to the form they are compared in
+   * @param spectrum double[] the magnitudes
+   * @param offset int the index of the first magnitude
+   * @param length int the number of magnitudes
+   */
+
+  public void prepare(double[] spectrum, int offset, int length)
+  {
+    if(metric != SpectralMetric.LOG_MAGNITUDE)
+    {
+      return;
+    }
+
+    int end = offset + length;
+    for(int i=offset; i<end; i++)
+    {
+      spectrum[i] = Math.log(spectrum[i] + LOG_FLOOR);
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* distance
+  //
+  /**************************************************************************************************/
+  /**
+   * Computes the distance between two prepared spectrograms
+   * @param spectrogram1 double[] the first spectrogram, frame-major
+   * @param spectrogram2 double[] the second spectrogram, frame-major
+   * @param numFrames int the number of frames to compare
+   * @param numBins int the number of bins in each frame
+   * @return double the sum of the distance of each frame
+   */
+
+  public double distance(double[] spectrogram1, double[] spectrogram2, int numFrames, int numBins)
+  {
+    double totalDistance = 0;
+    for(int frame=0; frame<numFrames; frame++)
+    {
+      totalDistance += frameDistance(spectrogram1, frame * numBins, spectrogram2, frame * numBins, numBins);
+    }
+    return totalDistance;
+  }
+
+  /**
+   * Computes the distance between one frame of each of two prepared spectrograms
+   * @param spectrum1 double[] holds the first frame
+   * @param offset1 int the index of the first frame's first bin
+   * @param spectrum2 double[] holds the second frame
+   * @param offset2 int the index of the second frame's first bin
+   * @param numBins int the number of bins in each frame
+   * @return double the distance
+   */
+
+  public double frameDistance(double[] spectrum1, int offset1, double[] spectrum2, int offset2, int numBins)
+  {
+    // Pick the loop once per frame, so the inner loops have no branches
+    if(metric == SpectralMetric.L2)
+    {
+      return (weights == null) ? squaredDistance(spectrum1, offset1, spectrum2, offset2, numBins)
+                               : weightedSquaredDistance(spectrum1, offset1, spectrum2, offset2, numBins);
+    }
+    return (weights == null) ? absoluteDistance(spectrum1, offset1, spectrum2, offset2, numBins)
+                             : weightedAbsoluteDistance(spectrum1, offset1, spectrum2, offset2, numBins);
+  }
+
+  /**
+   * Checks the weights, if any, cover a frame
+   * @param numBins int the number of bins in each frame
+   */
+
+  public void checkNumBins(int numBins)
+  {
+    if(weights != null && weights.length != numBins)
+    {
+      throw new IllegalArgumentException("Number of band weights must be equal to the number of frequency bins!");
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Kernels
+  //
+  /**************************************************************************************************/
+  // Each sums into four independent totals, so consecutive additions do not wait for each other
+
+  private static double absoluteDistance(double[] a, int offsetA, double[] b, int offsetB, int length)
+  {
+    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+    int i = 0;
+    for(; i<=length-4; i+=4)
+    {
+      sum0 += Math.abs(a[offsetA + i] - b[offsetB + i]);
+      sum1 += Math.abs(a[offsetA + i + 1] - b[offsetB + i + 1]);
+      sum2 += Math.abs(a[offsetA + i + 2] - b[offsetB + i + 2]);
+      sum3 += Math.abs(a[offsetA + i + 3] - b[offsetB + i + 3]);
+    }
+    for(; i<length; i++)
+    {
+      sum0 += Math.abs(a[offsetA + i] - b[offsetB + i]);
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  private double weightedAbsoluteDistance(double[] a, int offsetA, double[] b, int offsetB, int length)
+  {
+    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+    int i = 0;
+    for(; i<=length-4; i+=4)
+    {
+      sum0 += weights[i] * Math.abs(a[offsetA + i] - b[offsetB + i]);
+      sum1 += weights[i + 1] * Math.abs(a[offsetA + i + 1] - b[offsetB + i + 1]);
+      sum2 += weights[i + 2] * Math.abs(a[offsetA + i + 2] - b[offsetB + i + 2]);
+      sum3 += weights[i + 3] * Math.abs(a[offsetA + i + 3] - b[offsetB + i + 3]);
+    }
+    for(; i<length; i++)
+    {
+      sum0 += weights[i] * Math.abs(a[offsetA + i] - b[offsetB + i]);
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  private static double squaredDistance(double[] a, int offsetA, double[] b, int offsetB, int length)
+  {
+    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+    int i = 0;
+    for(; i<=length-4; i+=4)
+    {
+      double d0 = a[offsetA + i] - b[offsetB + i];
+      double d1 = a[offsetA + i + 1] - b[offsetB + i + 1];
+      double d2 = a[offsetA + i + 2] - b[offsetB + i + 2];
+      double d3 = a[offsetA + i + 3] - b[offsetB + i + 3];
+      sum0 += d0 * d0;
+      sum1 += d1 * d1;
+      sum2 += d2 * d2;
+      sum3 += d3 * d3;
+    }
+    for(; i<length; i++)
+    {
+      double d = a[offsetA + i] - b[offsetB + i];
+      sum0 += d * d;
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  private double weightedSquaredDistance(double[] a, int offsetA, double[] b, int offsetB, int length)
+  {
+    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+    int i = 0;
+    for(; i<=length-4; i+=4)
+    {
+      double d0 = a[offsetA + i] - b[offsetB + i];
+      double d1 = a[offsetA + i + 1] - b[offsetB + i + 1];
+      double d2 = a[offsetA + i + 2] - b[offsetB + i + 2];
+      double d3 = a[offsetA + i + 3] - b[offsetB + i + 3];
+      sum0 += weights[i] * d0 * d0;
+      sum1 += weights[i + 1] * d1 * d1;
+      sum2 += weights[i + 2] * d2 * d2;
+      sum3 += weights[i + 3] * d3 * d3;
+    }
+    for(; i<length; i++)
+    {
+      double d = a[offsetA + i] - b[offsetB + i];
+      sum0 += weights[i] * d * d;
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return SpectralMetric the metric used to compare magnitudes
+   */
+  public SpectralMetric getMetric()
+  {
+    return metric;
+  }
+}
@@ -0,0 +1,8 @@
+/**
+ * Enum to choose how SpectralDistance compares two spectrogram frames
+ * L1 sums the absolute difference of each magnitude, as Spectrogram.distance
+ * L2 sums the squared difference of each magnitude, punishing large differences more
+ * LOG_MAGNITUDE sums the absolute difference of the log of each magnitude, so quiet partials count as much as loud ones
+ */
+
+public enum SpectralMetric { L1, L2, LOG_MAGNITUDE };
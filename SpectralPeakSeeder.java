@@ -0,0 +1,338 @@
+import org.uncommons.maths.binary.BitString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Estimates banded waveguide parameters straight from the target sound, to seed part of the genetic
+ * algorithm's initial population near the target's modes. The strongest peaks of the spectrum just
+ * after the attack give the centre frequencies and amplitudes, and how fast each peak decays over the
+ * following frames gives its Q (the decay bandwidth is the decay rate over pi) and its band gain (the
+ * decay over one period of the mode).
+ */
+
+public class SpectralPeakSeeder implements IModeEstimator
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int ATTACK_FRAMES = 4;             // Frames averaged, from the loudest, to find the peaks
+  private static final int MIN_PEAK_SEPARATION = 3;       // Bins between two peaks
+  private static final double PEAK_FLOOR = 1e-3;          // Smallest peak, and the end of a decay, relative to the loudest
+  private static final double MIN_DECAY_RATE = 1.0;       // Slowest decay, per second, for peaks that do not fall
+
+  // Bounds of the estimates, the same ranges the bit strings can hold
+  private static final double MIN_Q = 1.0;
+  private static final double MAX_Q = 1023.0;
+  private static final double MAX_GAIN = 0.9999;
+
+  // Spread of the seeds after the first, which is the estimate as it is
+  private static final double FREQUENCY_SPREAD = 0.02;    // Standard deviation, as a fraction of the frequency
+  private static final double Q_SPREAD = 0.5;             // Standard deviation of the log of Q
+  private static final double GAIN_SPREAD = 0.02;         // Standard deviation of the band gain
+  private static final double OVERALL_GAIN_SPREAD = 0.3;  // Standard deviation of the log of the overall gain
+
+  // Overall gains tried on the estimate, a factor of 2 apart, as the spectrum says nothing about loudness
+  private static final double MIN_OVERALL_GAIN = 0.125;
+  private static final double MAX_OVERALL_GAIN = 31.0;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final Spectrogram spectrogram;
+  private final double samplingRate;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param windowSize int the spectrogram window size
+   * @param stepSamples int the number of samples the spectrogram window moves along
+   * @param samplingRate double the sampling rate of the target
+   */
+
+  public SpectralPeakSeeder(int windowSize, int stepSamples, double samplingRate)
+  {
+    spectrogram = new Spectrogram(windowSize, stepSamples);
+    this.samplingRate = samplingRate;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* estimate
+  //
+  /**************************************************************************************************/
+  /**
+   * Estimates the parameters of the strongest modes of the target
+   * @param target double[] the samples of the target sound
+   * @param maxModes int the most modes to find
+   * @return List<WaveguideParameters> one for each mode found, strongest first, may be fewer than maxModes
+   */
+
+  public List<WaveguideParameters> estimate(double[] target, int maxModes)
+  {
+    int numFrames = spectrogram.getNumFrames(target.length);
+    int numBins = spectrogram.getNumBins();
+    List<WaveguideParameters> estimates = new ArrayList<WaveguideParameters>();
+    if(numFrames == 0)
+    {
+      return estimates;
+    }
+
+    double[] frames = new double[numFrames * numBins];
+    spectrogram.spectrogram(target, frames);
+
+    // The loudest frame is just after the attack
+    int loudestFrame = 0;
+    double loudestEnergy = -1;
+    for(int f=0; f<numFrames; f++)
+    {
+      double energy = 0;
+      for(int b=0; b<numBins; b++)
+      {
+        energy += frames[(f * numBins) + b] * frames[(f * numBins) + b];
+      }
+      if(energy > loudestEnergy)
+      {
+        loudestEnergy = energy;
+        loudestFrame = f;
+      }
+    }
+
+    // Average a few frames from there, so noise does not make peaks
+    int lastAttackFrame = Math.min(numFrames, loudestFrame + ATTACK_FRAMES);
+    double[] attack = new double[numBins];
+    double loudestBin = 0;
+    for(int b=0; b<numBins; b++)
+    {
+      for(int f=loudestFrame; f<lastAttackFrame; f++)
+      {
+        attack[b] += frames[(f * numBins) + b];
+      }
+      attack[b] /= (lastAttackFrame - loudestFrame);
+      loudestBin = Math.max(loudestBin, attack[b]);
+    }
+
+    // Every local maximum, strongest first
+    List<Integer> peaks = new ArrayList<Integer>();
+    for(int b=2; b<numBins-1; b++)
+    {
+      if(attack[b] > attack[b - 1] && attack[b] >= attack[b + 1] && attack[b] > loudestBin * PEAK_FLOOR)
+      {
+        peaks.add(b);
+      }
+    }
+    final double[] magnitudes = attack;
+    Collections.sort(peaks, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        return Double.compare(magnitudes[b], magnitudes[a]);
+      }
+    });
+
+    List<Integer> chosen = new ArrayList<Integer>();
+    for(int peak : peaks)
+    {
+      if(chosen.size() == maxModes)
+      {
+        break;
+      }
+
+      boolean separate = true;
+      for(int other : chosen)
+      {
+        if(Math.abs(other - peak) < MIN_PEAK_SEPARATION)
+        {
+          separate = false;
+          break;
+        }
+      }
+      if(separate)
+      {
+        chosen.add(peak);
+      }
+    }
+
+    double binWidth = samplingRate / spectrogram.getWindowSize();
+    double frameRate = samplingRate / spectrogram.getStepSamples();
+    for(int peak : chosen)
+    {
+      double frequency = (peak + interpolatePeak(attack, peak)) * binWidth;
+      double decayRate = decayRate(frames, numFrames, numBins, peak, loudestFrame, frameRate);
+
+      double q = Math.max(MIN_Q, Math.min(MAX_Q, frequency / (decayRate / Math.PI)));
+      double gain = Math.max(0, Math.min(MAX_GAIN, Math.exp(-decayRate / frequency)));
+      double amplitude = attack[peak] / loudestBin;
+
+      estimates.add(new WaveguideParameters(frequency, amplitude, q, gain));
+    }
+    return estimates;
+  }
+
+  /**
+   * Finds where the true peak lies between bins, by fitting a parabola to the log magnitudes
+   * @param spectrum double[] the magnitudes
+   * @param peak int the bin of the peak
+   * @return double the offset of the true peak from the bin, between -0.5 and 0.5
+   */
+
+  private static double interpolatePeak(double[] spectrum, int peak)
+  {
+    double before = Math.log(spectrum[peak - 1] + 1e-12);
+    double at = Math.log(spectrum[peak] + 1e-12);
+    double after = Math.log(spectrum[peak + 1] + 1e-12);
+
+    double denominator = before - (2 * at) + after;
+    if(denominator >= 0)
+    {
+      return 0;
+    }
+    return Math.max(-0.5, Math.min(0.5, 0.5 * (before - after) / denominator));
+  }
+
+  /**
+   * Fits a straight line to the log magnitude of a bin from the loudest frame until it falls below the
+   * floor, giving how fast it decays
+   * @param frames double[] the spectrogram, frame-major
+   * @param numFrames int the number of frames
+   * @param numBins int the number of bins in each frame
+   * @param bin int the bin of the peak
+   * @param firstFrame int the frame to start from
+   * @param frameRate double frames per second
+   * @return double the decay rate, per second, at least MIN_DECAY_RATE
+   */
+
+  private static double decayRate(double[] frames, int numFrames, int numBins, int bin, int firstFrame, double frameRate)
+  {
+    double start = frames[(firstFrame * numBins) + bin];
+    double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+    int count = 0;
+
+    for(int f=firstFrame; f<numFrames; f++)
+    {
+      double magnitude = frames[(f * numBins) + bin];
+      if(magnitude < start * PEAK_FLOOR)
+      {
+        break;
+      }
+      double x = (f - firstFrame) / frameRate;
+      double y = Math.log(magnitude);
+      sumX += x;
+      sumY += y;
+      sumXX += x * x;
+      sumXY += x * y;
+      count++;
+    }
+
+    if(count < 3)
+    {
+      return MIN_DECAY_RATE;
+    }
+    double slope = ((count * sumXY) - (sumX * sumY)) / ((count * sumXX) - (sumX * sumX));
+    return Math.max(MIN_DECAY_RATE, -slope);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* createSeeds
+  //
+  /**************************************************************************************************/
+  /**
+   * Creates candidates around the estimate, the first exactly the estimate and the rest spread around it.
+   * The overall gain is found by rendering the estimate at a few gains and keeping the closest, and the
+   * seeds are spread around that too. Waveguides without a mode to match are left random
+   * @param evaluator WaveguideFitnessEvaluator encodes the candidates
+   * @param estimates List<WaveguideParameters> the estimated modes, from any IModeEstimator
+   * @param numWaveguides int the number of waveguides in each candidate
+   * @param count int the number of candidates to create
+   * @param rng Random the random number generator
+   * @return List<BitString> the candidates
+   */
+
+  public static List<BitString> createSeeds(WaveguideFitnessEvaluator evaluator, List<WaveguideParameters> estimates, int numWaveguides, int count, Random rng)
+  {
+    WaveguideGenome genome = new WaveguideGenome(numWaveguides);
+    WaveguideGenomeFactory randomFactory = new WaveguideGenomeFactory(genome);
+    List<BitString> seeds = new ArrayList<BitString>(count);
+    double bestOverallGain = MAX_OVERALL_GAIN;
+
+    for(int s=0; s<count; s++)
+    {
+      // Start random, then put the modes in
+      WaveguideParameters[] params = genome.decode(randomFactory.generateRandomCandidate(rng));
+      for(int i=0; i<numWaveguides && i<estimates.size(); i++)
+      {
+        WaveguideParameters estimate = estimates.get(i);
+        double frequency = estimate.getCenterFrequency();
+        double q = estimate.getQ();
+        double gain = estimate.getGain();
+
+        if(s > 0)
+        {
+          frequency *= 1 + (rng.nextGaussian() * FREQUENCY_SPREAD);
+          q *= Math.exp(rng.nextGaussian() * Q_SPREAD);
+          gain += rng.nextGaussian() * GAIN_SPREAD;
+        }
+
+        params[i] = new WaveguideParameters(frequency,
+                                            estimate.getAmplitude(),
+                                            Math.max(MIN_Q, Math.min(MAX_Q, q)),
+                                            Math.max(0, Math.min(MAX_GAIN, gain)));
+      }
+
+      double overallGain;
+      if(s == 0)
+      {
+        bestOverallGain = findOverallGain(evaluator, params);
+        overallGain = bestOverallGain;
+      }
+      else
+      {
+        overallGain = Math.min(MAX_OVERALL_GAIN, bestOverallGain * Math.exp(rng.nextGaussian() * OVERALL_GAIN_SPREAD));
+      }
+
+      seeds.add(evaluator.convertToBitString(params, overallGain));
+    }
+    return seeds;
+  }
+
+  /**
+   * Renders the parameters at overall gains a factor of 2 apart, from the quietest up
+   * @param evaluator WaveguideFitnessEvaluator renders and scores the parameters
+   * @param params WaveguideParameters[] the parameters for each waveguide
+   * @return double the overall gain closest to the target
+   */
+
+  static double findOverallGain(WaveguideFitnessEvaluator evaluator, WaveguideParameters[] params)
+  {
+    double bestGain = MAX_OVERALL_GAIN;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    for(double gain=MIN_OVERALL_GAIN; gain<=MAX_OVERALL_GAIN; gain*=2)
+    {
+      double distance = evaluator.getFitness(params, gain, Double.POSITIVE_INFINITY);
+      if(distance < bestDistance)
+      {
+        bestDistance = distance;
+        bestGain = gain;
+      }
+    }
+    return bestGain;
+  }
+}
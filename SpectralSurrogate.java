@@ -0,0 +1,514 @@
+/**
+ * Predicts the spectrogram of a banded waveguide note from its parameters without rendering it. The
+ * banded waveguide is linear until it clips: each band is a bandpass, a delay line and an allpass
+ * filter, the bands are summed, and the sum is fed back into every band a block later. So the frequency
+ * response of the whole note is
+ *
+ *   M = sum(H_b E_b) / (1 - L),   L = z^-B sum(H_b),   H_b = gain_b BP_b(z) z^-D_b AP_b(z)
+ *
+ * where E_b is the excitation put into band b and B is the block size. This is worked out at a few
+ * frequencies within each bin, as the resonances are often narrower than a bin. The group delay of the
+ * feedback, -Im(L' / (1 - L)), is the time constant of a resonance at that frequency, so each frequency
+ * is taken to decay at that rate, starting from the height a decaying sinusoid with that response would
+ * have in the windowed spectrum. Each bin is the loudest of its frequencies. Where the loop gain passes
+ * 1 the note rings until the end and is clipped, so each frame is limited to the energy the clipped
+ * output can have. Far cheaper than rendering and close enough to rank candidates, though it ignores
+ * the shape of the attack and how modes within one bin beat.
+ */
+
+public class SpectralSurrogate
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  private static final int OVERSAMPLING = 2;              // Frequencies the response is worked out at in each bin
+  private static final int BLOCK_SIZE = 8;                // Samples before the mix is fed back, as in OfflineWaveguideRenderer
+  private static final double CLIP_LEVEL = 0.99;          // The kernel clips the mix to this
+  private static final double MINIMUM_VALUE = 0.00001;    // Same limits on the bandpass as BandedWaveguideKernel
+  private static final double MAXIMUM_RATIO = 0.499;
+  private static final double SILENCE = 1e-6;             // Magnitude below which a decaying frequency is left out
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final double samplingRate;
+  private final int windowSize;
+  private final int stepSamples;
+  private final int numBins;
+  private final double windowSum;           // Sum of the Hann window, twice a steady sinusoid's peak over its amplitude
+  private final double frameEnergyLimit;    // Sum of the squared magnitudes of a frame of a full scale signal
+  private final DelayLookupTable delayTable; // The same delays and allpass coefficients as the kernel
+
+  // Each frequency the response is worked out at, OVERSAMPLING to a bin, with cos and sin of it and twice it
+  private final double[] omega;
+  private final double[] cos1;
+  private final double[] sin1;
+  private final double[] cos2;
+  private final double[] sin2;
+  private final double[] leakage;           // How much of a sinusoid at the frequency shows in its bin
+  private final double[] blockRe;           // z^-B, the delay of the feedback, at each frequency
+  private final double[] blockIm;
+  private final double[] notchSlopeRe;      // 2 z^-2 / (1 - z^-2), the same for every band
+  private final double[] notchSlopeIm;
+  private final double[] tailScaleRe;       // 1 / (1 - z^-1), the same for every band
+  private final double[] tailScaleIm;
+  private final double stepOmega;           // Between neighbouring frequencies
+  private final double cosTheta, sinTheta;  // Of the Hann window's phase step, and of it times the window size
+  private final double cosWindowTheta, sinWindowTheta;
+
+  // Coefficients of each band of the note being played
+  private double[] bandpassA0;
+  private double[] bandpassB1;
+  private double[] bandpassB2;
+  private double[] allpass;
+  private int[] delay;
+  private double[] delayRe;                 // z^-D of each band at the frequency being worked out
+  private double[] delayIm;
+  private double[] delayStepRe;             // Turns z^-D on to the next frequency
+  private double[] delayStepIm;
+  private double[] loopLength;
+  private double[] excitationStart;
+  private double[] excitationRest;
+
+  // Prediction of the note being played, at each frequency
+  private final double[] magnitude;         // At the current frame
+  private final double[] frameDecay;        // From one frame to the next
+  private double maxFrameEnergy;            // Largest sum of squared magnitudes the clipped output can have
+  private final double[] steadyFrame;       // Once everything decaying is silent, every frame is this
+  private boolean steady;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param samplingRate double the sampling rate notes are rendered at
+   * @param windowSize int the spectrogram window size
+   * @param stepSamples int the number of samples the spectrogram window moves along
+   */
+
+  public SpectralSurrogate(double samplingRate, int windowSize, int stepSamples)
+  {
+    this.samplingRate = samplingRate;
+    this.windowSize = windowSize;
+    this.stepSamples = stepSamples;
+    numBins = windowSize / 2;
+    delayTable = DelayLookupTable.getInstance(samplingRate);
+
+    double[] window = new double[windowSize];
+    double sum = 0;
+    double sumOfSquares = 0;
+    for(int n=0; n<windowSize; n++)
+    {
+      window[n] = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (windowSize - 1)));
+      sum += window[n];
+      sumOfSquares += window[n] * window[n];
+    }
+    windowSum = sum;
+
+    // Parseval, a frame of a signal no bigger than 1 has at most windowSize sum(w^2) over all bins, half of it in these
+    frameEnergyLimit = 0.5 * windowSize * sumOfSquares;
+
+    // Frequencies spread evenly across each bin, and the window's response to a sinusoid that far off the bin
+    int numFrequencies = numBins * OVERSAMPLING;
+    omega = new double[numFrequencies];
+    cos1 = new double[numFrequencies];
+    sin1 = new double[numFrequencies];
+    cos2 = new double[numFrequencies];
+    sin2 = new double[numFrequencies];
+    leakage = new double[numFrequencies];
+    blockRe = new double[numFrequencies];
+    blockIm = new double[numFrequencies];
+    notchSlopeRe = new double[numFrequencies];
+    notchSlopeIm = new double[numFrequencies];
+    tailScaleRe = new double[numFrequencies];
+    tailScaleIm = new double[numFrequencies];
+    stepOmega = (2 * Math.PI) / (windowSize * OVERSAMPLING);
+
+    double theta = (2 * Math.PI) / (windowSize - 1);
+    cosTheta = Math.cos(theta);
+    sinTheta = Math.sin(theta);
+    cosWindowTheta = Math.cos(windowSize * theta);
+    sinWindowTheta = Math.sin(windowSize * theta);
+
+    double[] offsetLeakage = new double[OVERSAMPLING];
+    for(int j=0; j<OVERSAMPLING; j++)
+    {
+      double offset = ((j + 0.5) / OVERSAMPLING) - 0.5;
+      double re = 0, im = 0;
+      for(int n=0; n<windowSize; n++)
+      {
+        re += window[n] * Math.cos((2 * Math.PI * offset * n) / windowSize);
+        im += window[n] * Math.sin((2 * Math.PI * offset * n) / windowSize);
+      }
+      offsetLeakage[j] = Math.hypot(re, im) / windowSum;
+    }
+
+    for(int i=0; i<numFrequencies; i++)
+    {
+      double bin = (i / OVERSAMPLING) + (((i % OVERSAMPLING) + 0.5) / OVERSAMPLING) - 0.5;
+      omega[i] = (2 * Math.PI * bin) / windowSize;
+      cos1[i] = Math.cos(omega[i]);
+      sin1[i] = Math.sin(omega[i]);
+      cos2[i] = Math.cos(2 * omega[i]);
+      sin2[i] = Math.sin(2 * omega[i]);
+      leakage[i] = offsetLeakage[i % OVERSAMPLING];
+      blockRe[i] = Math.cos(omega[i] * BLOCK_SIZE);
+      blockIm[i] = -Math.sin(omega[i] * BLOCK_SIZE);
+      notchSlopeRe[i] = divideRe(2 * cos2[i], -2 * sin2[i], 1 - cos2[i], sin2[i]);
+      notchSlopeIm[i] = divideIm(2 * cos2[i], -2 * sin2[i], 1 - cos2[i], sin2[i]);
+      tailScaleRe[i] = divideRe(1, 0, 1 - cos1[i], sin1[i]);
+      tailScaleIm[i] = divideIm(1, 0, 1 - cos1[i], sin1[i]);
+    }
+
+    magnitude = new double[numFrequencies];
+    frameDecay = new double[numFrequencies];
+    steadyFrame = new double[numBins];
+    allocateBands(0);
+  }
+
+  /**
+   * Make room for the coefficients of a number of bands
+   * @param numBands int the number of bands
+   */
+
+  private void allocateBands(int numBands)
+  {
+    bandpassA0 = new double[numBands];
+    bandpassB1 = new double[numBands];
+    bandpassB2 = new double[numBands];
+    allpass = new double[numBands];
+    delay = new int[numBands];
+    delayRe = new double[numBands];
+    delayIm = new double[numBands];
+    delayStepRe = new double[numBands];
+    delayStepIm = new double[numBands];
+    loopLength = new double[numBands];
+    excitationStart = new double[numBands];
+    excitationRest = new double[numBands];
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* playNote
+  //
+  /**************************************************************************************************/
+  /**
+   * Works out the response of a note, ready for the frames to be read with nextFrame
+   * @param params WaveguideParameters[] the parameters for each single banded waveguide
+   * @param gain double the overall volume
+   */
+
+  public void playNote(WaveguideParameters[] params, double gain)
+  {
+    int numBands = params.length;
+    if(bandpassA0.length != numBands)
+    {
+      allocateBands(numBands);
+    }
+
+    for(int b=0; b<numBands; b++)
+    {
+      // Bandpass coefficients as in BandedWaveguideKernel.recalculateBandpass
+      double f = Math.max(MINIMUM_VALUE, params[b].getCenterFrequency());
+      double q = Math.max(MINIMUM_VALUE, params[b].getQ());
+      double w = 2.0 * Math.PI * Math.min(MAXIMUM_RATIO, f / samplingRate);
+      double alpha = Math.sin(w) / (2.0 * q);
+      double scalar = 1.0 / (1.0 + alpha);
+      bandpassA0[b] = alpha * scalar;
+      bandpassB1[b] = -2.0 * Math.cos(w) * scalar;
+      bandpassB2[b] = (1.0 - alpha) * scalar;
+
+      double loop = delayTable.getDelay(params[b].getCenterFrequency());
+      delay[b] = (int) loop;
+      allpass[b] = delayTable.getCoefficient(loop - delay[b]);
+      loopLength[b] = BLOCK_SIZE + loop;
+
+      // z^-D at the first frequency worked out, then turned on a step at a time
+      delayRe[b] = Math.cos(omega[OVERSAMPLING] * delay[b]);
+      delayIm[b] = -Math.sin(omega[OVERSAMPLING] * delay[b]);
+      delayStepRe[b] = Math.cos(stepOmega * delay[b]);
+      delayStepIm[b] = -Math.sin(stepOmega * delay[b]);
+
+      // The excitation is two samples of + amplitude then - amplitude for the rest of the delay line
+      excitationStart[b] = InitialExcitation.getSample(params[b].getAmplitude(), 0);
+      excitationRest[b] = InitialExcitation.getSample(params[b].getAmplitude(), 2);
+    }
+
+    double peakLimit = CLIP_LEVEL * gain * windowSum;
+    maxFrameEnergy = CLIP_LEVEL * CLIP_LEVEL * gain * gain * frameEnergyLimit;
+
+    // Bin 0 is not used by the spectrogram
+    for(int i=OVERSAMPLING; i<magnitude.length; i++)
+    {
+      respond(i, params, gain, peakLimit);
+    }
+    steady = false;
+  }
+
+  /**
+   * Works out the starting magnitude and decay at one frequency
+   * @param i int the index of the frequency
+   * @param params WaveguideParameters[] the parameters for each single banded waveguide
+   * @param gain double the overall volume
+   * @param peakLimit double the magnitude of a full scale sinusoid, used where the note does not decay
+   */
+
+  private void respond(int i, WaveguideParameters[] params, double gain, double peakLimit)
+  {
+    double zRe = cos1[i], zIm = -sin1[i];              // z^-1
+    double z2Re = cos2[i], z2Im = -sin2[i];            // z^-2
+    double notchRe = 1 - z2Re, notchIm = -z2Im;        // 1 - z^-2
+
+    double sumRe = 0, sumIm = 0;                       // Sum of the band responses
+    double slopeRe = 0, slopeIm = 0;                   // Its derivative with frequency
+    double drivenRe = 0, drivenIm = 0;                 // Sum of the band responses to their excitations
+    double loudestBand = -1;
+    double loudestLoop = loopLength[0];
+
+    for(int b=0; b<params.length; b++)
+    {
+      // Bandpass a0 (1 - z^-2) / (1 + b1 z^-1 + b2 z^-2), dividing by multiplying by 1 / den
+      double a0 = bandpassA0[b], b1 = bandpassB1[b], b2 = bandpassB2[b];
+      double denRe = 1 + (b1 * zRe) + (b2 * z2Re);
+      double denIm = (b1 * zIm) + (b2 * z2Im);
+      double scale = 1 / ((denRe * denRe) + (denIm * denIm));
+      double invRe = denRe * scale, invIm = -denIm * scale;
+      double hRe = a0 * ((notchRe * invRe) - (notchIm * invIm));
+      double hIm = a0 * ((notchRe * invIm) + (notchIm * invRe));
+
+      // d/dw of its log, j (2 z^-2 / (1 - z^-2) + (b1 z^-1 + 2 b2 z^-2) / den)
+      double nRe = (b1 * zRe) + (2 * b2 * z2Re);
+      double nIm = (b1 * zIm) + (2 * b2 * z2Im);
+      double tRe = notchSlopeRe[i] + ((nRe * invRe) - (nIm * invIm));
+      double tIm = notchSlopeIm[i] + ((nRe * invIm) + (nIm * invRe));
+      double logSlopeRe = -tIm;
+      double logSlopeIm = tRe;
+
+      // Allpass (c + z^-1) / (1 + c z^-1), d/dw of its log is j (c z^-1 / (1 + c z^-1) - z^-1 / (c + z^-1))
+      double c = allpass[b];
+      double apNumRe = c + zRe, apNumIm = zIm;
+      double apDenRe = 1 + (c * zRe), apDenIm = c * zIm;
+      scale = 1 / ((apDenRe * apDenRe) + (apDenIm * apDenIm));
+      invRe = apDenRe * scale;
+      invIm = -apDenIm * scale;
+      double aRe = (apNumRe * invRe) - (apNumIm * invIm);
+      double aIm = (apNumRe * invIm) + (apNumIm * invRe);
+      scale = 1 / ((apNumRe * apNumRe) + (apNumIm * apNumIm));
+      tRe = (c * ((zRe * invRe) - (zIm * invIm))) - (((zRe * apNumRe) + (zIm * apNumIm)) * scale);
+      tIm = (c * ((zRe * invIm) + (zIm * invRe))) - (((zIm * apNumRe) - (zRe * apNumIm)) * scale);
+      logSlopeRe -= tIm;
+      logSlopeIm += tRe;
+
+      // Delay line z^-D, d/dw of its log is -j D, and the band gain
+      double dRe = delayRe[b];
+      double dIm = delayIm[b];
+      delayRe[b] = (dRe * delayStepRe[b]) - (dIm * delayStepIm[b]);
+      delayIm[b] = (dRe * delayStepIm[b]) + (dIm * delayStepRe[b]);
+      logSlopeIm -= delay[b];
+
+      double g = params[b].getGain();
+      double r = (hRe * aRe) - (hIm * aIm);
+      hIm = (hRe * aIm) + (hIm * aRe);
+      hRe = r;
+      r = g * ((hRe * dRe) - (hIm * dIm));
+      hIm = g * ((hRe * dIm) + (hIm * dRe));
+      hRe = r;
+
+      // Excitation e0 (1 + z^-1) + e2 (z^-2 - z^-D) / (1 - z^-1)
+      double tailRe = z2Re - dRe, tailIm = z2Im - dIm;
+      double eRe = (excitationStart[b] * (1 + zRe)) + (excitationRest[b] * ((tailRe * tailScaleRe[i]) - (tailIm * tailScaleIm[i])));
+      double eIm = (excitationStart[b] * zIm) + (excitationRest[b] * ((tailRe * tailScaleIm[i]) + (tailIm * tailScaleRe[i])));
+
+      sumRe += hRe;
+      sumIm += hIm;
+      slopeRe += (hRe * logSlopeRe) - (hIm * logSlopeIm);
+      slopeIm += (hRe * logSlopeIm) + (hIm * logSlopeRe);
+      drivenRe += (hRe * eRe) - (hIm * eIm);
+      drivenIm += (hRe * eIm) + (hIm * eRe);
+
+      double bandMagnitude = (hRe * hRe) + (hIm * hIm);
+      if(bandMagnitude > loudestBand)
+      {
+        loudestBand = bandMagnitude;
+        loudestLoop = loopLength[b];
+      }
+    }
+
+    // Loop gain L = z^-B sum(H_b), and its derivative z^-B (sum(H_b)' - j B sum(H_b))
+    double loopRe = (sumRe * blockRe[i]) - (sumIm * blockIm[i]);
+    double loopIm = (sumRe * blockIm[i]) + (sumIm * blockRe[i]);
+    slopeRe += BLOCK_SIZE * sumIm;
+    slopeIm -= BLOCK_SIZE * sumRe;
+    double loopSlopeRe = (slopeRe * blockRe[i]) - (slopeIm * blockIm[i]);
+    double loopSlopeIm = (slopeRe * blockIm[i]) + (slopeIm * blockRe[i]);
+
+    if(loopRe >= 1)
+    {
+      // The loop gain passes outside 1, so this rings until the end and is clipped
+      magnitude[i] = peakLimit;
+      frameDecay[i] = 1;
+      return;
+    }
+
+    // Time constant of a resonance here, nothing dies away in less than a trip round the loop as the
+    // excitation is that long
+    double gapRe = 1 - loopRe;
+    double response = Math.sqrt(((drivenRe * drivenRe) + (drivenIm * drivenIm)) / ((gapRe * gapRe) + (loopIm * loopIm)));
+    double timeConstant = -divideIm(loopSlopeRe, loopSlopeIm, 1 - loopRe, -loopIm);
+    double decay = 1 - (1 / Math.max(timeConstant, loudestLoop));
+
+    // A sinusoid decaying by d each sample has a response peak of its amplitude / (2 (1 - d)), and a frame
+    // of it starting at amplitude A has a peak of A / 2 times the decaying sum of the window
+    double logDecay = Math.log(decay);
+    magnitude[i] = gain * leakage[i] * response * (1 - decay) * windowedDecay(decay, Math.exp(windowSize * logDecay));
+    frameDecay[i] = Math.exp(stepSamples * logDecay);
+  }
+
+  /**
+   * The sum of the Hann window times a decay, 0.5 sum(d^n) - 0.5 Re sum((d e^(i theta))^n), in closed form
+   * @param decay double the decay per sample d, less than 1
+   * @param windowDecay double d to the power of the window size
+   * @return double the sum
+   */
+
+  private double windowedDecay(double decay, double windowDecay)
+  {
+    double plain = (1 - windowDecay) / (1 - decay);
+
+    // Geometric sum of x = d e^(i theta), theta = 2 pi / (n - 1), so x^n = d^n e^(i n theta)
+    double rotated = divideRe(1 - (windowDecay * cosWindowTheta), -windowDecay * sinWindowTheta,
+                              1 - (decay * cosTheta), -decay * sinTheta);
+
+    return 0.5 * (plain - rotated);
+  }
+
+  /**
+   * @return double the real part of a / b
+   */
+
+  private static double divideRe(double aRe, double aIm, double bRe, double bIm)
+  {
+    return ((aRe * bRe) + (aIm * bIm)) / ((bRe * bRe) + (bIm * bIm));
+  }
+
+  /**
+   * @return double the imaginary part of a / b
+   */
+
+  private static double divideIm(double aRe, double aIm, double bRe, double bIm)
+  {
+    return ((aIm * bRe) - (aRe * bIm)) / ((bRe * bRe) + (bIm * bIm));
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* nextFrame
+  //
+  /**************************************************************************************************/
+  /**
+   * Writes the predicted magnitudes of the next spectrogram frame, the first call gives the frame starting
+   * at the start of the note
+   * @param output double[] the array to write getNumBins() magnitudes to
+   * @param outputOffset int the index of the first magnitude
+   */
+
+  public void nextFrame(double[] output, int outputOffset)
+  {
+    if(steady)
+    {
+      System.arraycopy(steadyFrame, 0, output, outputOffset, numBins);
+      return;
+    }
+
+    boolean decaying = false;
+    output[outputOffset] = 0;
+    for(int k=1; k<numBins; k++)
+    {
+      // Loudest frequency in the bin
+      double loudest = 0;
+      for(int i=k*OVERSAMPLING; i<(k+1)*OVERSAMPLING; i++)
+      {
+        loudest = Math.max(loudest, magnitude[i]);
+        if(frameDecay[i] < 1 && magnitude[i] > SILENCE)
+        {
+          decaying = true;
+        }
+        magnitude[i] *= frameDecay[i];
+      }
+      output[outputOffset + k] = loudest;
+    }
+    limitEnergy(output, outputOffset);
+
+    // Once only the frequencies that ring forever are left, every frame is the same
+    if(!decaying)
+    {
+      steadyFrame[0] = 0;
+      for(int k=1; k<numBins; k++)
+      {
+        double loudest = 0;
+        for(int i=k*OVERSAMPLING; i<(k+1)*OVERSAMPLING; i++)
+        {
+          if(frameDecay[i] == 1)
+          {
+            loudest = Math.max(loudest, magnitude[i]);
+          }
+        }
+        steadyFrame[k] = loudest;
+      }
+      limitEnergy(steadyFrame, 0);
+      steady = true;
+    }
+  }
+
+  /**
+   * Scales a frame down to the most energy the clipped output can have, if it has more
+   * @param frame double[] the array holding the frame
+   * @param offset int the index of the frame's first magnitude
+   */
+
+  private void limitEnergy(double[] frame, int offset)
+  {
+    double energy = 0;
+    for(int k=1; k<numBins; k++)
+    {
+      energy += frame[offset + k] * frame[offset + k];
+    }
+
+    if(energy > maxFrameEnergy)
+    {
+      double scale = Math.sqrt(maxFrameEnergy / energy);
+      for(int k=1; k<numBins; k++)
+      {
+        frame[offset + k] *= scale;
+      }
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return int the number of magnitudes in each frame
+   */
+  public int getNumBins()
+  {
+    return numBins;
+  }
+}
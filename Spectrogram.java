@@ -1,6 +1,3 @@
-import org.jtransforms.fft.DoubleFFT_1D;
-import java.util.Arrays;
-
 /**
  * Computes Spectrogram of the given audio samples, returning array of frequency contents over time
  */
@@ -13,9 +10,7 @@ public class Spectrogram
   //
   /**************************************************************************************************/ 
   
-  private DoubleFFT_1D fft;        // The JTransforms library Fast Fourier Transform implementation
-  private int windowSize;          // Size of FFT data
-  private int stepSamples;         // Number of samples to move the window along the whole data
+  private StreamingSTFT stft;      // Windows and transforms each frame, reusing its own scratch
   
   /**************************************************************************************************/
   //
@@ -30,9 +25,7 @@ public class Spectrogram
   
   public Spectrogram(int windowSize, int stepSamples)
   {
-    this.windowSize = windowSize;
-    this.stepSamples = stepSamples;
-    fft = new DoubleFFT_1D(windowSize);
+    stft = new StreamingSTFT(windowSize, stepSamples);
   }
   
   /**************************************************************************************************/
@@ -48,83 +41,92 @@ public class Spectrogram
   public double[][] spectrogram(double[] samples)
   {
     // Check the inputs
-    if(samples.length < 1 || windowSize < 1 || stepSamples < 1)
+    if(samples.length < 1)
     {
       throw new IllegalArgumentException("Invalid arguments, window size must be less than sample length");
     }
     
     // Create array to store spectrogram
-    double[][] results = new double[samples.length / stepSamples][windowSize / 2];
+    double[][] results = new double[samples.length / getStepSamples()][getNumBins()];
     
     // For each window along the samples, put through windowing function, compute fft, convert to power spectrum and add to array
-      
-    for(int i=0; i<samples.length; i += stepSamples)
+    int numFrames = getNumFrames(samples.length);
+    for(int frame=0; frame<numFrames; frame++)
     {
-      // If current window falls off the end of the samples, end the loop
-      if((i + windowSize - 1) >= samples.length)
-      {
-        break;
-      }
-      
-      // Get the sample in this current window
-      double[] window = Arrays.copyOfRange(samples, i, i+windowSize);
-      
-      // Put the samples through Hanning function
-      window = hanningFunction(window);
-       
-      // Convert the window data into Complex form, real + imaginary with the imaginary parts set to 0
-      double[] complexData = new double[window.length * 2];
-      
-      for(int j=0; j<window.length; j++)
-      {
-        complexData[j * 2] = window[j];  // Real
-        complexData[(j * 2) + 1] = 0;    // Imaginary
-      }
-      
-      // Now compute the fft
-      fft.complexForward(complexData);
-      
-      // Compute the power spectrum by combining the real / complex results, updating the results array
-      // Only need the first half as the second half is just a reflection
-      
-      // Set the 0Hz bin to 0 as is useless data
-      results[i / windowSize][0] = 0;
-      
-      for(int j=1; j<window.length / 2; j++)
-      {
-        results[i / windowSize][j] = Math.sqrt(Math.pow(complexData[j * 2], 2) + Math.pow(complexData[(j * 2) + 1], 2));
-      }
+      spectrum(samples, frame * getStepSamples(), results[frame]);
     }
     
     return results;
   }
-
+  
   
   /**************************************************************************************************/
   //
-  /* hanningWindow 
+  /* spectrum 
   //
   /**************************************************************************************************/
   /**
-   * Multiples the given samples by the hann windowing function
-   * @param samples double[] the audio data to apply the windowing function
+   * Computes the spectrum of one window of the audio data, so a spectrogram can be built up a frame at a time
+   * @param samples double[] the audio data samples to analyse
+   * @param start int the first sample of the window
+   * @param result double[] filled with the magnitude of each of the windowSize / 2 frequency bins
    */
    
-  private double[] hanningFunction(double[] samples)
+  public void spectrum(double[] samples, int start, double[] result)
   {
-    // Get size of data
-    int numSamples = samples.length;
-    
-    // For each sample, multiply by the hanning function
-    for(int n=0; n<numSamples; n++)
-    {
-      samples[n] = 0.5 * (1 - Math.cos((2 * Math.PI * samples[n]) / numSamples-1));
-    }
-    
-    // Return updated array
-    return samples;
+    stft.spectrum(samples, start, result, 0);
   }
   
+  /**
+   * Computes the spectrogram into a flat, frame-major array, without allocating
+   * @param samples double[] the audio data samples to analyse
+   * @param result double[] filled with getNumFrames(samples.length) * getNumBins() magnitudes
+   * @return int the number of frames
+   */
+   
+  public int spectrogram(double[] samples, double[] result)
+  {
+    return stft.process(samples, result);
+  }
+  
+  /**
+   * Get the number of whole windows that fit in the audio data, the rest of the spectrogram rows are left empty
+   * @param numSamples int the number of audio samples
+   * @return int the number of frames
+   */
+   
+  public int getNumFrames(int numSamples)
+  {
+    return stft.getNumFrames(numSamples);
+  }
+  
+  /**
+   * @return int the number of frequency bins in each frame
+   */
+   
+  public int getNumBins()
+  {
+    return stft.getNumBins();
+  }
+  
+  /**
+   * @return int the number of samples the window moves along for each frame
+   */
+   
+  public int getStepSamples()
+  {
+    return stft.getStepSamples();
+  }
+  
+  /**
+   * @return int the number of samples in each window
+   */
+   
+  public int getWindowSize()
+  {
+    return stft.getWindowSize();
+  }
+
   
   /**************************************************************************************************/
   //
@@ -145,13 +147,8 @@ public class Spectrogram
     
     for(int i=0; i<spectrogram1.length; i++)
     {
-      double totalDistanceN = 0;
-      
-      for(int j=0; j<spectrogram1[i].length; j++)
-      {
-        // Total distance of one spectrum
-        totalDistanceN += (Math.abs(spectrogram1[i][j] - spectrogram2[i][j]));
-      }
+      // Total distance of one spectrum
+      double totalDistanceN = distance(spectrogram1[i], spectrogram2[i]);
       
       // Add one spectrum average distance to the totalDistance
       totalDistance += totalDistanceN;// / spectrogram1[i].length;
@@ -161,5 +158,23 @@ public class Spectrogram
     return totalDistance;// / spectrogram1.length;
   }
   
+  /**
+   * Computes the total difference between two spectra, one row of the spectrogram distance
+   * @param spectrum1 double[] the first spectrum
+   * @param spectrum2 double[] the second spectrum
+   */
+   
+  public static double distance(double[] spectrum1, double[] spectrum2)
+  {
+    double totalDistance = 0;
+    
+    for(int j=0; j<spectrum1.length; j++)
+    {
+      totalDistance += (Math.abs(spectrum1[j] - spectrum2[j]));
+    }
+    
+    return totalDistance;
+  }
+  
 }
 
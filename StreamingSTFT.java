@@ -0,0 +1,302 @@
+import org.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Short time Fourier transform that can be fed audio as it arrives, and writes the magnitude of each
+ * frame into a flat, frame-major array supplied by the caller (frame f, bin b is at f * numBins + b).
+ * Uses a precomputed Hann window and a real FFT on reused scratch, so nothing is allocated per frame.
+ * Holds state between calls, so each thread needs its own.
+ */
+
+public class StreamingSTFT
+{
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private DoubleFFT_1D fft;          // The JTransforms library Fast Fourier Transform implementation
+  private int windowSize;            // Size of FFT data
+  private int stepSamples;           // Number of samples to move the window along between frames
+  private int numBins;               // Magnitudes in each frame
+  private double[] hannWindow;       // Hann window value for each position in the window
+  private double[] scratch;          // Windowed samples, transformed in place
+  private double[] magnitudes;       // One frame, used when writing to a float array
+
+  // Streaming
+  private double[] history;          // The last windowSize samples pushed, circular
+  private int writeIndex;            // Where the next pushed sample goes in the history
+  private int samplesUntilFrame;     // Samples to push before the next frame is complete
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param windowSize int the size of each window, a power of two
+   * @param stepSamples int the number of samples to move the window along between frames
+   */
+
+  public StreamingSTFT(int windowSize, int stepSamples)
+  {
+    if(windowSize < 2 || stepSamples < 1)
+    {
+      throw new IllegalArgumentException("Window size must be at least 2 and step at least 1!");
+    }
+
+    this.windowSize = windowSize;
+    this.stepSamples = stepSamples;
+    numBins = windowSize / 2;
+
+    fft = new DoubleFFT_1D(windowSize);
+    scratch = new double[windowSize];
+    magnitudes = new double[numBins];
+    history = new double[windowSize];
+
+    // Hann window
+    hannWindow = new double[windowSize];
+    for(int n=0; n<windowSize; n++)
+    {
+      hannWindow[n] = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (windowSize - 1)));
+    }
+
+    reset();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Whole signals
+  //
+  /**************************************************************************************************/
+  /**
+   * Computes every frame of the given audio data
+   * @param samples double[] the audio data samples to analyse
+   * @param output double[] filled with getNumFrames(samples.length) * getNumBins() magnitudes, frame-major
+   * @return int the number of frames
+   */
+
+  public int process(double[] samples, double[] output)
+  {
+    int numFrames = getNumFrames(samples.length);
+    for(int frame=0; frame<numFrames; frame++)
+    {
+      spectrum(samples, frame * stepSamples, output, frame * numBins);
+    }
+    return numFrames;
+  }
+
+  /**
+   * Computes the spectrum of one window of the audio data
+   * @param samples double[] the audio data samples to analyse
+   * @param start int the first sample of the window
+   * @param output double[] the array to write the numBins magnitudes to
+   * @param outputOffset int the index of the first magnitude
+   */
+
+  public void spectrum(double[] samples, int start, double[] output, int outputOffset)
+  {
+    for(int n=0; n<windowSize; n++)
+    {
+      scratch[n] = samples[start + n] * hannWindow[n];
+    }
+    transform(output, outputOffset);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Streaming
+  //
+  /**************************************************************************************************/
+  /**
+   * Feeds more samples in, writing any frames they complete. The first frame is complete once windowSize
+   * samples have been pushed, then there is one more every stepSamples
+   * @param samples double[] the new samples
+   * @param offset int the index of the first new sample
+   * @param length int the number of new samples
+   * @param output double[] the array to write completed frames to, frame-major
+   * @param outputOffset int the index to write the first completed frame's magnitudes
+   * @return int the number of frames completed, each taking numBins values of the output
+   */
+
+  public int push(double[] samples, int offset, int length, double[] output, int outputOffset)
+  {
+    int frames = 0;
+    int end = offset + length;
+
+    for(int i=offset; i<end; i++)
+    {
+      if(addSample(samples[i]))
+      {
+        windowHistory();
+        transform(output, outputOffset + (frames * numBins));
+        frames++;
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * Feeds more samples in, writing any frames they complete as floats
+   * @param samples double[] the new samples
+   * @param offset int the index of the first new sample
+   * @param length int the number of new samples
+   * @param output float[] the array to write completed frames to, frame-major
+   * @param outputOffset int the index to write the first completed frame's magnitudes
+   * @return int the number of frames completed, each taking numBins values of the output
+   */
+
+  public int push(double[] samples, int offset, int length, float[] output, int outputOffset)
+  {
+    int frames = 0;
+    int end = offset + length;
+
+    for(int i=offset; i<end; i++)
+    {
+      if(addSample(samples[i]))
+      {
+        windowHistory();
+        transform(magnitudes, 0);
+
+        int frameStart = outputOffset + (frames * numBins);
+        for(int j=0; j<numBins; j++)
+        {
+          output[frameStart + j] = (float) magnitudes[j];
+        }
+        frames++;
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * Forget every sample pushed, the next frame will need a full window again
+   */
+
+  public void reset()
+  {
+    for(int n=0; n<windowSize; n++)
+    {
+      history[n] = 0;
+    }
+    writeIndex = 0;
+    samplesUntilFrame = windowSize;
+  }
+
+  /**
+   * Adds one sample to the history
+   * @param sample double the sample
+   * @return boolean whether this sample completes a frame
+   */
+
+  private boolean addSample(double sample)
+  {
+    history[writeIndex] = sample;
+    writeIndex++;
+    if(writeIndex == windowSize)
+    {
+      writeIndex = 0;
+    }
+
+    samplesUntilFrame--;
+    if(samplesUntilFrame == 0)
+    {
+      samplesUntilFrame = stepSamples;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Copies the history, oldest sample first, through the window into the scratch
+   */
+
+  private void windowHistory()
+  {
+    // The oldest sample is the next one to be overwritten
+    int firstPart = windowSize - writeIndex;
+    for(int n=0; n<firstPart; n++)
+    {
+      scratch[n] = history[writeIndex + n] * hannWindow[n];
+    }
+    for(int n=firstPart; n<windowSize; n++)
+    {
+      scratch[n] = history[n - firstPart] * hannWindow[n];
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* transform
+  //
+  /**************************************************************************************************/
+  /**
+   * Transforms the windowed scratch and writes the magnitudes, with the 0Hz bin set to 0 as is useless data
+   * @param output double[] the array to write to
+   * @param outputOffset int the index of the first magnitude
+   */
+
+  private void transform(double[] output, int outputOffset)
+  {
+    // Real FFT in place, bin k is at 2k (real) and 2k + 1 (imaginary) apart from bin 0 and numBins
+    fft.realForward(scratch);
+
+    output[outputOffset] = 0;
+    for(int k=1; k<numBins; k++)
+    {
+      double re = scratch[2 * k];
+      double im = scratch[(2 * k) + 1];
+      output[outputOffset + k] = Math.sqrt((re * re) + (im * im));
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * Get the number of whole windows that fit in the audio data
+   * @param numSamples int the number of audio samples
+   * @return int the number of frames
+   */
+  public int getNumFrames(int numSamples)
+  {
+    if(numSamples < windowSize)
+    {
+      return 0;
+    }
+    return ((numSamples - windowSize) / stepSamples) + 1;
+  }
+
+  /**
+   * @return int the number of magnitudes in each frame
+   */
+  public int getNumBins()
+  {
+    return numBins;
+  }
+
+  /**
+   * @return int the number of samples in each window
+   */
+  public int getWindowSize()
+  {
+    return windowSize;
+  }
+
+  /**
+   * @return int the number of samples the window moves along for each frame
+   */
+  public int getStepSamples()
+  {
+    return stepSamples;
+  }
+}
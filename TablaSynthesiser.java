@@ -34,6 +34,36 @@ public class TablaSynthesiser implements IAudioPlayer
   private final double HIGHEST_VOLUME_LOW = 35.9921875;
   private final double LOWEST_VOLUME_LOW = 0.2;
   
+  // Waveguide parameters for each drum, found by the genetic algorithm, shared by every hit
+  private final WaveguideParameters[] LOW_DRUM_PARAMETERS = {
+    new WaveguideParameters(371.0859375, 0.71295166015625, 38.03125, 0.7628173828125),
+    new WaveguideParameters(724.171875, 0.059051513671875, 799.7734375, 0.5528564453125),
+    new WaveguideParameters(465.109375, 0.674530029296875, 501.484375, 0.55609130859375),
+    new WaveguideParameters(2974.71875, 0.168426513671875, 140.1328125, 0.593353271484375),
+    new WaveguideParameters(191.0390625, 0.786865234375, 262.25, 0.858978271484375)
+  };
+  private final WaveguideParameters[] HIGH_DRUM_PARAMETERS = {
+    new WaveguideParameters(2544.6171875, 0.56427001953125, 125.1171875, 0.967529296875),
+    new WaveguideParameters(1403.3359375, 0.584136962890625, 357.34375, 0.929473876953125),
+    new WaveguideParameters(704.171875, 0.84820556640625, 94.0859375, 0.99322509765625),
+    new WaveguideParameters(1690.40625, 0.89715576171875, 272.265625, 0.975341796875),
+    new WaveguideParameters(2040.4921875, 0.45819091796875, 413.3984375, 0.77734375)
+  };
+  
+  // Voices
+  private final int VOICES_PER_DRUM = 4;
+  
+  // Events waiting to be played on the audio thread
+  private final int EVENT_QUEUE_SIZE = 256;
+  
+  // Seconds from queueing an event to playing it. The audio thread renders blocks in bursts ahead of the
+  // output, so this must cover a burst for every event to land the same time after it was queued
+  private final double SCHEDULING_LATENCY = 0.01;
+  
+  // Regions of the drum, from the center to the rim
+  private final int CENTER_REGION_LIMIT = 55;
+  private final int MID_REGION_LIMIT = 110;
+  
   
   /**************************************************************************************************/
   //
@@ -44,9 +74,13 @@ public class TablaSynthesiser implements IAudioPlayer
   // JSyn Unit Generators
   private Synthesizer synth;     // JSyn synthesizer
   private LineOut lineOut;       // Output
+  
+  private NoteEventQueue eventQueue;          // Hits and bends from the sketch thread
+  private NoteEventDispatcher eventDispatcher; // Plays the queued events on the audio thread
+  private long latencyFrames;                  // SCHEDULING_LATENCY in frames
 
-  private BandedWaveguideNote hiCenterSynth;
-  private BandedWaveguideNote lowCenterSynth;
+  private BandedWaveguideVoicePool hiCenterSynth;
+  private BandedWaveguideVoicePool lowCenterSynth;
   
   private double lowFrequencyRange;
   private double lowVolumeRange;
@@ -70,10 +104,16 @@ public class TablaSynthesiser implements IAudioPlayer
     //synth.getAudioDeviceManager().setSuggestedOutputLatency( 0.04 );
     synth.start();
     synth.add(lineOut = new LineOut());
+    
+    // Set up the queue of events to the audio thread, the dispatcher runs every block
+    eventQueue = new NoteEventQueue(EVENT_QUEUE_SIZE);
+    latencyFrames = Math.round(SCHEDULING_LATENCY * synth.getFrameRate());
+    synth.add(eventDispatcher = new NoteEventDispatcher(eventQueue, this));
+    eventDispatcher.start();
 
-    // Initialise drum synthesisers
-    hiCenterSynth = new BandedWaveguideNote(synth, lineOut, 5);
-    lowCenterSynth = new BandedWaveguideNote(synth, lineOut, 5);
+    // Initialise drum synthesisers, with a pool of voices for each drum so hits can overlap
+    hiCenterSynth = new BandedWaveguideVoicePool(synth, lineOut, 5, VOICES_PER_DRUM, WaveguideEngine.BANK, VoiceStealingPolicy.OLDEST);
+    lowCenterSynth = new BandedWaveguideVoicePool(synth, lineOut, 5, VOICES_PER_DRUM, WaveguideEngine.BANK, VoiceStealingPolicy.OLDEST);
     
     // Work out frequency ranges
     lowFrequencyRange = HIGHEST_FREQUENCY_LOW - LOWEST_FREQUENCY_LOW;
@@ -91,24 +131,68 @@ public class TablaSynthesiser implements IAudioPlayer
   /**************************************************************************************************/
 
   /**
-   * Implements playSample method from IAudioPlayer interface, using the MIDI message to read which 
-   * drum was hit and then call the relevant private method
+   * Implements playSample method from IAudioPlayer interface, queueing the hit to be played on the 
+   * audio thread SCHEDULING_LATENCY from now. Does not block or allocate
    * @param midiMessage MidiMessage the message containing velocity, note and right/left drum 
    */
   public void playSound(MidiMessage midi)
   {
-    // If left drum, trigger the left drum sampler
-    if (midi.getDrum() == TablaDrum.LEFT)
-    {  
-      // Trigger the sound
-      playLowDrum(midi);
-    }
+    eventQueue.offer(
+      NoteEventQueue.pack(NoteEventQueue.NOTE_ON, midi.getDrum(), midi.getNote(), midi.getVelocity()),
+      getTargetFrame());
+  }  
+  
+  /**
+   * Works out the frame an event queued now should be played at
+   * @return long the current synth frame plus the scheduling latency
+   */
+  private long getTargetFrame()
+  {
+    return synth.getFrameCount() + latencyFrames;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* handleNoteEvent
+  //
+  /**************************************************************************************************/
 
-    // Else if right drum, trigger the right drum sampler
-    else if (midi.getDrum() == TablaDrum.RIGHT)
+  /**
+   * Plays an event from the queue, called on the audio thread by the NoteEventDispatcher, reading 
+   * which drum was hit and then calling the relevant private method
+   * @param event long the packed event
+   */
+  public void handleNoteEvent(long event)
+  {
+    int drum = NoteEventQueue.getDrum(event);
+    byte note = NoteEventQueue.getNote(event);
+    
+    try
     {
-      // Trigger the sound
-      playHighDrum(midi);
+      if (NoteEventQueue.getType(event) == NoteEventQueue.PITCH_BEND)
+      {
+        // Only want to pitch bend on the bigger drum
+        if (drum == TablaDrum.LEFT.ordinal())
+        {
+          bendLowDrum(note);
+        }
+      }
+      // If left drum, trigger the left drum sampler
+      else if (drum == TablaDrum.LEFT.ordinal())
+      {  
+        playLowDrum(note, NoteEventQueue.getVelocity(event));
+      }
+      // Else if right drum, trigger the right drum sampler
+      else if (drum == TablaDrum.RIGHT.ordinal())
+      {
+        playHighDrum(note, NoteEventQueue.getVelocity(event));
+      }
+    }
+    // Don't let a failed note stop the audio thread
+    catch(Exception ex)
+    {
+      ex.printStackTrace();
     }
   }  
   
@@ -120,17 +204,25 @@ public class TablaSynthesiser implements IAudioPlayer
   /**************************************************************************************************/
 
   /**
-   * Starts a pitch bend if the last one has finished
+   * Queues a pitch bend to be started on the audio thread SCHEDULING_LATENCY from now, if the last one 
+   * has finished by then
    * @param midiMessage MidiMessage the message containing velocity, note and right/left drum 
    */
   public void pitchBend(MidiMessage midi)
   {
-    // Only want to pitch bend on the bigger drum, and if the previous pitch bend has finished
-    if (midi.getDrum() == TablaDrum.LEFT && lowCenterSynth.isPitchBendFinished())
+    eventQueue.offer(
+      NoteEventQueue.pack(NoteEventQueue.PITCH_BEND, midi.getDrum(), midi.getNote(), midi.getVelocity()),
+      getTargetFrame());
+  }  
+  
+  /**
+   * Starts a pitch bend on the bigger drum if the previous pitch bend has finished
+   * @param note byte the position on the drum
+   */
+  private void bendLowDrum(byte note)
+  {
+    if (lowCenterSynth.isPitchBendFinished())
     {  
-      // Get the position on the drum
-      byte note = midi.getNote();
-      
       // Trigger the sound
       lowCenterSynth.pitchBend(LOWEST_FREQUENCY_LOW + (((127 - note)/127.0) * lowFrequencyRange), 0.1);
     }
@@ -139,17 +231,16 @@ public class TablaSynthesiser implements IAudioPlayer
 
   /**
    * Plays the left bigger drum samples given the note 
-   * @param midi MidiMessage the midi message containing velocity 0-127 and 0-127 from the center of the drum to the rim 
+   * @param note byte 0-127 from the center of the drum to the rim 
+   * @param velocity byte the velocity 0-127
    */
 
-  private void playLowDrum(MidiMessage midi)
+  private void playLowDrum(byte note, byte velocity)
   {
-    byte note = midi.getNote();
-
     try
     {
       // Set the amplitude
-      double amplitude = (double) midi.getVelocity() / 127.0;
+      double amplitude = (double) velocity / 127.0;
       double gain = LOWEST_VOLUME_LOW + (amplitude * lowVolumeRange);
 
       //double frequency = LOWEST_FREQUENCY_LOW + (lowFrequencyRange * ((double) note/127));
@@ -167,15 +258,10 @@ public class TablaSynthesiser implements IAudioPlayer
 //        );
 
       lowCenterSynth.playNote(
-        new WaveguideParameters[] {
-          new WaveguideParameters(371.0859375, 0.71295166015625, 38.03125, 0.7628173828125),
-          new WaveguideParameters(724.171875, 0.059051513671875, 799.7734375, 0.5528564453125),
-          new WaveguideParameters(465.109375, 0.674530029296875, 501.484375, 0.55609130859375),
-          new WaveguideParameters(2974.71875, 0.168426513671875, 140.1328125, 0.593353271484375),
-          new WaveguideParameters(191.0390625, 0.786865234375, 262.25, 0.858978271484375)
-        },
+        LOW_DRUM_PARAMETERS,
         191.0390625,
-        gain
+        gain,
+        getRegion(note)
       );
     }
     catch(Exception ex)
@@ -187,19 +273,16 @@ public class TablaSynthesiser implements IAudioPlayer
 
   /**
    * Plays the right smaller drum samples given the note 
-   * @param midi MidiMessage the midi message containing velocity 0-127 and 0-127 from the center of the drum to the rim
+   * @param note byte 0-127 from the center of the drum to the rim 
+   * @param velocity byte the velocity 0-127
    */
 
-  private void playHighDrum(MidiMessage midi)
+  private void playHighDrum(byte note, byte velocity)
   {
-    // Split up drum into three sections and call the corresponding sample player
-
-    byte note = midi.getNote();
-
     try
     {
       // Set the amplitude
-      double amplitude = (double) midi.getVelocity() / 127.0;
+      double amplitude = (double) velocity / 127.0;
       double gain = LOWEST_VOLUME_HI + (amplitude * highVolumeRange);
 
         //double frequency = LOWEST_FREQUENCY_HI + (hiFrequencyRange * ((double) note/127));
@@ -218,15 +301,10 @@ public class TablaSynthesiser implements IAudioPlayer
 //        );
 
       hiCenterSynth.playNote(
-        new WaveguideParameters[] {
-          new WaveguideParameters(2544.6171875, 0.56427001953125, 125.1171875, 0.967529296875),
-          new WaveguideParameters(1403.3359375, 0.584136962890625, 357.34375, 0.929473876953125),
-          new WaveguideParameters(704.171875, 0.84820556640625, 94.0859375, 0.99322509765625),
-          new WaveguideParameters(1690.40625, 0.89715576171875, 272.265625, 0.975341796875),
-          new WaveguideParameters(2040.4921875, 0.45819091796875, 413.3984375, 0.77734375)
-        },
+        HIGH_DRUM_PARAMETERS,
         704.171875,
-        gain
+        gain,
+        getRegion(note)
       );
     }
     catch(Exception ex)
@@ -236,6 +314,62 @@ public class TablaSynthesiser implements IAudioPlayer
     }
   }
   
+  /**
+   * Works out which region of the drum was hit, used to choose which voice to steal
+   * @param note byte the position on the drum from the center 0 to the rim 127
+   * @return int 0 for the center, 1 for the middle and 2 for the rim
+   */
+   
+  private int getRegion(byte note)
+  {
+    if(note < CENTER_REGION_LIMIT)
+    {
+      return 0;
+    }
+    else if(note < MID_REGION_LIMIT)
+    {
+      return 1;
+    }
+    return 2;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* Voice pools
+  //
+  /**************************************************************************************************/
+  
+  /**
+   * Get the voice pool of the right, smaller drum, for its usage counters and settings
+   * @return BandedWaveguideVoicePool
+   */
+   
+  public BandedWaveguideVoicePool getHighDrumVoices()
+  {
+    return hiCenterSynth;
+  }
+  
+  /**
+   * Get the voice pool of the left, bigger drum, for its usage counters and settings
+   * @return BandedWaveguideVoicePool
+   */
+   
+  public BandedWaveguideVoicePool getLowDrumVoices()
+  {
+    return lowCenterSynth;
+  }
+  
+  /**
+   * Get the number of voices still sounding on both drums, voices that have decayed are asleep and not counted
+   * @return int
+   */
+   
+  public int getSoundingVoiceCount()
+  {
+    return hiCenterSynth.getVoicesInUse() + lowCenterSynth.getVoicesInUse();
+  }
+  
   /**
    * Reads data from a file to initialise the wave table, returning a float array of the data samples 
    * @param filePath String the url of the file
@@ -256,4 +390,4 @@ public class TablaSynthesiser implements IAudioPlayer
     }
     return doubleTable;
   }
-}
+}
@@ -0,0 +1,264 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Folder of decoded targets and their spectrograms, so a target is only decoded and analysed the first
+ * time it is fitted. Files are named by the length, CRC-32 and Adler-32 of the audio file's contents, so
+ * a renamed sample is still found and an edited one is not mistaken for the old one. Both checksums are
+ * native, where a cryptographic hash would take as long as decoding the file in a new JVM. The
+ * spectrogram files also carry the window size and step. Each file is flat binary, little-endian, read back by memory mapping it:
+ *   int magic, int version, int window size, int step, int number of samples, int number of values,
+ *   then the values as doubles
+ * Decoded samples have a window size and step of 0. Each file is written to a temporary file then moved
+ * into place, so fits running at once can share the folder and never read half a file.
+ */
+
+public class TargetCache
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  public static final String DEFAULT_DIRECTORY = "targetCache";
+
+  private static final int MAGIC = 0x57544743;     // "WTGC"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 6 * 4;    // A multiple of 8, so the doubles are aligned
+  private static final int HASH_BUFFER_SIZE = 65536;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final Path directory;
+  private final ConcurrentHashMap<String, String> hashes;     // Content hash of each file already hashed, by path, size and time
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param directory File the folder to keep the cache in, created if it does not exist
+   */
+
+  public TargetCache(File directory) throws IOException
+  {
+    this.directory = directory.toPath();
+    Files.createDirectories(this.directory);
+    hashes = new ConcurrentHashMap<String, String>();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* readAudio
+  //
+  /**************************************************************************************************/
+  /**
+   * Reads the samples of an audio file, from the cache if it has been decoded before
+   * @param filePath String the audio file
+   * @return double[] the samples of the first channel, the same as WaveguideFitnessEvaluator.readAudioFromFile
+   */
+
+  public double[] readAudio(String filePath) throws IOException
+  {
+    Path cached = directory.resolve(contentHash(new File(filePath)) + ".pcm");
+    double[] samples = read(cached, 0, 0);
+    if(samples == null)
+    {
+      samples = WaveguideFitnessEvaluator.readAudioFromFile(filePath);
+      write(cached, 0, 0, samples.length, samples);
+    }
+    return samples;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* readSpectrogram
+  //
+  /**************************************************************************************************/
+  /**
+   * Reads the spectrogram of an audio file, from the cache if it has been worked out before
+   * @param filePath String the audio file
+   * @param windowSize int the spectrogram window size
+   * @param stepSamples int the number of samples the spectrogram window moves along
+   * @return double[] the magnitudes, frame-major, as Spectrogram.spectrogram fills them
+   */
+
+  public double[] readSpectrogram(String filePath, int windowSize, int stepSamples) throws IOException
+  {
+    Path cached = directory.resolve(contentHash(new File(filePath)) + "_" + windowSize + "_" + stepSamples + ".spec");
+    double[] frames = read(cached, windowSize, stepSamples);
+    if(frames == null)
+    {
+      double[] samples = readAudio(filePath);
+      // Frames split over every core, bit identical to the sequential Spectrogram
+      ParallelSpectrogram spectrogram = new ParallelSpectrogram(windowSize, stepSamples);
+      try
+      {
+        frames = new double[spectrogram.getNumFrames(samples.length) * spectrogram.getNumBins()];
+        spectrogram.spectrogram(samples, frames);
+      }
+      finally
+      {
+        spectrogram.close();
+      }
+      write(cached, windowSize, stepSamples, samples.length, frames);
+    }
+    return frames;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Files
+  //
+  /**************************************************************************************************/
+  /**
+   * Hashes the contents of a file, remembering the hash until the file's size or time changes
+   * @param file File the file
+   * @return String the length and both checksums of the contents, in hex
+   */
+
+  private String contentHash(File file) throws IOException
+  {
+    String key = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+    String hash = hashes.get(key);
+    if(hash != null)
+    {
+      return hash;
+    }
+
+    CRC32 crc = new CRC32();
+    Adler32 adler = new Adler32();
+    long length = 0;
+    InputStream input = new FileInputStream(file);
+    try
+    {
+      byte[] buffer = new byte[HASH_BUFFER_SIZE];
+      int read;
+      while((read = input.read(buffer)) > 0)
+      {
+        crc.update(buffer, 0, read);
+        adler.update(buffer, 0, read);
+        length += read;
+      }
+    }
+    finally
+    {
+      input.close();
+    }
+
+    hash = Long.toHexString(length) + "_" + Long.toHexString(crc.getValue()) + "_" + Long.toHexString(adler.getValue());
+    hashes.put(key, hash);
+    return hash;
+  }
+
+  /**
+   * Maps a cache file and copies its values out in one bulk read
+   * @param file Path the cache file
+   * @param windowSize int the window size it must have been made with
+   * @param stepSamples int the step it must have been made with
+   * @return double[] the values, or null if the file is missing or does not match
+   */
+
+  private static double[] read(Path file, int windowSize, int stepSamples) throws IOException
+  {
+    if(!Files.exists(file))
+    {
+      return null;
+    }
+
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try
+    {
+      if(channel.size() < HEADER_SIZE)
+      {
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != windowSize || buffer.getInt() != stepSamples)
+      {
+        return null;
+      }
+      buffer.getInt();
+      int numValues = buffer.getInt();
+      if(channel.size() != HEADER_SIZE + (8L * numValues))
+      {
+        // Left over from a run that was stopped, it is written again
+        return null;
+      }
+
+      double[] values = new double[numValues];
+      buffer.asDoubleBuffer().get(values);
+      return values;
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  /**
+   * Writes a cache file, to a temporary file first and then moved into place
+   * @param file Path the cache file
+   * @param windowSize int the window size, 0 for samples
+   * @param stepSamples int the step, 0 for samples
+   * @param numSamples int the number of samples of the target
+   * @param values double[] the values
+   */
+
+  private static void write(Path file, int windowSize, int stepSamples, int numSamples, double[] values) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (8 * values.length));
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(windowSize);
+    buffer.putInt(stepSamples);
+    buffer.putInt(numSamples);
+    buffer.putInt(values.length);
+    buffer.asDoubleBuffer().put(values);
+    buffer.position(buffer.capacity());
+    buffer.flip();
+
+    Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try
+    {
+      while(buffer.hasRemaining())
+      {
+        channel.write(buffer);
+      }
+    }
+    finally
+    {
+      channel.close();
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,8 @@
+/**
+ * Enum to choose which voice a BandedWaveguideVoicePool takes over when every voice is still ringing
+ * OLDEST steals the voice that was hit longest ago
+ * QUIETEST steals the voice that is currently the quietest
+ * SAME_REGION steals the oldest voice hit in the same region of the drum, or the oldest voice if there is none
+ */
+
+public enum VoiceStealingPolicy { OLDEST, QUIETEST, SAME_REGION };
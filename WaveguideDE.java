@@ -0,0 +1,398 @@
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.PopulationData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fits banded waveguide parameters to a target sound with differential evolution (DE/rand/1/bin) over
+ * the real valued WaveguideGenome, as an alternative to the genetic algorithm. Each generation, every
+ * member of the population gets a trial made from the difference of two others added to a third,
+ * crossed with itself, and is replaced if the trial is at least as good. The trials of a generation are
+ * evaluated in parallel, with the same WaveguideFitnessEvaluator as the genetic algorithm, giving up on
+ * a trial as soon as it is worse than the member it would replace.
+ */
+
+public class WaveguideDE
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  public static final double DEFAULT_DIFFERENTIAL_WEIGHT = 0.7;     // F, scale of the difference vector
+  public static final double DEFAULT_CROSSOVER_RATE = 0.9;          // CR, chance of each gene coming from the mutant
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final WaveguideGenome genome;
+  private final WaveguideFitnessEvaluator evaluator;
+  private final int populationSize;
+  private final double differentialWeight;
+  private final double crossoverRate;
+  private final Random random;
+  private final int numThreads;
+  private final List<EvolutionObserver<? super double[]>> observers;
+
+  private double[][] population;
+  private double[] fitness;
+  private int bestIndex;
+  private long evaluations;                 // Fitness evaluations so far, including the initial population
+  private int generation;
+  private long startTime;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor, using the default weight and crossover rate and a thread for each core
+   * @param genome WaveguideGenome the layout and bounds of the genes
+   * @param evaluator WaveguideFitnessEvaluator scores each candidate
+   * @param populationSize int the number of candidates, at least 4
+   * @param random Random the random number generator
+   */
+
+  public WaveguideDE(WaveguideGenome genome, WaveguideFitnessEvaluator evaluator, int populationSize, Random random)
+  {
+    this(genome, evaluator, populationSize, DEFAULT_DIFFERENTIAL_WEIGHT, DEFAULT_CROSSOVER_RATE, random, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Class constructor
+   * @param genome WaveguideGenome the layout and bounds of the genes
+   * @param evaluator WaveguideFitnessEvaluator scores each candidate
+   * @param populationSize int the number of candidates, at least 4
+   * @param differentialWeight double F, the scale of the difference vector, between 0 and 2
+   * @param crossoverRate double CR, the chance of each gene coming from the mutant, between 0 and 1
+   * @param random Random the random number generator
+   * @param numThreads int the number of threads to evaluate candidates on, 1 to evaluate on the calling thread
+   */
+
+  public WaveguideDE(WaveguideGenome genome, WaveguideFitnessEvaluator evaluator, int populationSize, double differentialWeight, double crossoverRate, Random random, int numThreads)
+  {
+    if(populationSize < 4)
+    {
+      throw new IllegalArgumentException("Population size must be at least 4!");
+    }
+    if(differentialWeight <= 0 || differentialWeight > 2)
+    {
+      throw new IllegalArgumentException("Differential weight must be greater than 0 and at most 2!");
+    }
+    if(crossoverRate < 0 || crossoverRate > 1)
+    {
+      throw new IllegalArgumentException("Crossover rate must be between 0 and 1!");
+    }
+    if(numThreads < 1)
+    {
+      throw new IllegalArgumentException("Number of threads must be at least 1!");
+    }
+
+    this.genome = genome;
+    this.evaluator = evaluator;
+    this.populationSize = populationSize;
+    this.differentialWeight = differentialWeight;
+    this.crossoverRate = crossoverRate;
+    this.random = random;
+    this.numThreads = numThreads;
+    observers = new ArrayList<EvolutionObserver<? super double[]>>();
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* addEvolutionObserver
+  //
+  /**************************************************************************************************/
+  /**
+   * Add an observer told about the population after the initial population and each generation,
+   * the same as for a Watchmaker EvolutionEngine
+   * @param observer EvolutionObserver the observer
+   */
+
+  public void addEvolutionObserver(EvolutionObserver<? super double[]> observer)
+  {
+    observers.add(observer);
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* optimise
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs differential evolution from a new random population
+   * @param maxGenerations int the most generations to run
+   * @param targetDistance double stop once the best candidate is this close to the target, 0 to run every generation
+   * @return double[] the best genome found, decode it with the WaveguideGenome
+   */
+
+  public double[] optimise(int maxGenerations, double targetDistance)
+  {
+    // A single thread evaluates on the caller, eg a worker of a pool already running many fits
+    ExecutorService executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads) : null;
+    startTime = System.currentTimeMillis();
+    try
+    {
+      // Random initial population
+      WaveguideGenomeFactory factory = new WaveguideGenomeFactory(genome);
+      population = new double[populationSize][];
+      for(int i=0; i<populationSize; i++)
+      {
+        population[i] = factory.generateRandomCandidate(random);
+      }
+      fitness = evaluateAll(executor, population, null);
+      evaluations = populationSize;
+      generation = 0;
+      findBest();
+      notifyObservers();
+
+      double[][] trials = new double[populationSize][];
+      while(generation < maxGenerations && fitness[bestIndex] > targetDistance)
+      {
+        // Trials are made from this generation only, so they can all be evaluated at once
+        for(int i=0; i<populationSize; i++)
+        {
+          trials[i] = makeTrial(i);
+        }
+
+        // A trial only matters if it beats the member it would replace, so stop there
+        double[] trialFitness = evaluateAll(executor, trials, fitness);
+        evaluations += populationSize;
+
+        for(int i=0; i<populationSize; i++)
+        {
+          if(trialFitness[i] <= fitness[i])
+          {
+            population[i] = trials[i];
+            fitness[i] = trialFitness[i];
+          }
+        }
+        findBest();
+        generation++;
+        notifyObservers();
+      }
+
+      return population[bestIndex].clone();
+    }
+    finally
+    {
+      if(executor != null)
+      {
+        executor.shutdown();
+      }
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* makeTrial
+  //
+  /**************************************************************************************************/
+  /**
+   * Makes the trial for one member: a mutant from three other distinct members, crossed with the member
+   * @param target int the index of the member
+   * @return double[] the trial genome, clamped to the bounds
+   */
+
+  private double[] makeTrial(int target)
+  {
+    int a, b, c;
+    do { a = random.nextInt(populationSize); } while(a == target);
+    do { b = random.nextInt(populationSize); } while(b == target || b == a);
+    do { c = random.nextInt(populationSize); } while(c == target || c == a || c == b);
+
+    double[] base = population[a];
+    double[] from = population[b];
+    double[] to = population[c];
+    double[] trial = population[target].clone();
+
+    // At least one gene always comes from the mutant
+    int forcedGene = random.nextInt(trial.length);
+    for(int i=0; i<trial.length; i++)
+    {
+      if(i == forcedGene || random.nextDouble() < crossoverRate)
+      {
+        trial[i] = genome.clamp(i, base[i] + (differentialWeight * (from[i] - to[i])));
+      }
+    }
+    return trial;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* evaluateAll
+  //
+  /**************************************************************************************************/
+  /**
+   * Scores every candidate, spread over the threads of the executor
+   * @param executor ExecutorService the threads to evaluate on, or null to evaluate on this thread
+   * @param candidates double[][] the genomes to score
+   * @param bounds double[] the distance to give up at for each candidate, or null to score them in full
+   * @return double[] the fitness of each candidate
+   */
+
+  private double[] evaluateAll(ExecutorService executor, final double[][] candidates, final double[] bounds)
+  {
+    if(executor == null)
+    {
+      double[] results = new double[candidates.length];
+      for(int i=0; i<candidates.length; i++)
+      {
+        double bound = (bounds == null) ? Double.POSITIVE_INFINITY : bounds[i];
+        results[i] = evaluate(candidates[i], bound);
+      }
+      return results;
+    }
+
+    List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(candidates.length);
+    for(int i=0; i<candidates.length; i++)
+    {
+      final double[] candidate = candidates[i];
+      final double bound = (bounds == null) ? Double.POSITIVE_INFINITY : bounds[i];
+      tasks.add(new Callable<Double>()
+      {
+        public Double call()
+        {
+          return evaluate(candidate, bound);
+        }
+      });
+    }
+
+    double[] results = new double[candidates.length];
+    try
+    {
+      List<Future<Double>> futures = executor.invokeAll(tasks);
+      for(int i=0; i<results.length; i++)
+      {
+        results[i] = futures.get(i).get();
+      }
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while evaluating candidates", ex);
+    }
+    catch(ExecutionException ex)
+    {
+      throw new IllegalStateException("Candidate evaluation failed", ex.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Decodes and scores one candidate, timing the decoding in the evaluator's stats as the bit string
+   * genome does
+   * @param candidate double[] the genome to score
+   * @param bound double the distance to give up at
+   * @return double the fitness of the candidate
+   */
+
+  private double evaluate(double[] candidate, double bound)
+  {
+    long start = System.nanoTime();
+    WaveguideParameters[] parameters = genome.decode(candidate);
+    double overallGain = genome.decodeOverallGain(candidate);
+    evaluator.getStats().addDecode(System.nanoTime() - start);
+
+    return evaluator.getFitness(parameters, overallGain, bound);
+  }
+
+  /**
+   * Finds the fittest member of the population
+   */
+
+  private void findBest()
+  {
+    bestIndex = 0;
+    for(int i=1; i<populationSize; i++)
+    {
+      if(fitness[i] < fitness[bestIndex])
+      {
+        bestIndex = i;
+      }
+    }
+  }
+
+
+  /**
+   * Tells every observer about the current population
+   */
+
+  private void notifyObservers()
+  {
+    if(observers.isEmpty())
+    {
+      return;
+    }
+
+    double mean = 0;
+    for(int i=0; i<populationSize; i++)
+    {
+      mean += fitness[i];
+    }
+    mean /= populationSize;
+
+    double variance = 0;
+    for(int i=0; i<populationSize; i++)
+    {
+      variance += (fitness[i] - mean) * (fitness[i] - mean);
+    }
+    variance /= populationSize;
+
+    PopulationData<double[]> data = new PopulationData<double[]>(population[bestIndex], fitness[bestIndex], mean, Math.sqrt(variance),
+                                                                 false, populationSize, 0, generation, System.currentTimeMillis() - startTime);
+    for(EvolutionObserver<? super double[]> observer : observers)
+    {
+      observer.populationUpdate(data);
+    }
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Accessor methods
+  //
+  /**************************************************************************************************/
+
+  /**
+   * @return double the distance of the best candidate so far
+   */
+  public double getBestFitness()
+  {
+    return fitness[bestIndex];
+  }
+
+  /**
+   * @return long the number of fitness evaluations so far, including the initial population
+   */
+  public long getEvaluations()
+  {
+    return evaluations;
+  }
+
+  /**
+   * @return int the number of generations run
+   */
+  public int getGeneration()
+  {
+    return generation;
+  }
+}
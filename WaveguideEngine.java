@@ -0,0 +1,8 @@
+/**
+ * Enum to choose how the bands of a FullBandedWaveguide are built
+ * CIRCUIT uses a SingleBandedWaveguide circuit of separate units per band
+ * FUSED uses one FusedBandedWaveguide unit per band
+ * BANK uses a single BandedWaveguideBank for all of the bands and the mix
+ */
+
+public enum WaveguideEngine { CIRCUIT, FUSED, BANK };
@@ -3,6 +3,7 @@ import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -14,10 +15,11 @@ import com.jsyn.util.*;
 
 /**
  * Implementation of the FitnessEvaluator for the Genetic algorithm, given a possible solution, 
- * returns a fitness, calculated by comparing the fft spectrum of the target and produced sound
+ * returns a fitness, calculated by comparing the fft spectrum of the target and produced sound.
+ * Safe to call from many threads at once, each evaluation takes its own FitnessContext from a pool
  */
  
-public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
+public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>, ISurrogateFitness<BitString>
 {
   /**************************************************************************************************/
   //
@@ -39,10 +41,21 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
   // Spectrogram settings
   private static final int WINDOW_SIZE = 512;
   private static final int SAMPLES_STEP = 128;
+  private static final int SURROGATE_FRAME_STRIDE = 2;          // The surrogate predicts one frame in this many, they change slowly
   
   // Sample rate
   private static final int SAMPLE_RATE = 44100;
   
+  // Largest delay line, the same as the BandedWaveguideNote
+  private static final int MAX_BUFFER_SIZE = 1000;
+  
+  // Number of fitness scores remembered
+  private static final int FITNESS_CACHE_SIZE = 4096;
+  
+  // Score of candidates that can't be played, worse than any distance but small enough for the
+  // population statistics to add up without overflowing
+  public static final double REJECTED_FITNESS = 1e30;
+  
   
   /**************************************************************************************************/
   //
@@ -50,14 +63,18 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
   //
   /**************************************************************************************************/
 
-  // JSyn unit gens
-  private Synthesizer synth;
-  private BandedWaveguideNote bandedWaveguide;
-  private CaptureOutput output;
+  // Renderers, spectrogram calculators and buffers not in use by a thread
+  private ConcurrentLinkedQueue<FitnessContext> contexts;
+  
+  private FitnessCache cache;                    // Scores of candidates already evaluated
+  private EvaluationStats stats;                 // Counts and phase times of the evaluations
+  private volatile double abortBound;            // Distance at which a candidate stops being evaluated
 
-  private Spectrogram spectrogram;         // Spectrogram calculator
   private int numWaveguides;                     // Number of waveguides in the synthesiser
-  private double[][] targetSpectrogram;          // The spectrogram of the target sound to compare against
+  private SpectralDistance spectralDistance;     // How the spectrograms are compared
+  private double[] targetSpectrogram;            // The prepared spectrogram of the target sound, frame-major
+  private int numFrames;                         // Frames in the target spectrogram
+  private int numBins;                           // Frequency bins in each frame
   private int targetSoundLength;         // Number of samples in the target audio file
   
   /**************************************************************************************************/
@@ -72,28 +89,131 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
    */
    
   public WaveguideFitnessEvaluator(int numWaveguides, String targetAudioFilePath) throws IOException
+  {
+    this(numWaveguides, targetAudioFilePath, new SpectralDistance(SpectralMetric.L1));
+  }
+  
+  /**
+   * Class constructor
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   * @param targetAudioFilePath String the path to the audio file to target
+   * @param spectralDistance SpectralDistance how to compare the spectrograms
+   */
+   
+  public WaveguideFitnessEvaluator(int numWaveguides, String targetAudioFilePath, SpectralDistance spectralDistance) throws IOException
+  {
+    this(numWaveguides, readAudioFromFile(targetAudioFilePath), spectralDistance);
+  }
+  
+  /**
+   * Class constructor, for a target already read in, eg shared between many fits. The samples are only
+   * read while constructing, and not changed
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   * @param targetSound double[] the samples of the target sound
+   * @param spectralDistance SpectralDistance how to compare the spectrograms
+   */
+   
+  public WaveguideFitnessEvaluator(int numWaveguides, double[] targetSound, SpectralDistance spectralDistance)
+  {
+    this(numWaveguides, targetSound, null, spectralDistance);
+  }
+  
+  /**
+   * Class constructor, reading the target and its spectrogram from a TargetCache, so only the first fit
+   * of a file decodes and analyses it
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   * @param targetAudioFilePath String the path to the audio file to target
+   * @param spectralDistance SpectralDistance how to compare the spectrograms
+   * @param targetCache TargetCache the cache of decoded targets
+   */
+   
+  public WaveguideFitnessEvaluator(int numWaveguides, String targetAudioFilePath, SpectralDistance spectralDistance, TargetCache targetCache) throws IOException
+  {
+    this(numWaveguides,
+         targetCache.readAudio(targetAudioFilePath),
+         targetCache.readSpectrogram(targetAudioFilePath, WINDOW_SIZE, SAMPLES_STEP),
+         spectralDistance);
+  }
+  
+  /**
+   * Class constructor
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   * @param targetSound double[] the samples of the target sound
+   * @param targetFrames double[] the spectrogram of the target sound, not yet prepared, or null to work it out
+   * @param spectralDistance SpectralDistance how to compare the spectrograms
+   */
+   
+  private WaveguideFitnessEvaluator(int numWaveguides, double[] targetSound, double[] targetFrames, SpectralDistance spectralDistance)
   {
     this.numWaveguides = numWaveguides;
-    double[] targetSound = readAudioFromFile(targetAudioFilePath);
+    this.spectralDistance = spectralDistance;
     targetSoundLength = targetSound.length;
     
-    // Set up spectrogram object to compute the spectrogram
-    spectrogram = new Spectrogram(WINDOW_SIZE, SAMPLES_STEP);
+    cache = new FitnessCache(FITNESS_CACHE_SIZE);
+    stats = new EvaluationStats();
+    abortBound = Double.POSITIVE_INFINITY;
     
-    // Compute the spectrogram of the target sound, ready to be compared against
-    targetSpectrogram = spectrogram.spectrogram(targetSound);
+    // Set up the pool, with a first context to compute the spectrogram of the target
+    contexts = new ConcurrentLinkedQueue<FitnessContext>();
+    FitnessContext context = acquireContext();
     
-    // Set up Synthesizer to simulate sound
-    // Initialise synthesizer
-    synth = JSyn.createSynthesizer();
-    synth.setRealTime(false);  // Set not real time 
+    // Compute the spectrogram of the target sound, ready to be compared against
+    Spectrogram spectrogram = context.getSpectrogram();
+    numFrames = spectrogram.getNumFrames(targetSoundLength);
+    numBins = spectrogram.getNumBins();
+    spectralDistance.checkNumBins(numBins);
     
-    // Set up BandedWaveguide
-    synth.add(output = new CaptureOutput(targetSoundLength));
-    bandedWaveguide = new BandedWaveguideNote(synth, output, numWaveguides);  
+    if(targetFrames != null && targetFrames.length == numFrames * numBins)
+    {
+      targetSpectrogram = targetFrames;
+    }
+    else
+    {
+      // Frames split over every core, bit identical to the context's spectrogram
+      targetSpectrogram = new double[numFrames * numBins];
+      ParallelSpectrogram parallel = new ParallelSpectrogram(WINDOW_SIZE, SAMPLES_STEP);
+      try
+      {
+        parallel.spectrogram(targetSound, targetSpectrogram);
+      }
+      finally
+      {
+        parallel.close();
+      }
+    }
+    spectralDistance.prepare(targetSpectrogram, 0, targetSpectrogram.length);
     
-    // Start synth
-    synth.start();
+    releaseContext(context);
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* Context pool  
+  //
+  /**************************************************************************************************/
+  /**
+   * Take a context from the pool, or create one if they are all in use by other threads
+   * @return FitnessContext
+   */
+   
+  private FitnessContext acquireContext()
+  {
+    FitnessContext context = contexts.poll();
+    if(context == null)
+    {
+      context = new FitnessContext(SAMPLE_RATE, MAX_BUFFER_SIZE, numWaveguides, targetSoundLength, WINDOW_SIZE, SAMPLES_STEP, SURROGATE_FRAME_STRIDE);
+    }
+    return context;
+  }
+  
+  /**
+   * Put a context back in the pool for the next evaluation
+   * @param context FitnessContext
+   */
+   
+  private void releaseContext(FitnessContext context)
+  {
+    contexts.offer(context);
   }
   
   /**************************************************************************************************/
@@ -111,10 +231,41 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
   public double getFitness(BitString candidate, List<? extends BitString> population)
   { 
     // Convert binary representation to the parameters needed
-    WaveguideParameters[] parameters = convertToParameters(candidate.toString());
+    long start = System.nanoTime();
+    String bitString = candidate.toString();
+    WaveguideParameters[] parameters = convertToParameters(bitString);
     
     // Also get the overall gain from the binary string
-    double overallGain = convertToOverallGain(candidate.toString());
+    double overallGain = convertToOverallGain(bitString);
+    stats.addDecode(System.nanoTime() - start);
+    
+    return getFitness(parameters, overallGain);
+  }
+  
+  /**
+   * Get the fitness of a decoded candidate, so other genome types can share the evaluation
+   * @param parameters WaveguideParameters[] the parameters for each waveguide
+   * @param overallGain double the overall gain
+   * @return the fitness score
+   */
+   
+  public double getFitness(WaveguideParameters[] parameters, double overallGain)
+  {
+    // Read the bound once, so the whole evaluation uses the same one
+    return getFitness(parameters, overallGain, abortBound);
+  }
+  
+  /**
+   * Get the fitness of a decoded candidate, giving up once its distance is more than the bound
+   * @param parameters WaveguideParameters[] the parameters for each waveguide
+   * @param overallGain double the overall gain
+   * @param bound double the distance to give up at, Double.POSITIVE_INFINITY to evaluate in full
+   * @return the fitness score, or if more than the bound the distance reached scaled up to the whole target
+   */
+   
+  public double getFitness(WaveguideParameters[] parameters, double overallGain, double bound)
+  {
+    stats.addEvaluation();
     
     // Synthesise sound to produce the samples
     double fundimentalFreq = parameters[0].getCenterFrequency();
@@ -130,54 +281,283 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
     
     if(fundimentalFreq < 70)
     {
-      System.out.println(100);
-      return 100;
+      return REJECTED_FITNESS;
     }
-   
-    // Set the note to play
-    output.resetData();
     
+    // Use the score from last time if this waveguide has already been evaluated
+    long key = FitnessCache.getKey(parameters, overallGain);
+    Double cachedScore = cache.get(key);
+    if(cachedScore != null)
+    {
+      return cachedScore;
+    }
+   
 /*    System.out.println("Candidate: (Gain: " + overallGain + ")");
     for(int i=0; i<numWaveguides; i++)
     {
       System.out.println(parameters[i].getCenterFrequency() + ", " + parameters[i].getAmplitude() + ", " + parameters[i].getQ() + ", " + parameters[i].getGain());
     }
     System.out.println();*/
-
+    
+    FitnessContext context = acquireContext();
+    double dist;
     try
     {
-      bandedWaveguide.playNote(parameters, fundimentalFreq, overallGain);
+      dist = incrementalDistance(context, parameters, fundimentalFreq, overallGain, bound);
     }
-    catch(Exception ex)
+    catch(IllegalArgumentException ex)
     {
-      return 100;
+      // The renderer can't play this candidate, eg a delay longer than its buffer
+      return REJECTED_FITNESS;
+    }
+    finally
+    {
+      releaseContext(context);
     }
     
-    try {
-      synth.sleepFor(targetSoundLength / SAMPLE_RATE);
-    } 
-    catch (InterruptedException e) 
+    // Only remember complete distances, an abandoned one is just an estimate
+    if(dist <= bound)
     {
+      cache.put(key, dist);
     }
-
-    // Get data synthesised
-    double[] synthesisedSound = output.getData();
     
-    // Once data is captured, stop synthesiser
-    output.stop();
-    output.resetData();
+    // Return the distance between the two spectrograms  
+    return dist;
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* incrementalDistance  
+  //
+  /**************************************************************************************************/
+  /**
+   * Renders the candidate and compares it with the target a spectrogram frame at a time, only rendering
+   * as far as the next frame needs. Gives up once the distance so far is more than the bound, as the 
+   * candidate can only get worse from there. The distance so far is then scaled up to all the frames, so
+   * an abandoned candidate scores about its full distance rather than just above the bound, and selection
+   * still ranks hopeless candidates by how far off they are
+   * @param context FitnessContext the renderer, spectrogram and buffers to use
+   * @param parameters WaveguideParameters[] the parameters for each waveguide
+   * @param fundimentalFreq double the fundimental of the note
+   * @param overallGain double the overall gain
+   * @param bound double the distance to give up at
+   * @return double the distance between the spectrograms, or the distance so far scaled up to every frame if more than the bound
+   */
+   
+  private double incrementalDistance(FitnessContext context, WaveguideParameters[] parameters, double fundimentalFreq, double overallGain, double bound)
+  {
+    OfflineWaveguideRenderer renderer = context.getRenderer();
+    Spectrogram spectrogram = context.getSpectrogram();
+    double[] synthesisedSound = context.getSound();
+    double[] spectrum = context.getSpectrum();
     
-    // Compute spectrum of the synthesised sound
-    double[][] candidateSpectrogram = spectrogram.spectrogram(synthesisedSound);
+    // Start the note from silence
+    long time = System.nanoTime();
+    renderer.reset();
+    renderer.playNote(parameters, fundimentalFreq, overallGain);
+    int rendered = 0;
     
-    double dist = Spectrogram.distance(targetSpectrogram, candidateSpectrogram);
+    double totalDistance = 0;
+    long renderNanos = 0, stftNanos = 0, distanceNanos = 0;
+    boolean abandoned = false;
     
-    System.out.println(dist);
+    int frame;
+    for(frame=0; frame<numFrames; frame++)
+    {
+      // Render up to the end of this frame
+      int start = frame * spectrogram.getStepSamples();
+      int end = start + spectrogram.getWindowSize();
+      renderer.render(synthesisedSound, rendered, end - rendered);
+      rendered = end;
+      long rendering = System.nanoTime();
+      renderNanos += rendering - time;
+      
+      // Add this frame's distance
+      spectrogram.spectrum(synthesisedSound, start, spectrum);
+      long transforming = System.nanoTime();
+      stftNanos += transforming - rendering;
+      
+      spectralDistance.prepare(spectrum, 0, numBins);
+      totalDistance += spectralDistance.frameDistance(targetSpectrogram, frame * numBins, spectrum, 0, numBins);
+      time = System.nanoTime();
+      distanceNanos += time - transforming;
+      
+      if(totalDistance > bound)
+      {
+        abandoned = true;
+        break;
+      }
+    }
     
-    // Return the distance between the two spectrograms  
-    return dist;
+    stats.addRender(renderNanos, stftNanos, distanceNanos, abandoned);
+    if(abandoned)
+    {
+      // Still more than the bound, as at least as many frames are counted as were compared
+      return totalDistance * numFrames / (frame + 1);
+    }
+    return totalDistance;
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* getSurrogateFitness  
+  //
+  /**************************************************************************************************/
+  /**
+   * Estimate the fitness of a candidate from a predicted spectrogram, without rendering it. Much cheaper
+   * than getFitness but only approximate, for ranking candidates before evaluating them
+   * @param candidate BitString the candidate to estimate
+   * @return the estimated fitness score
+   */
+   
+  public double getSurrogateFitness(BitString candidate)
+  {
+    long start = System.nanoTime();
+    String bitString = candidate.toString();
+    WaveguideParameters[] parameters = convertToParameters(bitString);
+    double overallGain = convertToOverallGain(bitString);
+    stats.addDecode(System.nanoTime() - start);
+    
+    return getSurrogateFitness(parameters, overallGain);
   }
+  
+  /**
+   * Estimate the fitness of a decoded candidate from a predicted spectrogram, without rendering it
+   * @param parameters WaveguideParameters[] the parameters for each waveguide
+   * @param overallGain double the overall gain
+   * @return the estimated fitness score
+   */
    
+  public double getSurrogateFitness(WaveguideParameters[] parameters, double overallGain)
+  {
+    // Same rejections as getFitness
+    for(int i=0; i<numWaveguides; i++)
+    {
+      if(parameters[i].getCenterFrequency() < 70)
+      {
+        return REJECTED_FITNESS;
+      }
+    }
+    
+    long start = System.nanoTime();
+    FitnessContext context = acquireContext();
+    try
+    {
+      SpectralSurrogate surrogate = context.getSurrogate();
+      double[] spectrum = context.getSpectrum();
+      surrogate.playNote(parameters, overallGain);
+      
+      double totalDistance = 0;
+      int numCompared = 0;
+      for(int frame=0; frame<numFrames; frame+=SURROGATE_FRAME_STRIDE)
+      {
+        surrogate.nextFrame(spectrum, 0);
+        spectralDistance.prepare(spectrum, 0, numBins);
+        totalDistance += spectralDistance.frameDistance(targetSpectrogram, frame * numBins, spectrum, 0, numBins);
+        numCompared++;
+      }
+      return totalDistance * numFrames / numCompared;
+    }
+    finally
+    {
+      releaseContext(context);
+      stats.addSurrogate(System.nanoTime() - start);
+    }
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* setAbortBound  
+  //
+  /**************************************************************************************************/
+  /**
+   * Set the distance at which to stop evaluating a candidate, eg the fitness of the worst elite candidate.
+   * Abandoned candidates score the distance reached scaled up to the whole target, which is more than the
+   * bound and an estimate of their full distance. Can be changed while candidates are being evaluated on
+   * other threads
+   * @param bound double the distance, Double.POSITIVE_INFINITY to always evaluate in full
+   */
+   
+  public void setAbortBound(double bound)
+  {
+    abortBound = bound;
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* getCache  
+  //
+  /**************************************************************************************************/
+  /**
+   * Get the cache of fitness scores, for its hit and miss counters
+   * @return FitnessCache
+   */
+   
+  public FitnessCache getCache()
+  {
+    return cache;
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* peekExact  
+  //
+  /**************************************************************************************************/
+  /**
+   * Get the full distance of a candidate without rendering it, if it is rejected outright or its score
+   * is cached. Only full distances are cached, never an abandoned render's estimate or a surrogate score
+   * @param candidate BitString the candidate
+   * @return Double the exact fitness score, or null if the candidate would have to be rendered
+   */
+   
+  public Double peekExact(BitString candidate)
+  {
+    long start = System.nanoTime();
+    String bitString = candidate.toString();
+    WaveguideParameters[] parameters = convertToParameters(bitString);
+    double overallGain = convertToOverallGain(bitString);
+    stats.addDecode(System.nanoTime() - start);
+    
+    // Same rejections as getFitness
+    for(int i=0; i<numWaveguides; i++)
+    {
+      if(parameters[i].getCenterFrequency() < 70)
+      {
+        return REJECTED_FITNESS;
+      }
+    }
+    return cache.peek(FitnessCache.getKey(parameters, overallGain));
+  }
+  
+  /**
+   * Whether a score of a candidate is its full distance, rather than an abandoned render's estimate or
+   * a surrogate score
+   * @param candidate BitString the candidate
+   * @param fitness double the score it was given
+   * @return boolean true if the score is exact
+   */
+   
+  public boolean isExact(BitString candidate, double fitness)
+  {
+    Double exact = peekExact(candidate);
+    return (exact != null) && (exact.doubleValue() == fitness);
+  }
+  
+  /**************************************************************************************************/
+  //
+  /* getStats  
+  //
+  /**************************************************************************************************/
+  /**
+   * Get the counts and phase times of the evaluations, for GATelemetry
+   * @return EvaluationStats
+   */
+   
+  public EvaluationStats getStats()
+  {
+    return stats;
+  }
+  
   /**************************************************************************************************/
   //
   /* isNatural  
@@ -268,6 +648,93 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
     return volume;
   }
   
+  /**************************************************************************************************/
+  //
+  /* convertToBitString 
+  //
+  /**************************************************************************************************/
+  /**
+   * Converts waveguide parameters and an overall gain to the nearest binary string, eg to seed the 
+   * population with estimates from the target
+   * @param params WaveguideParameters[] the parameters for each waveguide
+   * @param overallGain double the overall gain
+   * @return BitString the candidate
+   */
+   
+  public BitString convertToBitString(WaveguideParameters[] params, double overallGain)
+  {
+    if(params.length != numWaveguides)
+    {
+      throw new IllegalArgumentException("Number of waveguide parameters must be equal to the number of waveguides!");
+    }
+    
+    StringBuilder bits = new StringBuilder();
+    for(int i=0; i<numWaveguides; i++)
+    {
+      bits.append(doubleToFixedPointBinary(params[i].getCenterFrequency(), FREQUENCY_INT_BITS, FREQUENCY_FRAC_BITS));
+      bits.append(doubleToFixedPointBinary(params[i].getQ(), Q_INT_BITS, Q_FRAC_BITS));
+      bits.append(doubleToFixedPointBinary(params[i].getAmplitude(), 0, AMP_FRAC_BITS));
+      bits.append(doubleToFixedPointBinary(params[i].getGain(), 0, GAIN_FRAC_BITS));
+    }
+    bits.append(doubleToFixedPointBinary(overallGain, VOLUME_INT_BITS, VOLUME_FRAC_BITS));
+    
+    return new BitString(bits.toString());
+  }
+  
+  /**
+   * Finds the bits that fixedPointBinaryToDouble decodes closest to a value. Only the top numIntBits - 1 
+   * integer bits and numFracBits - 1 fractional bits are decoded, and the fraction is read from the start
+   * of the string, so the integer part is chosen by trying its neighbours through the decoder
+   * @param value double the value to encode
+   * @param numIntBits int the number of fixed integer bits
+   * @param numFracBits int the number of fixed fractional bits
+   * @return String the bits
+   */
+   
+  private String doubleToFixedPointBinary(double value, int numIntBits, int numFracBits)
+  {
+    if(numIntBits == 0)
+    {
+      // Only a fraction, read from the first numFracBits - 1 bits
+      int maxValue = (1 << (numFracBits - 1)) - 1;
+      int fraction = (int) Math.max(0, Math.min(maxValue, Math.round(value * (1 << (numFracBits - 1)))));
+      return toBinary(fraction, numFracBits - 1) + "0";
+    }
+    
+    int maxInteger = (1 << (numIntBits - 1)) - 1;
+    String best = null;
+    double bestError = Double.POSITIVE_INFINITY;
+    for(long integer=(long) Math.floor(value) - 1; integer<=(long) Math.floor(value) + 1; integer++)
+    {
+      int clamped = (int) Math.max(0, Math.min(maxInteger, integer));
+      String bits = toBinary(clamped, numIntBits - 1) + toBinary(0, numFracBits + 1);
+      double error = Math.abs(fixedPointBinaryToDouble(bits, numIntBits, numFracBits) - value);
+      if(error < bestError)
+      {
+        bestError = error;
+        best = bits;
+      }
+    }
+    return best;
+  }
+  
+  /**
+   * Writes a number as binary, most significant bit first
+   * @param value int the number
+   * @param numBits int the number of bits
+   * @return String the bits
+   */
+   
+  private static String toBinary(int value, int numBits)
+  {
+    StringBuilder bits = new StringBuilder(numBits);
+    for(int i=numBits-1; i>=0; i--)
+    {
+      bits.append(((value >> i) & 1) == 1 ? '1' : '0');
+    }
+    return bits.toString();
+  }
+  
   /**************************************************************************************************/
   //
   /* fixedPointBinaryToDouble
@@ -312,30 +779,31 @@ public class WaveguideFitnessEvaluator implements FitnessEvaluator<BitString>
   //
   /**************************************************************************************************/
   /**
-   * Reads in the audio samples from the given file.
+   * Reads in the audio samples from the given file, only the first channel if there are more than one
    * @param filePath String the path of the target audio file sample
    * @return double[] the sample data from the file
    */
    
-  private double[] readAudioFromFile(String filePath) throws IOException
+  public static double[] readAudioFromFile(String filePath) throws IOException
   { 
     File file = new File(filePath);
     FloatSample sample = SampleLoader.loadFloatSample(file);
     
-    // Return the sample as a double array
-    float[] data = new float[sample.getNumFrames()];
+    // Return the sample as a double array, the channels of each frame are interleaved
+    int numChannels = sample.getChannelsPerFrame();
+    float[] data = new float[sample.getNumFrames() * numChannels];
     
-    sample.read(0, data, 0, data.length);
+    sample.read(0, data, 0, sample.getNumFrames());
     
     // Convert to double
-    double[] result = new double[data.length];
-    for(int i=0; i<data.length; i++)
+    double[] result = new double[sample.getNumFrames()];
+    for(int i=0; i<result.length; i++)
     {
-      result[i] = (double) data[i];
+      result[i] = (double) data[i * numChannels];
     }
     
     return result;
   }
   
 }
-
+
@@ -14,10 +14,20 @@ import com.jsyn.JSyn;
 import com.jsyn.Synthesizer;
 import com.jsyn.unitgen.LineOut;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 
 /**
@@ -35,6 +45,17 @@ public class WaveguideGA
   // Bit Strings
   private static final int TOTAL_STRING_LENGTH = 72;
   private static final int TOTAL_VOLUME_LENGTH = 14;
+  
+  // Evolution
+  private static final int POPULATION_SIZE = 70;
+  private static final int MAX_GENERATIONS = 200;
+  private static final int CHECKPOINT_INTERVAL = 5;      // Generations between checkpoints
+  private static final double SEED_FRACTION = 0.3;       // Fraction of a new population seeded from the target's spectrum
+  private static final double EVALUATED_FRACTION = 0.1;  // Fraction of the new candidates rendered when screening with the surrogate
+  
+  // Island model
+  private static final int MIGRATION_INTERVAL = 10;      // Generations between migrations
+  private static final int NUM_MIGRANTS = 2;             // Best candidates each island sends to the next
 
 
   /**************************************************************************************************/
@@ -43,7 +64,7 @@ public class WaveguideGA
   //
   /**************************************************************************************************/
   /**
-   * Simply states that the fitness function returns lower scores for 'fitter' solution
+   * Runs the genetic algorithm with the default options
    * @param numWaveguides int the number of waveguides used in the banded waveguide
    * @param targetAudioFilePath the target audio file path that the algorithm with try to fit the parameters to
    * @return WaveguideParameters[] the optimal parameters found
@@ -51,54 +72,352 @@ public class WaveguideGA
    
   public static WaveguideParameters[] runGeneticAlgorithm(int numWaveguides, String targetAudioFilePath) throws IOException
   {
+    return runGeneticAlgorithm(numWaveguides, targetAudioFilePath, new GAOptions());
+  }
+  
+  /**
+   * Runs the genetic algorithm. The fitness function returns lower scores for 'fitter' solutions
+   * @param numWaveguides int the number of waveguides used in the banded waveguide
+   * @param targetAudioFilePath the target audio file path that the algorithm with try to fit the parameters to
+   * @param options GAOptions the metric, checkpointing, seeding, telemetry, screening and target cache of the run
+   * @return WaveguideParameters[] the optimal parameters found
+   */
+   
+  public static WaveguideParameters[] runGeneticAlgorithm(int numWaveguides, String targetAudioFilePath, GAOptions options) throws IOException
+  {
+    SpectralDistance spectralDistance = options.getSpectralDistance();
+    String checkpointFilePath = options.getCheckpointFilePath();
+    IModeEstimator modeEstimator = options.getModeEstimator();
+    TargetCache targetCache = options.getTargetCache();
+
     // Initialise candidate factory - the initial population
     CandidateFactory<BitString> factory = new BitStringFactory((TOTAL_STRING_LENGTH * numWaveguides) + TOTAL_VOLUME_LENGTH);
     
     // Create operators for mutation and evolution
-    List<EvolutionaryOperator<BitString>> operators = new LinkedList<EvolutionaryOperator<BitString>>();
-    operators.add(new BitStringMutation(new Probability(0.01)));
-    operators.add(new BitStringCrossover());
-    EvolutionaryOperator<BitString> pipeline = new EvolutionPipeline<BitString>(operators);
+    EvolutionaryOperator<BitString> pipeline = createPipeline();
     
-    // Initialise the fitness evaluator created for this problem
-    FitnessEvaluator<BitString> fitnessEvaluator = new WaveguideFitnessEvaluator(numWaveguides, targetAudioFilePath);
+    // Initialise the fitness evaluator created for this problem, decoding the target only if it is not cached
+    FitnessEvaluator<BitString> fitnessEvaluator = (targetCache == null)
+                                                 ? new WaveguideFitnessEvaluator(numWaveguides, targetAudioFilePath, spectralDistance)
+                                                 : new WaveguideFitnessEvaluator(numWaveguides, targetAudioFilePath, spectralDistance, targetCache);
+    final WaveguideFitnessEvaluator waveguideEvaluator = (WaveguideFitnessEvaluator) fitnessEvaluator;
+    final FitnessCache cache = waveguideEvaluator.getCache();
     
     // Set up selection strategy for selecting the fittest candidates given the fitness scores
     SelectionStrategy<Object> selection = new RouletteWheelSelection();
     
-    // Choose the watchmaker random number generator
-    Random random = new MersenneTwisterRNG();
+    // Resume from the checkpoint if there is one
+    File checkpointFile = (checkpointFilePath == null) ? null : new File(checkpointFilePath);
+    GACheckpoint checkpoint = null;
+    if(checkpointFile != null && checkpointFile.exists())
+    {
+      checkpoint = GACheckpoint.read(checkpointFile);
+      System.out.println("Resuming from generation " + checkpoint.getGeneration());
+      
+      // The saved exact scores are used again rather than rendering those candidates again, estimates from
+      // abandoned renders or the surrogate are rendered again and can't set the bound
+      List<BitString> candidates = checkpoint.getCandidates();
+      double[] fitness = checkpoint.getFitness();
+      boolean[] exact = checkpoint.getExact();
+      double bestFitness = Double.POSITIVE_INFINITY;
+      for(int i=0; i<candidates.size(); i++)
+      {
+        if(exact[i])
+        {
+          String bitString = candidates.get(i).toString();
+          cache.put(FitnessCache.getKey(waveguideEvaluator.convertToParameters(bitString), waveguideEvaluator.convertToOverallGain(bitString)), fitness[i]);
+          bestFitness = Math.min(bestFitness, fitness[i]);
+        }
+      }
+      waveguideEvaluator.setAbortBound(bestFitness);
+    }
+    
+    // Choose the watchmaker random number generator, one that can be saved when checkpointing
+    Random random;
+    if(checkpoint != null)
+    {
+      random = new CheckpointableRNG(checkpoint.getSeed());
+    }
+    else if(checkpointFile != null)
+    {
+      random = new CheckpointableRNG();
+    }
+    else
+    {
+      random = new MersenneTwisterRNG();
+    }
     
     // Set up the EvolutionEngine to run the algorithm
-    EvolutionEngine<BitString> engine = new GenerationalEvolutionEngine<BitString>(
+    CheckpointingEvolutionEngine<BitString> engine = new CheckpointingEvolutionEngine<BitString>(
       factory, 
       pipeline, 
       fitnessEvaluator,
       selection,
       random);
     
-    engine.addEvolutionObserver(new EvolutionObserver<BitString>()
+    // Only render the candidates the spectral surrogate thinks are best
+    if(options.getScreenWithSurrogate())
+    {
+      engine.setSurrogate(waveguideEvaluator, EVALUATED_FRACTION);
+    }
+    
+    GACheckpointer checkpointer = null;
+    int startGeneration = (checkpoint == null) ? 0 : checkpoint.getGeneration();
+    if(checkpointFile != null)
+    {
+      checkpointer = new GACheckpointer(engine, (CheckpointableRNG) random, waveguideEvaluator, checkpointFile, CHECKPOINT_INTERVAL, startGeneration);
+      engine.addEvolutionObserver(checkpointer);
+    }
+    
+    // Counts and phase times of each generation, printed and optionally written to a CSV file
+    final GATelemetry telemetry = new GATelemetry(targetAudioFilePath, waveguideEvaluator);
+    ITelemetrySink telemetrySink = null;
+    if(options.getTelemetryFilePath() != null)
+    {
+      telemetrySink = new CsvTelemetrySink(new File(options.getTelemetryFilePath()));
+      telemetry.addSink(telemetrySink);
+    }
+    
+    engine.addEvolutionObserver(WaveguideGA.<BitString>createObserver("Generation", telemetry, waveguideEvaluator));
+      
+    // Start a new run with some of the population on the strongest modes of the target
+    List<BitString> seedCandidates;
+    if(checkpoint != null)
+    {
+      seedCandidates = checkpoint.getCandidates();
+    }
+    else if(modeEstimator != null)
+    {
+      List<WaveguideParameters> estimates = modeEstimator.estimate(readTarget(targetAudioFilePath, targetCache), numWaveguides);
+      seedCandidates = SpectralPeakSeeder.createSeeds(waveguideEvaluator, estimates, numWaveguides, (int) (POPULATION_SIZE * SEED_FRACTION), random);
+      System.out.println("Seeded " + seedCandidates.size() + " candidates from " + estimates.size() + " estimated modes");
+    }
+    else
+    {
+      seedCandidates = new LinkedList<BitString>();
+    }
+    
+    // Run the algorithm, evaluating the candidates on every core
+    int generationsLeft = Math.max(1, MAX_GENERATIONS - startGeneration);
+    BitString result = engine.evolve(POPULATION_SIZE, 1, seedCandidates, new TerminationCondition[] {new Stagnation(20, false), new GenerationCount(generationsLeft)});
+    
+    if(checkpointer != null)
     {
-      public void populationUpdate(PopulationData<? extends BitString> data)
+      try
       {
-          System.out.printf("Generation %d: %s\n",
-                            data.getGenerationNumber(),
-                            data.getBestCandidate());
+        checkpointer.close();
       }
-    });
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if(telemetrySink != null)
+    {
+      telemetrySink.close();
+    }
+    
+    return playResult(waveguideEvaluator, result, numWaveguides);
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* runIslandGeneticAlgorithm
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs several populations of the genetic algorithm at once, each on its own thread with its own fitness
+   * evaluator, passing their best candidates around a ring every few generations. More populations keep
+   * more diversity than one, so are less likely to settle early on a poor fit
+   * @param numWaveguides int the number of waveguides used in the banded waveguide
+   * @param targetAudioFilePath the target audio file path that the algorithm with try to fit the parameters to
+   * @param spectralDistance SpectralDistance how to compare the spectrograms of the candidates and target
+   * @param numIslands int the number of populations, ideally no more than the number of cores
+   * @param options GAOptions the metric, seeding, telemetry, screening and target cache of every island, islands are not checkpointed
+   * @return WaveguideParameters[] the best parameters found on any island
+   */
+   
+  public static WaveguideParameters[] runIslandGeneticAlgorithm(int numWaveguides, String targetAudioFilePath, int numIslands, GAOptions options) throws IOException
+  {
+    if(options.getCheckpointFilePath() != null)
+    {
+      throw new IllegalArgumentException("The island model does not checkpoint");
+    }
+    SpectralDistance spectralDistance = options.getSpectralDistance();
+    IModeEstimator modeEstimator = options.getModeEstimator();
+    TargetCache targetCache = options.getTargetCache();
+    
+    double[] target = readTarget(targetAudioFilePath, targetCache);
+    List<WaveguideParameters> estimates = (modeEstimator == null) ? null : modeEstimator.estimate(target, numWaveguides);
+    
+    // A ring of queues, island i takes in from queue i and sends to queue i + 1
+    List<Queue<EvaluatedCandidate<BitString>>> queues = new ArrayList<Queue<EvaluatedCandidate<BitString>>>(numIslands);
+    for(int i=0; i<numIslands; i++)
+    {
+      queues.add(new ConcurrentLinkedQueue<EvaluatedCandidate<BitString>>());
+    }
+    
+    ITelemetrySink telemetrySink = (options.getTelemetryFilePath() == null) ? null : new CsvTelemetrySink(new File(options.getTelemetryFilePath()));
+    
+    final List<WaveguideFitnessEvaluator> evaluators = new ArrayList<WaveguideFitnessEvaluator>(numIslands);
+    ExecutorService pool = Executors.newFixedThreadPool(numIslands);
+    List<Future<EvaluatedCandidate<BitString>>> islands = new ArrayList<Future<EvaluatedCandidate<BitString>>>(numIslands);
+    for(int i=0; i<numIslands; i++)
+    {
+      final WaveguideFitnessEvaluator evaluator = (targetCache == null)
+                                                ? new WaveguideFitnessEvaluator(numWaveguides, target, spectralDistance)
+                                                : new WaveguideFitnessEvaluator(numWaveguides, targetAudioFilePath, spectralDistance, targetCache);
+      final GATelemetry telemetry = new GATelemetry("island " + i, evaluator);
+      if(telemetrySink != null)
+      {
+        telemetry.addSink(telemetrySink);
+      }
+      evaluators.add(evaluator);
+      
+      Random random = new MersenneTwisterRNG();
+      final IslandEvolutionEngine<BitString> engine = new IslandEvolutionEngine<BitString>(
+        new BitStringFactory((TOTAL_STRING_LENGTH * numWaveguides) + TOTAL_VOLUME_LENGTH),
+        createPipeline(),
+        evaluator,
+        new RouletteWheelSelection(),
+        random,
+        queues.get(i),
+        queues.get((i + 1) % numIslands),
+        MIGRATION_INTERVAL,
+        NUM_MIGRANTS);
+      
+      // Each island already has a thread of its own
+      engine.setSingleThreaded(true);
+      if(options.getScreenWithSurrogate())
+      {
+        engine.setSurrogate(evaluator, EVALUATED_FRACTION);
+      }
+      
+      engine.addEvolutionObserver(WaveguideGA.<BitString>createObserver("Island " + i + " generation", telemetry, evaluator));
       
-    // Run the algorithm
-    ((GenerationalEvolutionEngine<BitString>)engine).setSingleThreaded(true);
-    BitString result = engine.evolve(70, 1, new TerminationCondition[] {new Stagnation(20, false), new GenerationCount(200)});
+      final List<BitString> seedCandidates = (estimates == null) ? new LinkedList<BitString>()
+        : SpectralPeakSeeder.createSeeds(evaluator, estimates, numWaveguides, (int) (POPULATION_SIZE * SEED_FRACTION), random);
+      
+      islands.add(pool.submit(new Callable<EvaluatedCandidate<BitString>>()
+      {
+        public EvaluatedCandidate<BitString> call()
+        {
+          return engine.evolvePopulation(POPULATION_SIZE, 1, seedCandidates, new TerminationCondition[] {new Stagnation(20, false), new GenerationCount(MAX_GENERATIONS)}).get(0);
+        }
+      }));
+    }
     
-    WaveguideParameters[] p = ((WaveguideFitnessEvaluator)fitnessEvaluator).convertToParameters(result.toString());
+    // The best of the islands' best
+    EvaluatedCandidate<BitString> best = null;
+    try
+    {
+      for(int i=0; i<numIslands; i++)
+      {
+        EvaluatedCandidate<BitString> islandBest = islands.get(i).get();
+        System.out.println("Island " + i + " best: " + islandBest.getFitness());
+        if(best == null || islandBest.getFitness() < best.getFitness())
+        {
+          best = islandBest;
+        }
+      }
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for the islands");
+      interrupted.initCause(e);
+      throw interrupted;
+    }
+    catch(ExecutionException e)
+    {
+      throw new IOException("Island failed", e.getCause());
+    }
+    finally
+    {
+      pool.shutdownNow();
+      if(telemetrySink != null)
+      {
+        telemetrySink.close();
+      }
+    }
+    
+    return playResult(evaluators.get(0), best.getCandidate(), numWaveguides);
+  }
+  
+  /**
+   * Reads the samples of the target, through the cache if there is one
+   * @param targetAudioFilePath String the target audio file
+   * @param targetCache TargetCache the cache of decoded targets, or null to decode the file
+   * @return double[] the samples
+   */
+  private static double[] readTarget(String targetAudioFilePath, TargetCache targetCache) throws IOException
+  {
+    if(targetCache == null)
+    {
+      return WaveguideFitnessEvaluator.readAudioFromFile(targetAudioFilePath);
+    }
+    return targetCache.readAudio(targetAudioFilePath);
+  }
+  
+  /**
+   * Creates the observer every run uses, which prints the best fitness and telemetry of each generation
+   * and tightens the abort bound of the evaluator
+   * @param label String printed before the generation number, eg which island
+   * @param telemetry GATelemetry the telemetry of the run
+   * @param evaluator WaveguideFitnessEvaluator the evaluator of the run
+   * @return EvolutionObserver<T> the observer
+   */
+  private static <T> EvolutionObserver<T> createObserver(final String label, final GATelemetry telemetry, final WaveguideFitnessEvaluator evaluator)
+  {
+    return new EvolutionObserver<T>()
+    {
+      public void populationUpdate(PopulationData<? extends T> data)
+      {
+          GenerationTelemetry generation = telemetry.endGeneration(data.getGenerationNumber(), data.getBestCandidateFitness());
+          System.out.printf("%s %d: %f\n  %s\n",
+                            label,
+                            data.getGenerationNumber(),
+                            data.getBestCandidateFitness(),
+                            generation);
+          
+          // Stop rendering candidates once they are worse than the elite, they can't replace it, and score
+          // them by the rest of the distance at the same rate
+          evaluator.setAbortBound(data.getBestCandidateFitness());
+      }
+    };
+  }
+  
+  /**
+   * @return EvolutionaryOperator<BitString> the mutation and crossover used by every run
+   */
+  private static EvolutionaryOperator<BitString> createPipeline()
+  {
+    List<EvolutionaryOperator<BitString>> operators = new LinkedList<EvolutionaryOperator<BitString>>();
+    operators.add(new BitStringMutation(new Probability(0.01)));
+    operators.add(new BitStringCrossover());
+    return new EvolutionPipeline<BitString>(operators);
+  }
+  
+  /**
+   * Prints the result, writes its waveform and spectrogram to outputTime.csv and outputSpectrum.csv, then
+   * plays it a number of times
+   * @param evaluator WaveguideFitnessEvaluator decodes the result
+   * @param result BitString the best candidate
+   * @param numWaveguides int the number of waveguides used in the banded waveguide
+   * @return WaveguideParameters[] the parameters of the result
+   */
+   
+  private static WaveguideParameters[] playResult(WaveguideFitnessEvaluator evaluator, BitString result, int numWaveguides) throws IOException
+  {
+    WaveguideParameters[] p = evaluator.convertToParameters(result.toString());
     
     for(int i=0; i<numWaveguides; i++)
     {
       System.out.println(p[i].getCenterFrequency() + ", " +p[i].getAmplitude()+ " ," +p[i].getQ()+ ", " +p[i].getGain());
     }
     
-    double gain = ((WaveguideFitnessEvaluator)fitnessEvaluator).convertToOverallGain(result.toString());
+    double gain = evaluator.convertToOverallGain(result.toString());
     System.out.println("Gain: " + gain);
     
     Synthesizer synth = JSyn.createSynthesizer();
@@ -182,7 +501,63 @@ public class WaveguideGA
       }
     }
     
-    return null;   
+    return p;
+  }
+  
+  
+  /**************************************************************************************************/
+  //
+  /* runRealGeneticAlgorithm  
+  //
+  /**************************************************************************************************/
+  /**
+   * Runs the genetic algorithm on real valued genomes, with Gaussian mutation and blend crossover, 
+   * instead of bit strings
+   * @param numWaveguides int the number of waveguides used in the banded waveguide
+   * @param targetAudioFilePath the target audio file path that the algorithm with try to fit the parameters to
+   * @param spectralDistance SpectralDistance how to compare the spectrograms of the candidates and target
+   * @return WaveguideParameters[] the optimal parameters found
+   */
+   
+  public static WaveguideParameters[] runRealGeneticAlgorithm(int numWaveguides, String targetAudioFilePath, SpectralDistance spectralDistance) throws IOException
+  {
+    // Layout and bounds of the genes, shared by the factory and operators
+    final WaveguideGenome genome = new WaveguideGenome(numWaveguides);
+    CandidateFactory<double[]> factory = new WaveguideGenomeFactory(genome);
+    
+    // Create operators for mutation and evolution
+    List<EvolutionaryOperator<double[]>> operators = new LinkedList<EvolutionaryOperator<double[]>>();
+    operators.add(new GaussianMutation(genome, new Probability(0.1), 0.05));
+    operators.add(new BlendCrossover(genome, 0.5));
+    EvolutionaryOperator<double[]> pipeline = new EvolutionPipeline<double[]>(operators);
+    
+    // Decode each genome and score it with the usual evaluator
+    final WaveguideFitnessEvaluator waveguideEvaluator = new WaveguideFitnessEvaluator(numWaveguides, targetAudioFilePath, spectralDistance);
+    final GATelemetry telemetry = new GATelemetry(targetAudioFilePath, waveguideEvaluator);
+    FitnessEvaluator<double[]> fitnessEvaluator = new WaveguideGenomeEvaluator(genome, waveguideEvaluator);
+    
+    SelectionStrategy<Object> selection = new RouletteWheelSelection();
+    Random random = new MersenneTwisterRNG();
+    
+    EvolutionEngine<double[]> engine = new GenerationalEvolutionEngine<double[]>(
+      factory, 
+      pipeline, 
+      fitnessEvaluator,
+      selection,
+      random);
+    
+    engine.addEvolutionObserver(WaveguideGA.<double[]>createObserver("Generation", telemetry, waveguideEvaluator));
+    
+    double[] result = engine.evolve(POPULATION_SIZE, 1, new TerminationCondition[] {new Stagnation(20, false), new GenerationCount(MAX_GENERATIONS)});
+    
+    WaveguideParameters[] p = genome.decode(result);
+    for(int i=0; i<numWaveguides; i++)
+    {
+      System.out.println(p[i].getCenterFrequency() + ", " +p[i].getAmplitude()+ " ," +p[i].getQ()+ ", " +p[i].getGain());
+    }
+    System.out.println("Gain: " + genome.decodeOverallGain(result));
+    
+    return p;
   }
   
   
@@ -203,4 +578,4 @@ public class WaveguideGA
 
   
 }
-
+
@@ -0,0 +1,205 @@
+/**
+ * Layout of a real valued genome for the genetic algorithm: a double[] with four genes for each
+ * waveguide (centre frequency, Q, amplitude and gain) followed by the overall gain. Every gene has a
+ * lower and upper bound, covering the same ranges as the bit string genome, apart from the centre
+ * frequency which starts at the lowest fundimental the fitness evaluator accepts. Decodes straight to
+ * WaveguideParameters without going through strings.
+ */
+
+public class WaveguideGenome
+{
+  /**************************************************************************************************/
+  //
+  /* Constants
+  //
+  /**************************************************************************************************/
+
+  // Genes for each waveguide
+  public static final int GENES_PER_WAVEGUIDE = 4;
+  private static final int FREQUENCY = 0;
+  private static final int Q = 1;
+  private static final int AMPLITUDE = 2;
+  private static final int GAIN = 3;
+
+  // Bounds of each gene
+  private static final double MIN_FREQUENCY = 70.0;
+  private static final double MAX_FREQUENCY = 4096.0;
+  private static final double MIN_Q = 1.0;
+  private static final double MAX_Q = 1024.0;
+  private static final double MAX_AMPLITUDE = 1.0;
+  private static final double MAX_GAIN = 0.9999;            // Band feedback must stay below 1 to decay
+  private static final double MAX_OVERALL_GAIN = 32.0;
+
+
+  /**************************************************************************************************/
+  //
+  /* Instance variables
+  //
+  /**************************************************************************************************/
+
+  private final int numWaveguides;
+  private final double[] lowerBounds;
+  private final double[] upperBounds;
+
+
+  /**************************************************************************************************/
+  //
+  /* Constructor
+  //
+  /**************************************************************************************************/
+  /**
+   * Class constructor
+   * @param numWaveguides int the number of waveguides in the banded waveguide
+   */
+
+  public WaveguideGenome(int numWaveguides)
+  {
+    if(numWaveguides < 1)
+    {
+      throw new IllegalArgumentException("Number of waveguides must be at least 1!");
+    }
+
+    this.numWaveguides = numWaveguides;
+    int numGenes = (numWaveguides * GENES_PER_WAVEGUIDE) + 1;
+    lowerBounds = new double[numGenes];
+    upperBounds = new double[numGenes];
+
+    for(int i=0; i<numWaveguides; i++)
+    {
+      int first = i * GENES_PER_WAVEGUIDE;
+      lowerBounds[first + FREQUENCY] = MIN_FREQUENCY;
+      upperBounds[first + FREQUENCY] = MAX_FREQUENCY;
+      lowerBounds[first + Q] = MIN_Q;
+      upperBounds[first + Q] = MAX_Q;
+      upperBounds[first + AMPLITUDE] = MAX_AMPLITUDE;
+      upperBounds[first + GAIN] = MAX_GAIN;
+    }
+    upperBounds[numGenes - 1] = MAX_OVERALL_GAIN;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Decoding
+  //
+  /**************************************************************************************************/
+  /**
+   * Converts a genome to the parameters of each waveguide
+   * @param genes double[] the genome
+   * @return WaveguideParameters[] the parameters for each waveguide
+   */
+
+  public WaveguideParameters[] decode(double[] genes)
+  {
+    WaveguideParameters[] params = new WaveguideParameters[numWaveguides];
+    for(int i=0; i<numWaveguides; i++)
+    {
+      int first = i * GENES_PER_WAVEGUIDE;
+      params[i] = new WaveguideParameters(genes[first + FREQUENCY], genes[first + AMPLITUDE], genes[first + Q], genes[first + GAIN]);
+    }
+    return params;
+  }
+
+  /**
+   * Gets the overall gain from a genome
+   * @param genes double[] the genome
+   * @return double the overall gain
+   */
+
+  public double decodeOverallGain(double[] genes)
+  {
+    return genes[genes.length - 1];
+  }
+
+  /**
+   * Converts waveguide parameters and an overall gain into a genome, eg to seed the population with a preset
+   * @param params WaveguideParameters[] the parameters for each waveguide
+   * @param overallGain double the overall gain
+   * @return double[] the genome, clamped to the bounds
+   */
+
+  public double[] encode(WaveguideParameters[] params, double overallGain)
+  {
+    if(params.length != numWaveguides)
+    {
+      throw new IllegalArgumentException("Number of waveguide parameters must be equal to the number of waveguides!");
+    }
+
+    double[] genes = new double[getNumGenes()];
+    for(int i=0; i<numWaveguides; i++)
+    {
+      int first = i * GENES_PER_WAVEGUIDE;
+      genes[first + FREQUENCY] = params[i].getCenterFrequency();
+      genes[first + Q] = params[i].getQ();
+      genes[first + AMPLITUDE] = params[i].getAmplitude();
+      genes[first + GAIN] = params[i].getGain();
+    }
+    genes[genes.length - 1] = overallGain;
+
+    for(int i=0; i<genes.length; i++)
+    {
+      genes[i] = clamp(i, genes[i]);
+    }
+    return genes;
+  }
+
+
+  /**************************************************************************************************/
+  //
+  /* Bounds
+  //
+  /**************************************************************************************************/
+  /**
+   * Limit a value to the bounds of a gene
+   * @param gene int the index of the gene
+   * @param value double the value
+   * @return double the value, or the nearest bound if outside them
+   */
+
+  public double clamp(int gene, double value)
+  {
+    if(value < lowerBounds[gene])
+    {
+      return lowerBounds[gene];
+    }
+    if(value > upperBounds[gene])
+    {
+      return upperBounds[gene];
+    }
+    return value;
+  }
+
+  /**
+   * @param gene int the index of the gene
+   * @return double the smallest value of the gene
+   */
+  public double getLowerBound(int gene)
+  {
+    return lowerBounds[gene];
+  }
+
+  /**
+   * @param gene int the index of the gene
+   * @return double the largest value of the gene
+   */
+  public double getUpperBound(int gene)
+  {
+    return upperBounds[gene];
+  }
+
+  /**
+   * @return int the number of genes in each genome
+   */
+  public int getNumGenes()
+  {
+    return lowerBounds.length;
+  }
+
+  /**
+   * @return int the number of waveguides the genome describes
+   */
+  public int getNumWaveguides()
+  {
+    return numWaveguides;
+  }
+}
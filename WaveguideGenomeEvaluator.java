@@ -0,0 +1,62 @@
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+
+import java.util.List;
+
+/**
+ * FitnessEvaluator for real valued genomes, decoding each straight to waveguide parameters and scoring
+ * it with a WaveguideFitnessEvaluator, so both genome types share the same rendering, cache and
+ * spectral distance. Safe to call from many threads at once.
+ */
+
+public class WaveguideGenomeEvaluator implements FitnessEvaluator<double[]>
+{
+  private final WaveguideGenome genome;                   // Layout of the genes
+  private final WaveguideFitnessEvaluator evaluator;      // Renders and scores the decoded parameters
+
+  /**
+   * Class constructor
+   * @param genome WaveguideGenome the layout of the genes
+   * @param evaluator WaveguideFitnessEvaluator scores the decoded parameters
+   */
+
+  public WaveguideGenomeEvaluator(WaveguideGenome genome, WaveguideFitnessEvaluator evaluator)
+  {
+    this.genome = genome;
+    this.evaluator = evaluator;
+  }
+
+  /**
+   * Get the fitness of a candidate
+   * @param candidate double[] the genome to evaluate
+   * @param population List<> the entire population (not needed for this implementation)
+   * @return the fitness score
+   */
+
+  public double getFitness(double[] candidate, List<? extends double[]> population)
+  {
+    long start = System.nanoTime();
+    WaveguideParameters[] parameters = genome.decode(candidate);
+    double overallGain = genome.decodeOverallGain(candidate);
+    evaluator.getStats().addDecode(System.nanoTime() - start);
+
+    return evaluator.getFitness(parameters, overallGain);
+  }
+
+  /**
+   * Lower scores are fitter, as for the bit string genome
+   * @return boolean
+   */
+
+  public boolean isNatural()
+  {
+    return false;
+  }
+
+  /**
+   * @return WaveguideFitnessEvaluator the evaluator that scores the decoded parameters
+   */
+  public WaveguideFitnessEvaluator getEvaluator()
+  {
+    return evaluator;
+  }
+}
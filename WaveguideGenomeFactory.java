@@ -0,0 +1,40 @@
+import org.uncommons.watchmaker.framework.factories.AbstractCandidateFactory;
+
+import java.util.Random;
+
+/**
+ * Creates random real valued genomes for the genetic algorithm, each gene uniformly distributed
+ * between its bounds
+ */
+
+public class WaveguideGenomeFactory extends AbstractCandidateFactory<double[]>
+{
+  private final WaveguideGenome genome;     // Layout and bounds of the genes
+
+  /**
+   * Class constructor
+   * @param genome WaveguideGenome the layout and bounds of the genes
+   */
+
+  public WaveguideGenomeFactory(WaveguideGenome genome)
+  {
+    this.genome = genome;
+  }
+
+  /**
+   * Create a random candidate
+   * @param rng Random the random number generator
+   * @return double[] the genome
+   */
+
+  public double[] generateRandomCandidate(Random rng)
+  {
+    double[] genes = new double[genome.getNumGenes()];
+    for(int i=0; i<genes.length; i++)
+    {
+      double lower = genome.getLowerBound(i);
+      genes[i] = lower + (rng.nextDouble() * (genome.getUpperBound(i) - lower));
+    }
+    return genes;
+  }
+}